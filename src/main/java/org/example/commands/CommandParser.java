@@ -18,6 +18,7 @@ public class CommandParser {
         commands.put("rm", new RemoveCommand());
         commands.put("tag", new TagCommand());
         commands.put("reset", new ResetCommand());
+        commands.put("gc", new GcCommand());
     }
 
     public Command parse(String[] args) {
@@ -0,0 +1,19 @@
+package org.example.commands;
+
+import org.example.repository.Repository;
+
+import java.io.IOException;
+
+public class GcCommand implements Command {
+    @Override
+    public void execute(String[] args, Repository repository) throws IOException {
+        if (args.length == 0) {
+            repository.gc();
+        } else if (args.length == 1 && args[0].equals("--aggressive")) {
+            repository.gc(true);
+        } else {
+            System.err.println("Usage: git gc [--aggressive]");
+            System.err.println("    --aggressive    repack every object with delta compression");
+        }
+    }
+}
@@ -1,43 +1,107 @@
 package org.example.commands;
 
 import org.example.objects.Commit;
+import org.example.repository.LogOptions;
 import org.example.repository.Repository;
 
 import java.io.IOException;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import static org.example.utils.Colors.*;
 
 public class LogCommand implements Command {
     @Override
     public void execute(String[] args, Repository repository) throws IOException {
-        List<Commit> commits = repository.log();
+        LogOptions options = parseOptions(args);
 
-        if (commits.isEmpty()) {
+        if (repository.getHeadCommit() == null) {
             System.out.println("No commits yet");
             return;
         }
 
-        for (Commit commit : commits) {
+        repository.log(options, commit -> {
             System.out.println(YELLOW + "commit " + commit.getHexhash() + RESET);
             System.out.println("Author: " + commit.getAuthor());
-            System.out.println("Date:   " + formatDate(commit.getCommitter()));
+            System.out.println("Date:   " + formatDate(commit));
             System.out.println();
             System.out.println("    " + commit.getMessage());
             System.out.println();
-        }
+        });
     }
 
-    private String formatDate(String committer) {
-        if (committer == null) return "Unknown";
-
-        String[] parts = committer.split(" ");
-        if (parts.length < 2) return "Unknown";
+    private LogOptions parseOptions(String[] args) {
+        LogOptions options = new LogOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("-n".equals(arg) || "--max-count".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Option " + arg + " requires a value");
+                }
+                options.setMaxCount(parseCount(args[++i]));
+            } else if (arg.startsWith("--max-count=")) {
+                options.setMaxCount(parseCount(arg.substring("--max-count=".length())));
+            } else if (arg.startsWith("-n")) {
+                options.setMaxCount(parseCount(arg.substring(2)));
+            } else if (arg.matches("-\\d+")) {
+                options.setMaxCount(parseCount(arg.substring(1)));
+            } else if (arg.startsWith("--since=")) {
+                options.setSince(parseDate(arg.substring("--since=".length())));
+            } else if (arg.startsWith("--until=")) {
+                options.setUntil(parseDate(arg.substring("--until=".length())));
+            } else if ("--since".equals(arg) || "--until".equals(arg)) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Option " + arg + " requires a value");
+                }
+                long date = parseDate(args[++i]);
+                if ("--since".equals(arg)) {
+                    options.setSince(date);
+                } else {
+                    options.setUntil(date);
+                }
+            } else {
+                throw new IllegalArgumentException("Usage: git log [-n <number>] [--max-count=<number>] "
+                        + "[--since=<date>] [--until=<date>]");
+            }
+        }
+        return options;
+    }
 
+    private int parseCount(String value) {
         try {
-            long timestamp = Long.parseLong(parts[parts.length - 2]);
-            return new java.util.Date(timestamp * 1000).toString();
+            int count = Integer.parseInt(value);
+            if (count < 0) {
+                throw new IllegalArgumentException("Invalid max count: " + value);
+            }
+            return count;
         } catch (NumberFormatException e) {
-            return "Unknown";
+            throw new IllegalArgumentException("Invalid max count: " + value);
         }
     }
+
+    private long parseDate(String value) {
+        if (value.matches("\\d+")) {
+            return Long.parseLong(value);
+        }
+        try {
+            return OffsetDateTime.parse(value).toEpochSecond();
+        } catch (DateTimeParseException ignored) {
+        }
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException ignored) {
+        }
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+    }
+
+    private String formatDate(Commit commit) {
+        if (commit.getCommitter() == null) return "Unknown";
+        return new java.util.Date(commit.getCommitTime() * 1000).toString();
+    }
 }
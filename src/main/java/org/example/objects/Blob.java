@@ -2,45 +2,132 @@ package org.example.objects;
 
 import org.example.utils.SHA1Hasher;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 
 public class Blob extends GitObject {
-    private byte[] content;
+    private ByteBuffer content;
+    private Loader loader;
+
+    public interface Loader {
+        ByteBuffer load() throws IOException;
+    }
 
     public Blob(byte[] content) {
         if (content == null) {
             throw new IllegalArgumentException("Content cannot be null");
         }
-        this.content = content;
+        this.content = ByteBuffer.wrap(content);
         this.type = "blob";
     }
 
     public Blob() {
+        this(new byte[0]);
+    }
+
+    private Blob(ObjectId id, Loader loader) {
+        this.hash = id.toBytes();
+        this.loader = loader;
         this.type = "blob";
-        this.content = new byte[0];
+    }
+
+    public static Blob wrap(ByteBuffer content) {
+        if (content == null) {
+            throw new IllegalArgumentException("Content cannot be null");
+        }
+        Blob blob = new Blob();
+        blob.content = content.slice();
+        return blob;
+    }
+
+    public static Blob lazy(ObjectId id, Loader loader) {
+        if (id == null || loader == null) {
+            throw new IllegalArgumentException("Lazy blob needs an id and a loader");
+        }
+        return new Blob(id, loader);
+    }
+
+    public boolean isLoaded() {
+        return loader == null;
+    }
+
+    public long getSize() {
+        return content().remaining();
+    }
+
+    public ByteBuffer getContent() {
+        return content().asReadOnlyBuffer();
+    }
+
+    public InputStream openStream() {
+        ByteBuffer data = content();
+        if (data.hasArray()) {
+            return new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        ByteBuffer view = data.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
     }
 
     @Override
     public byte[] serialize() {
-        return Arrays.copyOf(content, content.length);
+        ByteBuffer data = content();
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return copy;
     }
 
     @Override
     public void deserialize(byte[] data) {
-        this.content = Arrays.copyOf(data, data.length);
+        this.content = ByteBuffer.wrap(data);
+        this.loader = null;
         this.hash = null;
     }
 
     @Override
     protected byte[] computeHash() {
-        String header = "blob " +  content.length + "\0";
-        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
-
-        byte[] sha = new byte[headerBytes.length + content.length];
-        System.arraycopy(headerBytes, 0, sha, 0, headerBytes.length);
-        System.arraycopy(content, 0, sha, headerBytes.length, content.length);
+        ByteBuffer data = content();
+        try (SHA1Hasher hasher = SHA1Hasher.newHasher()) {
+            return hasher.updateHeader("blob", data.remaining())
+                    .update(data.duplicate())
+                    .digest();
+        }
+    }
 
-        return SHA1Hasher.hash(sha);
+    private synchronized ByteBuffer content() {
+        if (loader != null) {
+            try {
+                content = loader.load().slice();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to load blob " + getHexhash(), e);
+            }
+            loader = null;
+        }
+        return content;
     }
 }
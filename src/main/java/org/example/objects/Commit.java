@@ -4,14 +4,30 @@ import org.example.utils.SHA1Hasher;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class Commit extends GitObject {
-    private byte[] treeHash;
-    private List<byte[]> parentHashes = new ArrayList<>();
+    private static final byte[] TREE = "tree ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PARENT = "parent ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] AUTHOR = "author ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] COMMITTER = "committer ".getBytes(StandardCharsets.US_ASCII);
+
+    private ObjectId treeId;
+    private List<ObjectId> parentIds = new ArrayList<>();
     private String author;
     private String committer;
     private String message;
+    private long commitTime;
+
+    private byte[] raw;
+    private boolean headersParsed = true;
+    private int authorStart = -1;
+    private int authorEnd;
+    private int committerStart = -1;
+    private int committerEnd;
+    private int messageStart = -1;
 
     public Commit(byte[] treeHash, List<byte[]> parentHashes, String author, String committer, String message) {
         this.type = "commit";
@@ -30,60 +46,121 @@ public class Commit extends GitObject {
 
     public Commit() {
         this.type = "commit";
-        this.treeHash = null;
-        this.parentHashes = new ArrayList<>();
+        this.treeId = null;
+        this.parentIds = new ArrayList<>();
         this.author = null;
         this.committer = null;
         this.message = "";
     }
 
-    public byte[] getTreeHash() { return treeHash == null ? null : treeHash.clone(); }
+    public byte[] getTreeHash() {
+        ObjectId id = getTreeId();
+        return id == null ? null : id.toBytes();
+    }
+
+    public ObjectId getTreeId() {
+        parseHeaders();
+        return treeId;
+    }
+
     public List<byte[]> getParentHashes() {
         List<byte[]> copy = new ArrayList<>();
-        for (byte[] parentHash : parentHashes) {
-            copy.add(parentHash == null ? null : parentHash.clone());
+        for (ObjectId parentId : getParentIds()) {
+            copy.add(parentId == null ? null : parentId.toBytes());
         }
         return copy;
     }
-    public String getAuthor() { return author; }
-    public String getCommitter() { return committer; }
-    public String getMessage() { return message; }
+
+    public List<ObjectId> getParentIds() {
+        parseHeaders();
+        return Collections.unmodifiableList(parentIds);
+    }
+
+    public synchronized String getAuthor() {
+        parseHeaders();
+        if (author == null && authorStart >= 0) {
+            author = new String(raw, authorStart, authorEnd - authorStart, StandardCharsets.UTF_8);
+        }
+        return author;
+    }
+
+    public synchronized String getCommitter() {
+        parseHeaders();
+        if (committer == null && committerStart >= 0) {
+            committer = new String(raw, committerStart, committerEnd - committerStart, StandardCharsets.UTF_8);
+        }
+        return committer;
+    }
+
+    public synchronized String getMessage() {
+        parseHeaders();
+        if (message == null) {
+            message = messageStart < 0 ? ""
+                    : new String(raw, messageStart, raw.length - messageStart, StandardCharsets.UTF_8);
+        }
+        return message;
+    }
+
+    public long getCommitTime() {
+        parseHeaders();
+        return commitTime;
+    }
 
     public void setTreeHash(byte[] treeHash) {
-        if (treeHash == null) {
-            this.treeHash = null;
-        } else {
-            if (treeHash.length != 20) {
-                throw new IllegalArgumentException("treeHash must be 20 bytes (SHA-1 raw).");
-            }
-            this.treeHash = treeHash.clone();
+        checkMutable();
+        if (treeHash != null && treeHash.length != 20) {
+            throw new IllegalArgumentException("treeHash must be 20 bytes (SHA-1 raw).");
         }
+        materialize();
+        this.treeId = treeHash == null ? null : ObjectId.fromBytes(treeHash);
+        this.hash = null;
+    }
+    public void setTreeId(ObjectId treeId) {
+        checkMutable();
+        materialize();
+        this.treeId = treeId;
         this.hash = null;
     }
     public void addParent(byte[] parentHash) {
+        checkMutable();
         if (parentHash != null && parentHash.length != 20) {
             throw new IllegalArgumentException("parentHash must be 20 bytes (SHA-1 raw) or null.");
         }
-        parentHashes.add(parentHash == null ? null : parentHash.clone());
+        materialize();
+        parentIds.add(parentHash == null ? null : ObjectId.fromBytes(parentHash));
+        this.hash = null;
+    }
+    public void addParentId(ObjectId parentId) {
+        checkMutable();
+        materialize();
+        parentIds.add(parentId);
         this.hash = null;
     }
     public void setMessage(String message) {
+        checkMutable();
+        materialize();
         this.message = message == null ? "" : message;
         this.hash = null;
     }
     public void setAuthor(String author) {
+        checkMutable();
         if (author != null && !isValidSignatureFormat(author)) {
             throw new IllegalArgumentException("Invalid author format: " + author);
         }
+        materialize();
         this.author = author;
+        updateCommitTime();
         this.hash = null;
     }
 
     public void setCommitter(String committer) {
+        checkMutable();
         if (committer != null && !isValidSignatureFormat(committer)) {
             throw new IllegalArgumentException("Invalid committer format: " + committer);
         }
+        materialize();
         this.committer = committer;
+        updateCommitTime();
         this.hash = null;
     }
 
@@ -94,15 +171,19 @@ public class Commit extends GitObject {
 
     @Override
     public byte[] serialize() {
+        if (raw != null) {
+            return raw.clone();
+        }
+
         StringBuilder sb = new StringBuilder();
 
-        if (treeHash != null) {
-            sb.append("tree ").append(SHA1Hasher.toHex(treeHash)).append("\n");
+        if (treeId != null) {
+            sb.append("tree ").append(treeId.toHex()).append("\n");
         }
 
-        for (byte[] parentHash : parentHashes) {
-            if (parentHash != null) {
-                sb.append("parent ").append(SHA1Hasher.toHex(parentHash)).append("\n");
+        for (ObjectId parentId : parentIds) {
+            if (parentId != null) {
+                sb.append("parent ").append(parentId.toHex()).append("\n");
             }
         }
 
@@ -118,59 +199,170 @@ public class Commit extends GitObject {
     }
 
     @Override
-    public void deserialize(byte[] data) {
-        treeHash = null;
-        parentHashes.clear();
+    public synchronized void deserialize(byte[] data) {
+        checkMutable();
+        treeId = null;
+        parentIds = new ArrayList<>();
         author = null;
         committer = null;
         message = "";
+        commitTime = 0L;
+        raw = null;
+        headersParsed = true;
+        this.hash = null;
 
-        if(data == null || data.length == 0) {
+        if (data == null || data.length == 0) {
             return;
         }
 
-        String content = new String(data, StandardCharsets.UTF_8);
-        int index = content.indexOf("\n\n");
-        String header;
-        String body;
-        if (index == -1) {
-            header = content;
-            body = "";
-        } else {
-            header = content.substring(0, index);
-            body = content.substring(index + 2);
-        }
-
-        String[] parts = header.split("\n");
-
-        for (String part : parts) {
-            if (part.startsWith("tree ")) {
-                this.treeHash = SHA1Hasher.fromHex(part.substring("tree ".length()));
-            } else if (part.startsWith("parent ")) {
-                this.parentHashes.add(SHA1Hasher.fromHex(part.substring("parent ".length())));
-            } else if (part.startsWith("author ")) {
-                this.author = part.substring("author ".length());
-            } else if (part.startsWith("committer ")) {
-                this.committer = part.substring("committer ".length());
-            }
-        }
-        this.message = body;
-        this.hash = null;
+        raw = data;
+        message = null;
+        headersParsed = false;
     }
 
     @Override
     protected byte[] computeHash() {
-        byte[] content = serialize();
-        String header = "commit " + content.length + "\0";
-        byte[] headerBytes = header.getBytes(StandardCharsets.UTF_8);
-
-        byte[] data = new byte[content.length + headerBytes.length];
-        System.arraycopy(headerBytes, 0, data, 0, headerBytes.length);
-        System.arraycopy(content, 0, data, headerBytes.length, content.length);
-        return SHA1Hasher.hash(data);
+        if (raw != null) {
+            return SHA1Hasher.hashObject("commit", raw);
+        }
+        return SHA1Hasher.hashObject("commit", serialize());
     }
 
     public boolean isRootCommit() {
-        return parentHashes.isEmpty();
+        return getParentIds().isEmpty();
+    }
+
+    private synchronized void parseHeaders() {
+        if (headersParsed) {
+            return;
+        }
+        ObjectId tree = null;
+        List<ObjectId> parents = new ArrayList<>();
+        int authorFrom = -1;
+        int authorTo = 0;
+        int committerFrom = -1;
+        int committerTo = 0;
+        int bodyStart = -1;
+        int position = 0;
+        while (position < raw.length) {
+            int lineEnd = indexOf(raw, (byte) '\n', position);
+            if (lineEnd == position) {
+                bodyStart = position + 1;
+                break;
+            }
+            int end = lineEnd < 0 ? raw.length : lineEnd;
+            if (startsWith(raw, position, end, TREE)) {
+                tree = parseId(position + TREE.length, end);
+            } else if (startsWith(raw, position, end, PARENT)) {
+                parents.add(parseId(position + PARENT.length, end));
+            } else if (startsWith(raw, position, end, AUTHOR)) {
+                authorFrom = position + AUTHOR.length;
+                authorTo = end;
+            } else if (startsWith(raw, position, end, COMMITTER)) {
+                committerFrom = position + COMMITTER.length;
+                committerTo = end;
+            }
+            if (lineEnd < 0) {
+                break;
+            }
+            position = lineEnd + 1;
+        }
+
+        treeId = tree;
+        parentIds = parents;
+        authorStart = authorFrom;
+        authorEnd = authorTo;
+        committerStart = committerFrom;
+        committerEnd = committerTo;
+        messageStart = bodyStart;
+        if (committerStart >= 0) {
+            commitTime = parseTime(raw, committerStart, committerEnd);
+        } else if (authorStart >= 0) {
+            commitTime = parseTime(raw, authorStart, authorEnd);
+        }
+        headersParsed = true;
+    }
+
+    private synchronized void materialize() {
+        if (raw == null) {
+            return;
+        }
+        getAuthor();
+        getCommitter();
+        getMessage();
+        raw = null;
+        authorStart = -1;
+        committerStart = -1;
+        messageStart = -1;
+    }
+
+    private void updateCommitTime() {
+        String signature = committer != null ? committer : author;
+        if (signature == null) {
+            commitTime = 0L;
+            return;
+        }
+        byte[] bytes = signature.getBytes(StandardCharsets.UTF_8);
+        commitTime = parseTime(bytes, 0, bytes.length);
+    }
+
+    private ObjectId parseId(int start, int end) {
+        if (end - start != ObjectId.HEX_LENGTH) {
+            throw new IllegalArgumentException("SHA-1 hash must be 40 characters long: "
+                    + new String(raw, start, end - start, StandardCharsets.UTF_8));
+        }
+        return ObjectId.fromHex(raw, start);
+    }
+
+    private static long parseTime(byte[] data, int start, int end) {
+        int tokenEnd = lastIndexOf(data, (byte) ' ', start, end);
+        while (tokenEnd > start) {
+            int space = lastIndexOf(data, (byte) ' ', start, tokenEnd);
+            int tokenStart = space < 0 ? start : space + 1;
+            long value = parseDigits(data, tokenStart, tokenEnd);
+            if (value >= 0) {
+                return value;
+            }
+            tokenEnd = tokenStart - 1;
+        }
+        return 0L;
+    }
+
+    private static long parseDigits(byte[] data, int start, int end) {
+        if (start >= end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from) {
+        for (int i = from; i < data.length; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, byte value, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] data, int start, int end, byte[] prefix) {
+        return end - start >= prefix.length
+                && Arrays.equals(data, start, start + prefix.length, prefix, 0, prefix.length);
     }
 }
@@ -5,6 +5,7 @@ import org.example.utils.SHA1Hasher;
 public abstract class GitObject {
     protected byte[] hash;
     protected String type;
+    private boolean frozen;
 
     public abstract byte[] serialize();
     public abstract void deserialize(byte[] data);
@@ -27,6 +28,25 @@ public abstract class GitObject {
         return hash;
     }
 
+    public ObjectId getId() {
+        return ObjectId.fromBytes(getHash());
+    }
+
     protected abstract byte[] computeHash();
 
+    public void freeze() {
+        getHash();
+        frozen = true;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    protected void checkMutable() {
+        if (frozen) {
+            throw new IllegalStateException("Cannot modify shared " + type + " " + getHexhash());
+        }
+    }
+
 }
@@ -0,0 +1,204 @@
+package org.example.objects;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class ObjectId implements Comparable<ObjectId> {
+    public static final int RAW_LENGTH = 20;
+    public static final int HEX_LENGTH = 40;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            HEX_VALUES['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a' + i] = (byte) (10 + i);
+            HEX_VALUES['A' + i] = (byte) (10 + i);
+        }
+    }
+
+    private final long w1;
+    private final long w2;
+    private final int w3;
+
+    private ObjectId(long w1, long w2, int w3) {
+        this.w1 = w1;
+        this.w2 = w2;
+        this.w3 = w3;
+    }
+
+    public static ObjectId fromBytes(byte[] raw) {
+        if (raw == null || raw.length != RAW_LENGTH) {
+            throw new IllegalArgumentException("Object id must be 20 bytes");
+        }
+        return fromBytes(raw, 0);
+    }
+
+    public static ObjectId fromBytes(byte[] raw, int offset) {
+        if (raw == null || offset < 0 || offset + RAW_LENGTH > raw.length) {
+            throw new IllegalArgumentException("Object id must be 20 bytes");
+        }
+        return new ObjectId(readLong(raw, offset), readLong(raw, offset + 8), readInt(raw, offset + 16));
+    }
+
+    public static ObjectId fromBuffer(ByteBuffer buffer, int offset) {
+        return new ObjectId(buffer.getLong(offset), buffer.getLong(offset + 8), buffer.getInt(offset + 16));
+    }
+
+    public static ObjectId fromHex(String hex) {
+        if (hex == null) {
+            throw new IllegalArgumentException("Hex string cannot be null");
+        }
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("SHA-1 hash must be 40 characters long: " + hex);
+        }
+        return new ObjectId(parseLong(hex, 0), parseLong(hex, 16), (int) parseBits(hex, 32, 8));
+    }
+
+    public static ObjectId fromHex(byte[] data, int offset) {
+        if (data == null || offset < 0 || offset + HEX_LENGTH > data.length) {
+            throw new IllegalArgumentException("SHA-1 hash must be 40 characters long");
+        }
+        return new ObjectId(parseBits(data, offset, 16), parseBits(data, offset + 16, 16),
+                (int) parseBits(data, offset + 32, 8));
+    }
+
+    public static boolean isHex(String hex) {
+        if (hex == null || hex.length() != HEX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            char c = hex.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public byte[] toBytes() {
+        byte[] raw = new byte[RAW_LENGTH];
+        copyTo(raw, 0);
+        return raw;
+    }
+
+    public void copyTo(byte[] target, int offset) {
+        writeLong(target, offset, w1);
+        writeLong(target, offset + 8, w2);
+        writeInt(target, offset + 16, w3);
+    }
+
+    public String toHex() {
+        char[] hex = new char[HEX_LENGTH];
+        formatLong(hex, 0, w1, 16);
+        formatLong(hex, 16, w2, 16);
+        formatLong(hex, 32, w3 & 0xFFFFFFFFL, 8);
+        return new String(hex);
+    }
+
+    public int getFirstByte() {
+        return (int) (w1 >>> 56);
+    }
+
+    @Override
+    public int compareTo(ObjectId other) {
+        int cmp = Long.compareUnsigned(w1, other.w1);
+        if (cmp != 0) return cmp;
+        cmp = Long.compareUnsigned(w2, other.w2);
+        if (cmp != 0) return cmp;
+        return Integer.compareUnsigned(w3, other.w3);
+    }
+
+    public int compareTo(ByteBuffer buffer, int offset) {
+        int cmp = Long.compareUnsigned(w1, buffer.getLong(offset));
+        if (cmp != 0) return cmp;
+        cmp = Long.compareUnsigned(w2, buffer.getLong(offset + 8));
+        if (cmp != 0) return cmp;
+        return Integer.compareUnsigned(w3, buffer.getInt(offset + 16));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ObjectId that)) return false;
+        return w1 == that.w1 && w2 == that.w2 && w3 == that.w3;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (w1 >>> 32);
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    private static long parseLong(String hex, int offset) {
+        return parseBits(hex, offset, 16);
+    }
+
+    private static long parseBits(String hex, int offset, int digits) {
+        long value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            char c = hex.charAt(i);
+            int digit = c < 128 ? HEX_VALUES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid hex character '" + c + "' in " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long parseBits(byte[] data, int offset, int digits) {
+        long value = 0;
+        for (int i = offset; i < offset + digits; i++) {
+            int c = data[i] & 0xFF;
+            int digit = c < 128 ? HEX_VALUES[c] : -1;
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid hex character '" + (char) c + "' in object id");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static void formatLong(char[] target, int offset, long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            target[offset + i] = HEX_DIGITS[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    private static long readLong(byte[] raw, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (raw[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int readInt(byte[] raw, int offset) {
+        return ((raw[offset] & 0xFF) << 24) | ((raw[offset + 1] & 0xFF) << 16)
+                | ((raw[offset + 2] & 0xFF) << 8) | (raw[offset + 3] & 0xFF);
+    }
+
+    private static void writeLong(byte[] target, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            target[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void writeInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+}
@@ -2,48 +2,194 @@ package org.example.objects;
 
 import org.example.utils.SHA1Hasher;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class Tree extends GitObject {
+    public static final Comparator<Entry> GIT_ORDER = Tree::compareEntries;
+
+    private static final byte[] MODE_FILE = "100644".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MODE_EXECUTABLE = "100755".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MODE_TREE = "040000".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MODE_TREE_SHORT = "40000".getBytes(StandardCharsets.US_ASCII);
 
     public static class Entry {
         private final String mode;
-        private final byte[] hash;
+        private final ObjectId id;
         private final String name;
+        private final byte[] nameBytes;
+        private final String type;
 
-        public Entry(String mode, byte[] hash, String name) {
+        public Entry(String mode, ObjectId id, String name) {
             this.mode = mode;
-            this.hash = hash;
+            this.id = id;
             this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            byte[] modeBytes = mode.getBytes(StandardCharsets.US_ASCII);
+            this.type = typeOf(modeBytes, 0, modeBytes.length);
+        }
+
+        public Entry(String mode, byte[] hash, String name) {
+            this(mode, ObjectId.fromBytes(hash), name);
         }
 
         public String getMode() { return mode; }
-        public byte[] getHash() { return hash; }
-        public String getHexHash() { return SHA1Hasher.toHex(hash); }
+        public ObjectId getId() { return id; }
+        public byte[] getHash() { return id.toBytes(); }
+        public String getHexHash() { return id.toHex(); }
         public String getName() { return name; }
+        public String getType() { return type; }
+    }
+
+    public static class Builder {
+        private final List<Entry> entries;
+        private final Set<String> names;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedEntries) {
+            entries = new ArrayList<>(expectedEntries);
+            names = new HashSet<>(expectedEntries * 2);
+        }
+
+        public Builder add(Entry entry) {
+            if (!names.add(entry.getName())) {
+                throw new IllegalArgumentException("Duplicate tree entry: " + entry.getName());
+            }
+            entries.add(entry);
+            return this;
+        }
+
+        public Builder addFile(String filename, ObjectId id) {
+            return add(new Entry("100644", id, filename));
+        }
+
+        public Builder addDirectory(String directory, ObjectId id) {
+            return add(new Entry("040000", id, directory));
+        }
+
+        public int size() {
+            return entries.size();
+        }
+
+        public Tree build() {
+            List<Entry> sorted = new ArrayList<>(entries);
+            sorted.sort(GIT_ORDER);
+            Tree tree = new Tree(sorted);
+            tree.freeze();
+            return tree;
+        }
+    }
+
+    public final class Cursor {
+        private final int count = size();
+        private int index = -1;
+
+        public boolean next() {
+            if (index + 1 >= count) {
+                index = count;
+                return false;
+            }
+            index++;
+            return true;
+        }
+
+        public String getName() {
+            if (raw == null) {
+                return current().name;
+            }
+            checkPosition();
+            int nameStart = modeEnds[index] + 1;
+            return new String(raw, nameStart, nameEnds[index] - nameStart, StandardCharsets.UTF_8);
+        }
+
+        public String getMode() {
+            if (raw == null) {
+                return current().mode;
+            }
+            checkPosition();
+            return new String(raw, starts[index], modeEnds[index] - starts[index], StandardCharsets.US_ASCII);
+        }
+
         public String getType() {
-            if ("100644".equals(mode) || "100755".equals(mode)) {
-                return "blob";
-            } else if ("040000".equals(mode)) {
-                return "tree";
-            } else {
-                return "unknown";
+            if (raw == null) {
+                return current().getType();
+            }
+            checkPosition();
+            return typeOf(raw, starts[index], modeEnds[index] - starts[index]);
+        }
+
+        public boolean isTree() {
+            return "tree".equals(getType());
+        }
+
+        public boolean isBlob() {
+            return "blob".equals(getType());
+        }
+
+        public ObjectId getId() {
+            if (raw == null) {
+                return current().id;
+            }
+            checkPosition();
+            return ObjectId.fromBytes(raw, nameEnds[index] + 1);
+        }
+
+        public Entry toEntry() {
+            if (raw == null) {
+                return current();
+            }
+            checkPosition();
+            return entryAt(index);
+        }
+
+        private Entry current() {
+            checkPosition();
+            return entries.get(index);
+        }
+
+        private void checkPosition() {
+            if (index < 0 || index >= count) {
+                throw new IllegalStateException("Cursor is not positioned on an entry");
             }
         }
     }
 
-    private final List<Entry> entries;
+    private List<Entry> entries;
+    private byte[] raw;
+    private int rawLength;
+    private int[] starts;
+    private int[] modeEnds;
+    private int[] nameEnds;
 
     public Tree() {
         type = "tree";
         entries = new ArrayList<>();
     }
 
+    private Tree(List<Entry> sortedEntries) {
+        type = "tree";
+        entries = sortedEntries;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     public void addEntry(Entry entry) {
-        entries.add(entry);
-        entries.sort(Comparator.comparing(Entry::getName));
+        checkMutable();
+        List<Entry> list = materialize();
+        raw = null;
+        int position = Collections.binarySearch(list, entry, GIT_ORDER);
+        list.add(position < 0 ? -position - 1 : position + 1, entry);
         this.hash = null;
     }
 
@@ -51,32 +197,61 @@ public class Tree extends GitObject {
         addEntry(new Entry("100644", hash, filename));
     }
 
+    public void addFile(String filename, ObjectId id) {
+        addEntry(new Entry("100644", id, filename));
+    }
+
     public void addDirectory(String directory, byte[] hash) {
         addEntry(new Entry("040000", hash, directory));
     }
 
+    public void addDirectory(String directory, ObjectId id) {
+        addEntry(new Entry("040000", id, directory));
+    }
+
+    public int size() {
+        return raw != null ? starts.length : entries.size();
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public Entry findEntry(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int position = search(key, 0);
+        if (position < 0) {
+            position = search(key, '/');
+        }
+        if (position < 0) {
+            return null;
+        }
+        return raw != null ? entryAt(position) : entries.get(position);
+    }
+
     @Override
     public byte[] serialize() {
-        List<byte[]> parts = new ArrayList<>();
-        int totalLength = 0;
+        if (raw != null) {
+            return Arrays.copyOf(raw, rawLength);
+        }
 
+        int totalLength = 0;
         for (Entry entry : entries) {
-            byte[] modeName = (entry.getMode() + " " + entry.getName() + "\0").getBytes();
-            byte[] hash = entry.getHash();
-            byte[] combined = new byte[modeName.length + hash.length];
-
-            System.arraycopy(modeName, 0, combined, 0, modeName.length);
-            System.arraycopy(hash, 0, combined, modeName.length, hash.length);
-
-            parts.add(combined);
-            totalLength += combined.length;
+            totalLength += entry.mode.length() + entry.nameBytes.length + 2 + ObjectId.RAW_LENGTH;
         }
 
         byte[] result = new byte[totalLength];
         int pos = 0;
-        for (byte[] part : parts) {
-            System.arraycopy(part, 0, result, pos, part.length);
-            pos += part.length;
+        for (Entry entry : entries) {
+            for (int i = 0; i < entry.mode.length(); i++) {
+                result[pos++] = (byte) entry.mode.charAt(i);
+            }
+            result[pos++] = ' ';
+            System.arraycopy(entry.nameBytes, 0, result, pos, entry.nameBytes.length);
+            pos += entry.nameBytes.length;
+            result[pos++] = 0;
+            entry.id.copyTo(result, pos);
+            pos += ObjectId.RAW_LENGTH;
         }
 
         return result;
@@ -84,65 +259,152 @@ public class Tree extends GitObject {
 
     @Override
     public void deserialize(byte[] data) {
-        entries.clear();
-
+        checkMutable();
+        this.hash = null;
         if (data == null || data.length == 0) {
+            entries = new ArrayList<>();
+            raw = null;
             return;
         }
 
+        int capacity = Math.max(4, data.length / 32);
+        int[] entryStarts = new int[capacity];
+        int[] entryModeEnds = new int[capacity];
+        int[] entryNameEnds = new int[capacity];
+        int count = 0;
         int position = 0;
         while (position < data.length) {
-            int nullBytePos = -1;
+            int space = -1;
+            int nul = -1;
             for (int i = position; i < data.length; i++) {
-                if (data[i] == 0) {
-                    nullBytePos = i;
+                if (data[i] == ' ' && space == -1) {
+                    space = i;
+                } else if (data[i] == 0) {
+                    nul = i;
                     break;
                 }
             }
 
-            if (nullBytePos == -1) {
+            if (nul == -1) {
+                break;
+            }
+            if (space == -1) {
+                throw new IllegalArgumentException("Invalid tree entry format: "
+                        + new String(data, position, nul - position, StandardCharsets.UTF_8));
+            }
+            if (nul + 1 + ObjectId.RAW_LENGTH > data.length) {
                 break;
             }
 
-            String modeAndName = new String(data, position, nullBytePos - position);
-            String[] parts = modeAndName.split(" ", 2);
-            if (parts.length != 2) {
-                throw new IllegalArgumentException("Invalid tree entry format: " + modeAndName);
+            if (count == entryStarts.length) {
+                entryStarts = Arrays.copyOf(entryStarts, count * 2);
+                entryModeEnds = Arrays.copyOf(entryModeEnds, count * 2);
+                entryNameEnds = Arrays.copyOf(entryNameEnds, count * 2);
             }
+            entryStarts[count] = position;
+            entryModeEnds[count] = space;
+            entryNameEnds[count] = nul;
+            count++;
+            position = nul + 1 + ObjectId.RAW_LENGTH;
+        }
+
+        raw = data;
+        rawLength = count == 0 ? 0 : entryNameEnds[count - 1] + 1 + ObjectId.RAW_LENGTH;
+        starts = Arrays.copyOf(entryStarts, count);
+        modeEnds = Arrays.copyOf(entryModeEnds, count);
+        nameEnds = Arrays.copyOf(entryNameEnds, count);
+        entries = null;
+    }
 
-            String mode = parts[0];
-            String name = parts[1];
+    @Override
+    protected byte[] computeHash() {
+        if (raw != null) {
+            return SHA1Hasher.hashObject("tree", raw, 0, rawLength);
+        }
+        return SHA1Hasher.hashObject("tree", serialize());
+    }
 
-            position = nullBytePos + 1;
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(materialize());
+    }
 
-            if (position + 20 > data.length) {
-                break;
+    private synchronized List<Entry> materialize() {
+        if (entries == null) {
+            List<Entry> list = new ArrayList<>(starts.length);
+            for (int i = 0; i < starts.length; i++) {
+                list.add(entryAt(i));
             }
+            entries = list;
+        }
+        return entries;
+    }
 
-            byte[] hash = new byte[20];
-            System.arraycopy(data, position, hash, 0, 20);
-            position += 20;
+    private Entry entryAt(int index) {
+        int nameStart = modeEnds[index] + 1;
+        return new Entry(new String(raw, starts[index], modeEnds[index] - starts[index], StandardCharsets.US_ASCII),
+                ObjectId.fromBytes(raw, nameEnds[index] + 1),
+                new String(raw, nameStart, nameEnds[index] - nameStart, StandardCharsets.UTF_8));
+    }
 
-            entries.add(new Entry(mode, hash, name));
+    private int search(byte[] key, int keyTerminator) {
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp;
+            if (raw != null) {
+                int nameStart = modeEnds[mid] + 1;
+                cmp = compareNames(raw, nameStart, nameEnds[mid] - nameStart,
+                        terminator(typeOf(raw, starts[mid], modeEnds[mid] - starts[mid])),
+                        key, 0, key.length, keyTerminator);
+            } else {
+                Entry entry = entries.get(mid);
+                cmp = compareNames(entry.nameBytes, 0, entry.nameBytes.length, terminator(entry.getType()),
+                        key, 0, key.length, keyTerminator);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
         }
+        return -1;
+    }
 
-        entries.sort(Comparator.comparing(Entry::getName));
-        this.hash = null;
+    private static int compareEntries(Entry a, Entry b) {
+        return compareNames(a.nameBytes, 0, a.nameBytes.length, terminator(a.getType()),
+                b.nameBytes, 0, b.nameBytes.length, terminator(b.getType()));
     }
 
-    @Override
-    protected byte[] computeHash() {
-        byte[] content = serialize();
-        String header = "tree " + content.length + "\0";
-        byte[] data = new byte[header.length() + content.length];
+    private static int compareNames(byte[] left, int leftOffset, int leftLength, int leftTerminator,
+                                    byte[] right, int rightOffset, int rightLength, int rightTerminator) {
+        int length = Math.min(leftLength, rightLength);
+        int cmp = Arrays.compareUnsigned(left, leftOffset, leftOffset + length, right, rightOffset, rightOffset + length);
+        if (cmp != 0) {
+            return cmp;
+        }
+        int leftNext = leftLength > length ? left[leftOffset + length] & 0xFF : leftTerminator;
+        int rightNext = rightLength > length ? right[rightOffset + length] & 0xFF : rightTerminator;
+        return Integer.compare(leftNext, rightNext);
+    }
 
-        System.arraycopy(header.getBytes(), 0, data, 0, header.length());
-        System.arraycopy(content, 0, data, header.length(), content.length);
+    private static int terminator(String type) {
+        return "tree".equals(type) ? '/' : 0;
+    }
 
-        return SHA1Hasher.hash(data);
+    private static String typeOf(byte[] data, int offset, int length) {
+        if (matches(data, offset, length, MODE_FILE) || matches(data, offset, length, MODE_EXECUTABLE)) {
+            return "blob";
+        }
+        if (matches(data, offset, length, MODE_TREE) || matches(data, offset, length, MODE_TREE_SHORT)) {
+            return "tree";
+        }
+        return "unknown";
     }
 
-    public List<Entry> getEntries() {
-        return entries;
+    private static boolean matches(byte[] data, int offset, int length, byte[] mode) {
+        return length == mode.length && Arrays.equals(data, offset, offset + length, mode, 0, mode.length);
     }
 }
@@ -0,0 +1,360 @@
+package org.example.repository;
+
+import org.example.objects.ObjectId;
+import org.example.utils.SHA1Hasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+public class CommitGraph {
+    public static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+    public static final int GENERATION_MAX = 0x3FFFFFFF;
+
+    private static final int SIGNATURE = 0x43475048;
+    private static final int VERSION = 1;
+    private static final int HASH_VERSION = 1;
+    private static final int CHUNK_OID_FANOUT = 0x4F494446;
+    private static final int CHUNK_OID_LOOKUP = 0x4F49444C;
+    private static final int CHUNK_COMMIT_DATA = 0x43444154;
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745;
+    private static final int HEADER_SIZE = 8;
+    private static final int CHUNK_ENTRY_SIZE = 12;
+    private static final int FANOUT_SIZE = 256;
+    private static final int HASH_SIZE = 20;
+    private static final int DATA_WIDTH = HASH_SIZE + 16;
+    private static final int PARENT_NONE = 0x70000000;
+    private static final int EXTRA_EDGES = 0x80000000;
+    private static final int LAST_EDGE = 0x80000000;
+
+    public static class Entry {
+        private final byte[] commitId;
+        private final byte[] treeHash;
+        private final List<byte[]> parentIds;
+        private final long commitTime;
+
+        public Entry(byte[] commitId, byte[] treeHash, List<byte[]> parentIds, long commitTime) {
+            if (commitId == null || commitId.length != HASH_SIZE || treeHash == null || treeHash.length != HASH_SIZE) {
+                throw new IllegalArgumentException("Hash length must be 20 bytes");
+            }
+            this.commitId = commitId;
+            this.treeHash = treeHash;
+            this.parentIds = parentIds;
+            this.commitTime = commitTime;
+        }
+
+        public byte[] getCommitId() { return commitId; }
+        public byte[] getTreeHash() { return treeHash; }
+        public List<byte[]> getParentIds() { return parentIds; }
+        public long getCommitTime() { return commitTime; }
+    }
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int fanoutOffset;
+    private final int lookupOffset;
+    private final int dataOffset;
+    private final int edgesOffset;
+
+    private CommitGraph(ByteBuffer buffer, int count, int fanoutOffset, int lookupOffset, int dataOffset, int edgesOffset) {
+        this.buffer = buffer;
+        this.count = count;
+        this.fanoutOffset = fanoutOffset;
+        this.lookupOffset = lookupOffset;
+        this.dataOffset = dataOffset;
+        this.edgesOffset = edgesOffset;
+    }
+
+    public static CommitGraph open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Commit graph too large: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        if (buffer.capacity() < HEADER_SIZE + CHUNK_ENTRY_SIZE + HASH_SIZE
+                || buffer.getInt(0) != SIGNATURE || buffer.get(4) != VERSION || buffer.get(5) != HASH_VERSION) {
+            throw new IOException("Unsupported commit graph format: " + file);
+        }
+        int chunkCount = buffer.get(6) & 0xFF;
+        int end = buffer.capacity() - HASH_SIZE;
+        if (HEADER_SIZE + (chunkCount + 1) * CHUNK_ENTRY_SIZE > end) {
+            throw new IOException("Commit graph corrupted: " + file);
+        }
+
+        int fanoutOffset = -1;
+        int lookupOffset = -1;
+        int dataOffset = -1;
+        int edgesOffset = -1;
+        for (int i = 0; i < chunkCount; i++) {
+            int position = HEADER_SIZE + i * CHUNK_ENTRY_SIZE;
+            int id = buffer.getInt(position);
+            long offset = buffer.getLong(position + 4);
+            long next = buffer.getLong(position + 4 + CHUNK_ENTRY_SIZE);
+            if (offset < 0 || offset > next || next > end) {
+                throw new IOException("Commit graph corrupted: " + file);
+            }
+            switch (id) {
+                case CHUNK_OID_FANOUT -> fanoutOffset = (int) offset;
+                case CHUNK_OID_LOOKUP -> lookupOffset = (int) offset;
+                case CHUNK_COMMIT_DATA -> dataOffset = (int) offset;
+                case CHUNK_EXTRA_EDGES -> edgesOffset = (int) offset;
+                default -> {
+                }
+            }
+        }
+        if (fanoutOffset < 0 || lookupOffset < 0 || dataOffset < 0) {
+            throw new IOException("Commit graph is missing required chunks: " + file);
+        }
+
+        int count = buffer.getInt(fanoutOffset + (FANOUT_SIZE - 1) * 4);
+        if (count < 0 || (long) lookupOffset + (long) count * HASH_SIZE > end
+                || (long) dataOffset + (long) count * DATA_WIDTH > end) {
+            throw new IOException("Commit graph corrupted: " + file);
+        }
+        return new CommitGraph(buffer, count, fanoutOffset, lookupOffset, dataOffset, edgesOffset);
+    }
+
+    public static void write(Path file, List<Entry> entries) throws IOException {
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, Comparator.comparing(Entry::getCommitId, Arrays::compareUnsigned));
+        for (int i = 1; i < sorted.length; i++) {
+            if (Arrays.equals(sorted[i - 1].getCommitId(), sorted[i].getCommitId())) {
+                throw new IllegalArgumentException("Duplicate commit in graph: " + SHA1Hasher.toHex(sorted[i].getCommitId()));
+            }
+        }
+
+        int[][] parents = new int[sorted.length][];
+        int extraEdges = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            List<byte[]> parentIds = sorted[i].getParentIds();
+            parents[i] = new int[parentIds.size()];
+            for (int p = 0; p < parentIds.size(); p++) {
+                parents[i][p] = findPosition(sorted, parentIds.get(p));
+                if (parents[i][p] < 0) {
+                    throw new IllegalArgumentException("Parent " + SHA1Hasher.toHex(parentIds.get(p))
+                            + " of " + SHA1Hasher.toHex(sorted[i].getCommitId()) + " is not in the graph");
+                }
+            }
+            if (parents[i].length > 2) {
+                extraEdges += parents[i].length - 1;
+            }
+        }
+        int[] generations = computeGenerations(parents);
+
+        int chunkCount = extraEdges > 0 ? 4 : 3;
+        long fanoutOffset = HEADER_SIZE + (long) (chunkCount + 1) * CHUNK_ENTRY_SIZE;
+        long lookupOffset = fanoutOffset + FANOUT_SIZE * 4;
+        long dataOffset = lookupOffset + (long) sorted.length * HASH_SIZE;
+        long edgesOffset = dataOffset + (long) sorted.length * DATA_WIDTH;
+        long endOffset = edgesOffset + extraEdges * 4L;
+        if (endOffset + HASH_SIZE > Integer.MAX_VALUE) {
+            throw new IOException("Too many commits for a commit graph: " + sorted.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) endOffset + HASH_SIZE);
+        buffer.putInt(SIGNATURE);
+        buffer.put((byte) VERSION).put((byte) HASH_VERSION).put((byte) chunkCount).put((byte) 0);
+        buffer.putInt(CHUNK_OID_FANOUT).putLong(fanoutOffset);
+        buffer.putInt(CHUNK_OID_LOOKUP).putLong(lookupOffset);
+        buffer.putInt(CHUNK_COMMIT_DATA).putLong(dataOffset);
+        if (extraEdges > 0) {
+            buffer.putInt(CHUNK_EXTRA_EDGES).putLong(edgesOffset);
+        }
+        buffer.putInt(0).putLong(endOffset);
+
+        int[] fanout = new int[FANOUT_SIZE];
+        for (Entry entry : sorted) {
+            fanout[entry.getCommitId()[0] & 0xFF]++;
+        }
+        int total = 0;
+        for (int i = 0; i < FANOUT_SIZE; i++) {
+            total += fanout[i];
+            buffer.putInt(total);
+        }
+
+        for (Entry entry : sorted) {
+            buffer.put(entry.getCommitId());
+        }
+
+        List<Integer> edges = new ArrayList<>();
+        for (int i = 0; i < sorted.length; i++) {
+            buffer.put(sorted[i].getTreeHash());
+            int[] commitParents = parents[i];
+            buffer.putInt(commitParents.length > 0 ? commitParents[0] : PARENT_NONE);
+            if (commitParents.length <= 1) {
+                buffer.putInt(PARENT_NONE);
+            } else if (commitParents.length == 2) {
+                buffer.putInt(commitParents[1]);
+            } else {
+                buffer.putInt(EXTRA_EDGES | edges.size());
+                for (int p = 1; p < commitParents.length; p++) {
+                    edges.add(p == commitParents.length - 1 ? commitParents[p] | LAST_EDGE : commitParents[p]);
+                }
+            }
+            long commitTime = sorted[i].getCommitTime();
+            buffer.putInt((generations[i] << 2) | (int) ((commitTime >>> 32) & 0x3));
+            buffer.putInt((int) commitTime);
+        }
+        for (int edge : edges) {
+            buffer.putInt(edge);
+        }
+
+        buffer.put(SHA1Hasher.hash(buffer.array(), 0, buffer.position()));
+
+        Files.createDirectories(file.getParent());
+        Path temp = Files.createTempFile(file.getParent(), "tmp_graph_", "");
+        try {
+            Files.write(temp, buffer.array());
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int findPosition(byte[] commitId) {
+        return findPosition(ObjectId.fromBytes(commitId));
+    }
+
+    public int findPosition(ObjectId commitId) {
+        int first = commitId.getFirstByte();
+        int low = first == 0 ? 0 : buffer.getInt(fanoutOffset + (first - 1) * 4);
+        int high = buffer.getInt(fanoutOffset + first * 4) - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = commitId.compareTo(buffer, lookupOffset + mid * HASH_SIZE);
+            if (cmp > 0) {
+                low = mid + 1;
+            } else if (cmp < 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] getCommitId(int position) {
+        return getObjectId(position).toBytes();
+    }
+
+    public ObjectId getObjectId(int position) {
+        return ObjectId.fromBuffer(buffer, lookupOffset + position * HASH_SIZE);
+    }
+
+    public byte[] getTreeHash(int position) {
+        return getTreeId(position).toBytes();
+    }
+
+    public ObjectId getTreeId(int position) {
+        return ObjectId.fromBuffer(buffer, dataOffset + position * DATA_WIDTH);
+    }
+
+    public int[] getParents(int position) {
+        int offset = dataOffset + position * DATA_WIDTH + HASH_SIZE;
+        int first = buffer.getInt(offset);
+        if (first == PARENT_NONE) {
+            return new int[0];
+        }
+        int second = buffer.getInt(offset + 4);
+        if (second == PARENT_NONE) {
+            return new int[]{first};
+        }
+        if ((second & EXTRA_EDGES) == 0) {
+            return new int[]{first, second};
+        }
+        if (edgesOffset < 0) {
+            throw new IllegalStateException("Commit graph has no extra edges chunk");
+        }
+
+        List<Integer> result = new ArrayList<>();
+        result.add(first);
+        int edge = edgesOffset + (second & ~EXTRA_EDGES) * 4;
+        while (true) {
+            int value = buffer.getInt(edge);
+            result.add(value & ~LAST_EDGE);
+            if ((value & LAST_EDGE) != 0) {
+                break;
+            }
+            edge += 4;
+        }
+        return result.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int getGeneration(int position) {
+        return buffer.getInt(dataOffset + position * DATA_WIDTH + HASH_SIZE + 8) >>> 2;
+    }
+
+    public long getCommitTime(int position) {
+        int offset = dataOffset + position * DATA_WIDTH + HASH_SIZE + 8;
+        long high = buffer.getInt(offset) & 0x3L;
+        return (high << 32) | (buffer.getInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private static int findPosition(Entry[] sorted, byte[] commitId) {
+        int low = 0;
+        int high = sorted.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(sorted[mid].getCommitId(), commitId);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] computeGenerations(int[][] parents) {
+        int[] generations = new int[parents.length];
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int start = 0; start < parents.length; start++) {
+            if (generations[start] != 0) {
+                continue;
+            }
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                int current = stack.peek();
+                int generation = 0;
+                boolean ready = true;
+                for (int parent : parents[current]) {
+                    if (generations[parent] == 0) {
+                        stack.push(parent);
+                        ready = false;
+                    } else {
+                        generation = Math.max(generation, generations[parent]);
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    generations[current] = Math.min(GENERATION_MAX, generation + 1);
+                }
+            }
+        }
+        return generations;
+    }
+}
@@ -0,0 +1,247 @@
+package org.example.repository;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+public class Delta {
+    private static final int BLOCK_SIZE = 16;
+    private static final int MAX_COPY_SIZE = 0x10000;
+    private static final int MAX_INSERT_SIZE = 0x7F;
+    private static final int HASH_MULTIPLIER = 31;
+    private static final int MAX_CANDIDATES = 64;
+
+    private Delta() {
+    }
+
+    public static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(16, target.length / 4));
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        BlockIndex blocks = new BlockIndex(base);
+        int power = 1;
+        for (int i = 0; i < BLOCK_SIZE - 1; i++) {
+            power *= HASH_MULTIPLIER;
+        }
+
+        int insertStart = 0;
+        int pos = 0;
+        int rolling = 0;
+        boolean hashValid = false;
+        while (pos + BLOCK_SIZE <= target.length) {
+            if (!hashValid) {
+                rolling = hash(target, pos);
+                hashValid = true;
+            }
+
+            int bestOffset = -1;
+            int bestLength = 0;
+            int candidates = 0;
+            for (int candidate = blocks.first(rolling);
+                 candidate >= 0 && candidates < MAX_CANDIDATES;
+                 candidate = blocks.next(candidate), candidates++) {
+                int length = matchLength(base, candidate, target, pos);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = candidate;
+                }
+            }
+
+            if (bestLength >= BLOCK_SIZE) {
+                int backward = 0;
+                while (pos - backward > insertStart && bestOffset - backward > 0
+                        && base[bestOffset - backward - 1] == target[pos - backward - 1]) {
+                    backward++;
+                }
+                writeInsert(out, target, insertStart, pos - backward);
+                writeCopy(out, bestOffset - backward, bestLength + backward);
+                pos += bestLength;
+                insertStart = pos;
+                hashValid = false;
+                continue;
+            }
+
+            if (pos + BLOCK_SIZE < target.length) {
+                rolling = (rolling - (target[pos] & 0xFF) * power) * HASH_MULTIPLIER
+                        + (target[pos + BLOCK_SIZE] & 0xFF);
+            }
+            pos++;
+        }
+
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] cursor = {0};
+        long baseSize = readVarint(delta, cursor);
+        long resultSize = readVarint(delta, cursor);
+        if (baseSize != base.length) {
+            throw new IOException("Delta base size mismatch: expected " + baseSize + ", got " + base.length);
+        }
+        if (resultSize > Integer.MAX_VALUE - 8) {
+            throw new IOException("Delta result too large: " + resultSize + " bytes");
+        }
+
+        byte[] result = new byte[(int) resultSize];
+        int out = 0;
+        int pos = cursor[0];
+        while (pos < delta.length) {
+            int cmd = delta[pos++] & 0xFF;
+            if ((cmd & 0x80) != 0) {
+                if (pos + Integer.bitCount(cmd & 0x7F) > delta.length) {
+                    throw new IOException("Truncated delta copy instruction");
+                }
+                long offset = 0;
+                int size = 0;
+                for (int i = 0; i < 4; i++) {
+                    if ((cmd & (1 << i)) != 0) {
+                        offset |= (long) (delta[pos++] & 0xFF) << (8 * i);
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    if ((cmd & (0x10 << i)) != 0) {
+                        size |= (delta[pos++] & 0xFF) << (8 * i);
+                    }
+                }
+                if (size == 0) {
+                    size = MAX_COPY_SIZE;
+                }
+                if (offset + size > base.length || out + size > result.length) {
+                    throw new IOException("Delta copy out of bounds");
+                }
+                System.arraycopy(base, (int) offset, result, out, size);
+                out += size;
+            } else if (cmd != 0) {
+                if (pos + cmd > delta.length || out + cmd > result.length) {
+                    throw new IOException("Delta insert out of bounds");
+                }
+                System.arraycopy(delta, pos, result, out, cmd);
+                pos += cmd;
+                out += cmd;
+            } else {
+                throw new IOException("Invalid delta opcode 0");
+            }
+        }
+
+        if (out != result.length) {
+            throw new IOException("Delta produced " + out + " bytes, expected " + result.length);
+        }
+        return result;
+    }
+
+    public static long resultSize(byte[] delta) throws IOException {
+        int[] cursor = {0};
+        readVarint(delta, cursor);
+        return readVarint(delta, cursor);
+    }
+
+    private static int matchLength(byte[] base, int baseOffset, byte[] target, int targetOffset) {
+        int max = Math.min(base.length - baseOffset, target.length - targetOffset);
+        int length = 0;
+        while (length < max && base[baseOffset + length] == target[targetOffset + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            h = h * HASH_MULTIPLIER + (data[offset + i] & 0xFF);
+        }
+        return h;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        while (from < to) {
+            int length = Math.min(MAX_INSERT_SIZE, to - from);
+            out.write(length);
+            out.write(data, from, length);
+            from += length;
+        }
+    }
+
+    private static void writeCopy(ByteArrayOutputStream out, long offset, int length) {
+        while (length > 0) {
+            int size = Math.min(MAX_COPY_SIZE, length);
+            int cmd = 0x80;
+            byte[] args = new byte[7];
+            int argCount = 0;
+            for (int i = 0; i < 4; i++) {
+                int b = (int) ((offset >>> (8 * i)) & 0xFF);
+                if (b != 0) {
+                    cmd |= 1 << i;
+                    args[argCount++] = (byte) b;
+                }
+            }
+            int encodedSize = size == MAX_COPY_SIZE ? 0 : size;
+            for (int i = 0; i < 3; i++) {
+                int b = (encodedSize >>> (8 * i)) & 0xFF;
+                if (b != 0) {
+                    cmd |= 0x10 << i;
+                    args[argCount++] = (byte) b;
+                }
+            }
+            out.write(cmd);
+            out.write(args, 0, argCount);
+            offset += size;
+            length -= size;
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] cursor) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (cursor[0] >= data.length) {
+                throw new IOException("Truncated delta header");
+            }
+            b = data[cursor[0]++] & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static class BlockIndex {
+        private final int[] heads;
+        private final int[] chain;
+        private final int mask;
+
+        BlockIndex(byte[] base) {
+            int blocks = base.length / BLOCK_SIZE;
+            int capacity = Integer.highestOneBit(Math.max(1, blocks)) << 1;
+            this.mask = capacity - 1;
+            this.heads = new int[capacity];
+            this.chain = new int[blocks];
+            Arrays.fill(heads, -1);
+
+            for (int block = blocks - 1; block >= 0; block--) {
+                int slot = hash(base, block * BLOCK_SIZE) & mask;
+                chain[block] = heads[slot];
+                heads[slot] = block;
+            }
+        }
+
+        int first(int hash) {
+            int block = heads[hash & mask];
+            return block < 0 ? -1 : block * BLOCK_SIZE;
+        }
+
+        int next(int offset) {
+            int block = chain[offset / BLOCK_SIZE];
+            return block < 0 ? -1 : block * BLOCK_SIZE;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.example.repository;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public class IgnoreRules {
+    private static final String IGNORE_FILE = ".gitignore";
+
+    private static class Rule {
+        private final String base;
+        private final Pattern pattern;
+        private final boolean negated;
+        private final boolean directoryOnly;
+        private final boolean anchored;
+
+        Rule(String base, Pattern pattern, boolean negated, boolean directoryOnly, boolean anchored) {
+            this.base = base;
+            this.pattern = pattern;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.anchored = anchored;
+        }
+
+        boolean matches(String path, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            String relative;
+            if (base.isEmpty()) {
+                relative = path;
+            } else if (path.startsWith(base) && path.length() > base.length() && path.charAt(base.length()) == '/') {
+                relative = path.substring(base.length() + 1);
+            } else {
+                return false;
+            }
+            if (!anchored) {
+                relative = relative.substring(relative.lastIndexOf('/') + 1);
+            }
+            return pattern.matcher(relative).matches();
+        }
+    }
+
+    private final Path workingDir;
+    private final List<Rule> excludeRules;
+    private final Map<String, List<Rule>> directoryRules = new HashMap<>();
+
+    private IgnoreRules(Path workingDir, List<Rule> excludeRules) {
+        this.workingDir = workingDir;
+        this.excludeRules = excludeRules;
+    }
+
+    public static IgnoreRules load(Path workingDir, Path gitDir) throws IOException {
+        List<Rule> excludeRules = new ArrayList<>();
+        for (String line : readLines(gitDir.resolve("info").resolve("exclude"))) {
+            Rule rule = parse("", line);
+            if (rule != null) {
+                excludeRules.add(rule);
+            }
+        }
+        return new IgnoreRules(workingDir, excludeRules);
+    }
+
+    public static IgnoreRules empty(Path workingDir) {
+        return new IgnoreRules(workingDir, new ArrayList<>());
+    }
+
+    public boolean isIgnored(String path, boolean directory) throws IOException {
+        int slash = path.indexOf('/');
+        while (slash != -1) {
+            if (matches(path.substring(0, slash), true)) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+        return matches(path, directory);
+    }
+
+    public boolean matches(String path, boolean directory) throws IOException {
+        int slash = path.lastIndexOf('/');
+        String dir = slash == -1 ? "" : path.substring(0, slash);
+
+        while (true) {
+            List<Rule> rules = rulesFor(dir);
+            for (int i = rules.size() - 1; i >= 0; i--) {
+                Rule rule = rules.get(i);
+                if (rule.matches(path, directory)) {
+                    return !rule.negated;
+                }
+            }
+            if (dir.isEmpty()) {
+                break;
+            }
+            int parent = dir.lastIndexOf('/');
+            dir = parent == -1 ? "" : dir.substring(0, parent);
+        }
+
+        for (int i = excludeRules.size() - 1; i >= 0; i--) {
+            Rule rule = excludeRules.get(i);
+            if (rule.matches(path, directory)) {
+                return !rule.negated;
+            }
+        }
+        return false;
+    }
+
+    private List<Rule> rulesFor(String dir) throws IOException {
+        List<Rule> rules = directoryRules.get(dir);
+        if (rules == null) {
+            rules = new ArrayList<>();
+            Path ignoreFile = dir.isEmpty() ? workingDir.resolve(IGNORE_FILE) : workingDir.resolve(dir).resolve(IGNORE_FILE);
+            for (String line : readLines(ignoreFile)) {
+                Rule rule = parse(dir, line);
+                if (rule != null) {
+                    rules.add(rule);
+                }
+            }
+            directoryRules.put(dir, rules);
+        }
+        return rules;
+    }
+
+    private static List<String> readLines(Path file) throws IOException {
+        try {
+            return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            if (Files.isDirectory(file)) {
+                return List.of();
+            }
+            throw e;
+        }
+    }
+
+    private static Rule parse(String base, String line) {
+        String pattern = stripTrailingSpaces(line);
+        if (pattern.isEmpty() || pattern.startsWith("#")) {
+            return null;
+        }
+
+        boolean negated = false;
+        if (pattern.startsWith("!")) {
+            negated = true;
+            pattern = pattern.substring(1);
+        } else if (pattern.startsWith("\\!") || pattern.startsWith("\\#")) {
+            pattern = pattern.substring(1);
+        }
+
+        boolean directoryOnly = false;
+        if (pattern.endsWith("/")) {
+            directoryOnly = true;
+            pattern = pattern.substring(0, pattern.length() - 1);
+        }
+
+        boolean anchored = pattern.contains("/");
+        if (pattern.startsWith("/")) {
+            pattern = pattern.substring(1);
+        }
+        if (pattern.isEmpty()) {
+            return null;
+        }
+
+        return new Rule(base, Pattern.compile(toRegex(pattern)), negated, directoryOnly, anchored);
+    }
+
+    private static String stripTrailingSpaces(String line) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) == ' ' && (end < 2 || line.charAt(end - 2) != '\\')) {
+            end--;
+        }
+        return line.substring(0, end);
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                boolean segmentStart = i == 0 || glob.charAt(i - 1) == '/';
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*' && segmentStart) {
+                    if (i + 2 == glob.length()) {
+                        regex.append(".*");
+                        i += 2;
+                        continue;
+                    }
+                    if (glob.charAt(i + 2) == '/') {
+                        regex.append("(?:.*/)?");
+                        i += 3;
+                        continue;
+                    }
+                }
+                regex.append("[^/]*");
+                while (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    i++;
+                }
+            } else if (c == '?') {
+                regex.append("[^/]");
+            } else if (c == '[') {
+                int close = findClassEnd(glob, i);
+                if (close == -1) {
+                    regex.append("\\[");
+                } else {
+                    String body = glob.substring(i + 1, close);
+                    if (body.startsWith("!") || body.startsWith("^")) {
+                        body = "^" + body.substring(1);
+                    }
+                    regex.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = close;
+                }
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                i++;
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+            i++;
+        }
+        return regex.toString();
+    }
+
+    private static int findClassEnd(String glob, int open) {
+        int i = open + 1;
+        if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+            i++;
+        }
+        if (i < glob.length() && glob.charAt(i) == ']') {
+            i++;
+        }
+        while (i < glob.length()) {
+            if (glob.charAt(i) == ']') {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+}
@@ -1,104 +1,985 @@
 package org.example.repository;
 
+import org.example.objects.ObjectId;
 import org.example.utils.SHA1Hasher;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Index {
-    private final Map<String, IndexEntry> entries;
+    private static final byte[] SIGNATURE = {'D', 'I', 'R', 'C'};
+    private static final int SIGNATURE_INT = 0x44495243;
+    private static final byte[] TREE_EXTENSION = {'T', 'R', 'E', 'E'};
+    public static final int VERSION = 2;
+    public static final int VERSION_PREFIX_COMPRESSED = 4;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_STAT_SIZE = 36;
+    private static final int ENTRY_FIXED_SIZE = 38;
+    private static final int MAX_PATH_LENGTH = 0xFFFF;
+    private static final byte[] PADDING = new byte[8];
+    private static final byte[] DELTA_SIGNATURE = {'S', 'D', 'L', 'T'};
+    private static final int DELTA_VERSION = 1;
+    private static final int DELTA_HEADER_SIZE = 28;
+    private static final long DEFAULT_MAX_DELTA_BYTES = 64 * 1024;
+    private static final int REFRESH_CHUNK_MIN = 500;
+
+    public static class CachedTree {
+        private final ObjectId id;
+        private final int entryCount;
+
+        public CachedTree(byte[] hash, int entryCount) {
+            if (hash == null || hash.length != 20) {
+                throw new IllegalArgumentException("Hash length must be 20 bytes");
+            }
+            this.id = ObjectId.fromBytes(hash);
+            this.entryCount = entryCount;
+        }
+
+        public CachedTree(ObjectId id, int entryCount) {
+            if (id == null) {
+                throw new IllegalArgumentException("Tree id cannot be null");
+            }
+            this.id = id;
+            this.entryCount = entryCount;
+        }
+
+        public ObjectId getId() { return id; }
+        public byte[] getHash() { return id.toBytes(); }
+        public int getEntryCount() { return entryCount; }
+    }
+
+    public final class Cursor {
+        private final Iterator<Map.Entry<String, IndexEntry>> overlayEntries;
+        private final int endBase;
+        private Map.Entry<String, IndexEntry> pending;
+        private byte[] pendingKey;
+        private int nextBase;
+        private int currentBase = -1;
+        private IndexEntry current;
+        private byte[] currentKey;
+
+        private Cursor(int fromBase, int toBase, Map<String, IndexEntry> overlayRange) {
+            overlayEntries = overlayRange.entrySet().iterator();
+            nextBase = fromBase;
+            endBase = toBase;
+            advanceOverlay();
+        }
+
+        public boolean next() {
+            currentBase = -1;
+            current = null;
+            while (nextBase < endBase || pending != null) {
+                int cmp;
+                if (pending == null) {
+                    cmp = -1;
+                } else if (nextBase >= endBase) {
+                    cmp = 1;
+                } else {
+                    cmp = compareBasePath(nextBase, pendingKey);
+                }
+                if (cmp < 0) {
+                    currentBase = nextBase++;
+                    return true;
+                }
+                if (cmp == 0) {
+                    nextBase++;
+                }
+                IndexEntry entry = pending.getValue();
+                byte[] key = pendingKey;
+                advanceOverlay();
+                if (entry != null) {
+                    current = entry;
+                    currentKey = key;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public String getPath() {
+            return currentBase >= 0 ? basePath(currentBase) : positioned().getPath();
+        }
+
+        public ObjectId getId() {
+            return currentBase >= 0 ? ObjectId.fromBuffer(base, baseOffsets[currentBase] + 16) : positioned().getId();
+        }
+
+        public int getMode() {
+            return currentBase >= 0 ? base.getInt(baseOffsets[currentBase] + 12) : positioned().getMode();
+        }
+
+        public int getSize() {
+            return currentBase >= 0 ? base.getInt(baseOffsets[currentBase] + 8) : positioned().getSize();
+        }
+
+        public long getMtimeMillis() {
+            return currentBase >= 0 ? base.getLong(baseOffsets[currentBase]) : positioned().getMtimeMillis();
+        }
+
+        public IndexEntry toEntry() {
+            return currentBase >= 0 ? baseEntry(currentBase) : positioned();
+        }
+
+        private void writeTo(DataOutputStream out, byte[] scratch) throws IOException {
+            if (currentBase < 0) {
+                writeEntry(out, positioned());
+                return;
+            }
+            int offset = baseOffsets[currentBase];
+            int length = recordLength(base.getShort(offset + 36) & 0xFFFF);
+            base.get(offset, scratch, 0, length);
+            out.write(scratch, 0, length);
+        }
+
+        private void writeStatTo(DataOutputStream out, byte[] scratch) throws IOException {
+            if (currentBase < 0) {
+                IndexEntry entry = positioned();
+                out.writeLong(entry.getMtimeMillis());
+                out.writeInt(entry.getSize());
+                out.writeInt(entry.getMode());
+                out.write(entry.getHash());
+                return;
+            }
+            base.get(baseOffsets[currentBase], scratch, 0, ENTRY_STAT_SIZE);
+            out.write(scratch, 0, ENTRY_STAT_SIZE);
+        }
+
+        private byte[] pathBytes(byte[] scratch) throws IOException {
+            if (currentBase < 0) {
+                positioned();
+                if (currentKey.length > MAX_PATH_LENGTH) {
+                    throw new IOException("Path too long for index: " + current.getPath());
+                }
+                return currentKey;
+            }
+            int offset = baseOffsets[currentBase];
+            base.get(offset + ENTRY_FIXED_SIZE, scratch, 0, base.getShort(offset + 36) & 0xFFFF);
+            return scratch;
+        }
+
+        private int pathLength() {
+            return currentBase >= 0 ? base.getShort(baseOffsets[currentBase] + 36) & 0xFFFF : currentKey.length;
+        }
+
+        private IndexEntry positioned() {
+            if (current == null) {
+                throw new IllegalStateException("Cursor is not positioned on an entry");
+            }
+            return current;
+        }
+
+        private void advanceOverlay() {
+            if (overlayEntries.hasNext()) {
+                pending = overlayEntries.next();
+                pendingKey = pending.getKey().getBytes(StandardCharsets.UTF_8);
+            } else {
+                pending = null;
+                pendingKey = null;
+            }
+        }
+    }
+
+    private final TreeMap<String, IndexEntry> overlay = new TreeMap<>(Index::comparePaths);
+    private final Map<String, CachedTree> cachedTrees = new HashMap<>();
+    private Set<String> upToDateOverlay = new HashSet<>();
+    private final TreeMap<String, IndexEntry> unsavedEntries = new TreeMap<>(Index::comparePaths);
+    private final Map<String, CachedTree> unsavedTrees = new HashMap<>();
     private final Path indexFile;
+    private final Path deltaFile;
+    private ByteBuffer base;
+    private int[] baseOffsets = new int[0];
+    private int size;
+    private List<IndexEntry> sortedEntries;
+    private BitSet upToDate = new BitSet();
+    private long indexMtimeMillis = Long.MIN_VALUE;
+    private int version = defaultVersion();
+    private boolean splitIndex = defaultSplitIndex();
+    private long maxDeltaBytes = DEFAULT_MAX_DELTA_BYTES;
+    private byte[] baseChecksum;
+    private long baseLength;
+    private long deltaLength;
+    private boolean rewriteRequired = true;
+    private LockFile updateLock;
 
     public Index(Path indexFile) {
         this.indexFile = indexFile;
-        this.entries = new LinkedHashMap<>();
+        this.deltaFile = indexFile.resolveSibling(indexFile.getFileName() + ".delta");
+    }
+
+    public boolean isSplitIndex() {
+        return splitIndex;
+    }
+
+    public void setSplitIndex(boolean splitIndex) {
+        this.splitIndex = splitIndex;
+    }
+
+    public void setMaxDeltaBytes(long maxDeltaBytes) {
+        if (maxDeltaBytes < 0) {
+            throw new IllegalArgumentException("Delta size limit cannot be negative");
+        }
+        this.maxDeltaBytes = maxDeltaBytes;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        if (version != VERSION && version != VERSION_PREFIX_COMPRESSED) {
+            throw new IllegalArgumentException("Unsupported index version " + version);
+        }
+        this.version = version;
     }
 
     public void add(IndexEntry entry) {
-        entries.put(entry.getPath(), entry);
+        IndexEntry previous = getEntry(entry.getPath());
+        overlay.put(entry.getPath(), entry);
+        unsavedEntries.put(entry.getPath(), entry);
+        entriesChanged();
+        if (previous == null) {
+            size++;
+        }
+        if (previous == null || previous.getMode() != entry.getMode()
+                || !previous.getId().equals(entry.getId())) {
+            invalidateCachedTrees(entry.getPath());
+        }
     }
 
     public void remove(String path) {
-        entries.remove(path);
+        if (!contains(path)) {
+            return;
+        }
+        if (basePosition(path) >= 0) {
+            overlay.put(path, null);
+        } else {
+            overlay.remove(path);
+        }
+        unsavedEntries.put(path, null);
+        entriesChanged();
+        size--;
+        invalidateCachedTrees(path);
+    }
+
+    public CachedTree getCachedTree(String directory) {
+        return cachedTrees.get(directory);
+    }
+
+    public void putCachedTree(String directory, byte[] hash, int entryCount) {
+        putCachedTree(directory, new CachedTree(hash, entryCount));
+    }
+
+    public void putCachedTree(String directory, ObjectId id, int entryCount) {
+        putCachedTree(directory, new CachedTree(id, entryCount));
+    }
+
+    private void putCachedTree(String directory, CachedTree tree) {
+        cachedTrees.put(directory, tree);
+        unsavedTrees.put(directory, tree);
+    }
+
+    private void invalidateCachedTrees(String path) {
+        int slash = path.lastIndexOf('/');
+        while (slash != -1) {
+            path = path.substring(0, slash);
+            dropCachedTree(path);
+            slash = path.lastIndexOf('/');
+        }
+        dropCachedTree("");
+    }
+
+    private void dropCachedTree(String directory) {
+        if (cachedTrees.remove(directory) != null) {
+            unsavedTrees.put(directory, null);
+        }
     }
 
     public IndexEntry getEntry(String path) {
-        return entries.get(path);
+        if (overlay.containsKey(path)) {
+            return overlay.get(path);
+        }
+        int position = basePosition(path);
+        return position < 0 ? null : baseEntry(position);
     }
 
     public List<IndexEntry> getEntries() {
-        List<IndexEntry> sorted = new ArrayList<>(entries.values());
-        sorted.sort(Comparator.comparing(IndexEntry::getPath));
-        return sorted;
+        if (sortedEntries == null) {
+            List<IndexEntry> list = new ArrayList<>(size);
+            Cursor cursor = cursor();
+            while (cursor.next()) {
+                list.add(cursor.toEntry());
+            }
+            sortedEntries = Collections.unmodifiableList(list);
+        }
+        return sortedEntries;
+    }
+
+    public Cursor cursor() {
+        return new Cursor(0, baseOffsets.length, overlay);
+    }
+
+    public List<IndexEntry> refresh(Path workingDir) throws IOException {
+        return refresh(workingDir, Runtime.getRuntime().availableProcessors());
+    }
+
+    public List<IndexEntry> refresh(Path workingDir, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        int chunks = Math.max(1, Math.min(threads, baseOffsets.length / REFRESH_CHUNK_MIN));
+        RefreshResult result = new RefreshResult();
+        if (chunks == 1) {
+            refreshRange(workingDir, 0, baseOffsets.length, result);
+        } else {
+            int chunkSize = (baseOffsets.length + chunks - 1) / chunks;
+            List<Future<RefreshResult>> results = new ArrayList<>(chunks);
+            try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int from = 0; from < baseOffsets.length; from += chunkSize) {
+                    int start = from;
+                    int end = Math.min(baseOffsets.length, from + chunkSize);
+                    results.add(workers.submit(() -> {
+                        RefreshResult chunk = new RefreshResult();
+                        refreshRange(workingDir, start, end, chunk);
+                        return chunk;
+                    }));
+                }
+                for (Future<RefreshResult> chunk : results) {
+                    result.merge(chunk.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while refreshing the index");
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to refresh the index", e.getCause());
+            }
+        }
+
+        upToDate = result.freshBase;
+        upToDateOverlay = result.freshOverlay;
+        return result.stale;
+    }
+
+    public boolean isUpToDate(String path) {
+        if (overlay.containsKey(path)) {
+            return upToDateOverlay.contains(path);
+        }
+        int position = basePosition(path);
+        return position >= 0 && upToDate.get(position);
+    }
+
+    private void refreshRange(Path workingDir, int from, int to, RefreshResult result) {
+        NavigableMap<String, IndexEntry> overlayRange = overlay;
+        if (from > 0) {
+            overlayRange = overlayRange.tailMap(basePath(from), true);
+        }
+        if (to < baseOffsets.length) {
+            overlayRange = overlayRange.headMap(basePath(to), false);
+        }
+        Cursor cursor = new Cursor(from, to, overlayRange);
+        while (cursor.next()) {
+            if (isFresh(workingDir, cursor)) {
+                if (cursor.currentBase >= 0) {
+                    result.freshBase.set(cursor.currentBase);
+                } else {
+                    result.freshOverlay.add(cursor.current.getPath());
+                }
+            } else {
+                result.stale.add(cursor.toEntry());
+            }
+        }
+    }
+
+    private boolean isFresh(Path workingDir, Cursor cursor) {
+        long mtimeMillis = cursor.getMtimeMillis();
+        if (mtimeMillis >= indexMtimeMillis) {
+            return false;
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(workingDir.resolve(cursor.getPath()), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+        return attrs.isRegularFile() && (int) attrs.size() == cursor.getSize()
+                && attrs.lastModifiedTime().toMillis() == mtimeMillis;
+    }
+
+    private void entriesChanged() {
+        sortedEntries = null;
+        upToDate = new BitSet();
+        upToDateOverlay = new HashSet<>();
+    }
+
+    private static class RefreshResult {
+        private final BitSet freshBase = new BitSet();
+        private final Set<String> freshOverlay = new HashSet<>();
+        private final List<IndexEntry> stale = new ArrayList<>();
+
+        private void merge(RefreshResult chunk) {
+            freshBase.or(chunk.freshBase);
+            freshOverlay.addAll(chunk.freshOverlay);
+            stale.addAll(chunk.stale);
+        }
     }
 
     public boolean contains(String path) {
-        return entries.containsKey(path);
+        if (overlay.containsKey(path)) {
+            return overlay.get(path) != null;
+        }
+        return basePosition(path) >= 0;
     }
 
     public void clear() {
-        entries.clear();
+        overlay.clear();
+        cachedTrees.clear();
+        unsavedEntries.clear();
+        unsavedTrees.clear();
+        rewriteRequired = true;
+        base = null;
+        baseOffsets = new int[0];
+        size = 0;
+        entriesChanged();
     }
 
     public int size() {
-        return entries.size();
+        return size;
     }
 
     public boolean isEmpty() {
-        return entries.isEmpty();
+        return size == 0;
+    }
+
+    public boolean isRacilyClean(IndexEntry entry) {
+        return entry.getMtimeMillis() >= indexMtimeMillis;
+    }
+
+    public void lockForUpdate() throws IOException {
+        if (updateLock != null) {
+            throw new IllegalStateException("Index is already locked for update");
+        }
+        LockFile lock = LockFile.acquire(indexFile);
+        try {
+            load();
+        } catch (IOException | RuntimeException e) {
+            lock.close();
+            throw e;
+        }
+        updateLock = lock;
+    }
+
+    public void unlock() throws IOException {
+        LockFile lock = updateLock;
+        updateLock = null;
+        if (lock != null) {
+            lock.close();
+        }
     }
 
     public void save() throws IOException {
-        ByteArrayOutputStream tempStream = new ByteArrayOutputStream();
+        if (updateLock != null) {
+            save(updateLock);
+            return;
+        }
+        try (LockFile lock = LockFile.acquire(indexFile)) {
+            save(lock);
+        }
+    }
+
+    private void save(LockFile lock) throws IOException {
+        smudgeRacilyCleanEntries();
+        if (canAppendDelta()) {
+            appendDelta();
+        } else {
+            writeIndex(lock);
+        }
+    }
+
+    private void smudgeRacilyCleanEntries() {
+        if (indexMtimeMillis == Long.MIN_VALUE) {
+            return;
+        }
+        List<IndexEntry> racy = new ArrayList<>();
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            if (cursor.getMtimeMillis() >= indexMtimeMillis && cursor.getSize() != IndexEntry.SMUDGED_SIZE) {
+                IndexEntry entry = cursor.toEntry();
+                if (!unsavedEntries.containsKey(entry.getPath())) {
+                    racy.add(entry.smudged());
+                }
+            }
+        }
+        for (IndexEntry entry : racy) {
+            overlay.put(entry.getPath(), entry);
+            unsavedEntries.put(entry.getPath(), entry);
+        }
+        if (!racy.isEmpty()) {
+            entriesChanged();
+        }
+    }
+
+    private boolean canAppendDelta() throws IOException {
+        if (!splitIndex || rewriteRequired || deltaLength < 0 || !Files.exists(indexFile)) {
+            return false;
+        }
+        long currentDelta = Files.exists(deltaFile) ? Files.size(deltaFile) : 0;
+        if (currentDelta != deltaLength || currentDelta > Math.max(maxDeltaBytes, baseLength / 5)) {
+            return false;
+        }
+        byte[] onDisk = new byte[20];
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() != baseLength) {
+                return false;
+            }
+            channel.read(ByteBuffer.wrap(onDisk), baseLength - 20);
+        }
+        return Arrays.equals(onDisk, baseChecksum);
+    }
+
+    private void appendDelta() throws IOException {
+        if (unsavedEntries.isEmpty() && unsavedTrees.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeInt(unsavedEntries.size());
+            for (Map.Entry<String, IndexEntry> change : unsavedEntries.entrySet()) {
+                byte[] path = change.getKey().getBytes(StandardCharsets.UTF_8);
+                if (path.length > MAX_PATH_LENGTH) {
+                    throw new IOException("Path too long for index: " + change.getKey());
+                }
+                IndexEntry entry = change.getValue();
+                out.writeBoolean(entry != null);
+                out.writeShort(path.length);
+                out.write(path);
+                if (entry != null) {
+                    out.writeLong(entry.getMtimeMillis());
+                    out.writeInt(entry.getSize());
+                    out.writeInt(entry.getMode());
+                    out.write(entry.getHash());
+                }
+            }
+            out.writeInt(unsavedTrees.size());
+            for (Map.Entry<String, CachedTree> change : unsavedTrees.entrySet()) {
+                CachedTree tree = change.getValue();
+                out.writeBoolean(tree != null);
+                out.writeUTF(change.getKey());
+                if (tree != null) {
+                    out.writeInt(tree.entryCount);
+                    out.write(tree.id.toBytes());
+                }
+            }
+        }
+
+        byte[] batch = payload.toByteArray();
+        ByteArrayOutputStream record = new ByteArrayOutputStream(DELTA_HEADER_SIZE + batch.length + 24);
+        try (DataOutputStream out = new DataOutputStream(record)) {
+            if (deltaLength == 0) {
+                out.write(DELTA_SIGNATURE);
+                out.writeInt(DELTA_VERSION);
+                out.write(baseChecksum);
+            }
+            out.writeInt(batch.length);
+            out.write(batch);
+            out.write(SHA1Hasher.hash(batch));
+        }
+        try (FileChannel channel = FileChannel.open(deltaFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(record.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        deltaLength += record.size();
+        indexMtimeMillis = Math.max(indexMtimeMillis, Files.getLastModifiedTime(deltaFile).toMillis());
+        unsavedEntries.clear();
+        unsavedTrees.clear();
+    }
+
+    private void writeIndex(LockFile lock) throws IOException {
+        ByteArrayOutputStream tempStream = new ByteArrayOutputStream(HEADER_SIZE + size * 64);
         try (DataOutputStream tempOut = new DataOutputStream(tempStream)) {
-            tempOut.writeInt(entries.size());
-            for (IndexEntry entry : getEntries()) {
-                writeEntry(tempOut, entry);
+            tempOut.write(SIGNATURE);
+            tempOut.writeInt(version);
+            tempOut.writeInt(size);
+            if (version == VERSION_PREFIX_COMPRESSED) {
+                writePrefixCompressedEntries(tempOut);
+            } else {
+                byte[] scratch = new byte[recordLength(MAX_PATH_LENGTH)];
+                Cursor cursor = cursor();
+                while (cursor.next()) {
+                    cursor.writeTo(tempOut, scratch);
+                }
+            }
+            if (!cachedTrees.isEmpty()) {
+                writeTreeExtension(tempOut);
             }
         }
 
         byte[] data = tempStream.toByteArray();
         byte[] checksum = SHA1Hasher.hash(data);
 
-        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(indexFile.toFile()))) {
-            out.write(data);
-            out.write(checksum);
+        lock.replaceTarget(data, checksum);
+        Files.deleteIfExists(deltaFile);
+        indexMtimeMillis = Files.getLastModifiedTime(indexFile).toMillis();
+        baseChecksum = checksum;
+        baseLength = data.length + 20L;
+        deltaLength = 0;
+        rewriteRequired = false;
+        unsavedEntries.clear();
+        unsavedTrees.clear();
+
+        BitSet fresh = new BitSet();
+        if (!upToDate.isEmpty() || !upToDateOverlay.isEmpty()) {
+            Cursor cursor = cursor();
+            for (int position = 0; cursor.next(); position++) {
+                if (cursor.currentBase >= 0 ? upToDate.get(cursor.currentBase)
+                        : upToDateOverlay.contains(cursor.current.getPath())) {
+                    fresh.set(position);
+                }
+            }
         }
+        List<IndexEntry> entries = sortedEntries;
+        overlay.clear();
+        readEntries(ByteBuffer.wrap(data));
+        sortedEntries = entries;
+        upToDate = fresh;
+        upToDateOverlay = new HashSet<>();
     }
 
     private void writeEntry(DataOutputStream out, IndexEntry entry) throws IOException {
-        out.writeUTF(entry.getPath());
-        out.write(entry.getHash());
-        out.writeInt(entry.getMode());
-        out.writeInt(entry.getSize());
+        byte[] path = entry.getPath().getBytes(StandardCharsets.UTF_8);
+        if (path.length > MAX_PATH_LENGTH) {
+            throw new IOException("Path too long for index: " + entry.getPath());
+        }
         out.writeLong(entry.getMtimeMillis());
+        out.writeInt(entry.getSize());
+        out.writeInt(entry.getMode());
+        out.write(entry.getHash());
+        out.writeShort(path.length);
+        out.write(path);
+        out.write(PADDING, 0, recordLength(path.length) - ENTRY_FIXED_SIZE - path.length);
+    }
+
+    private void writePrefixCompressedEntries(DataOutputStream out) throws IOException {
+        byte[] previous = new byte[MAX_PATH_LENGTH];
+        byte[] scratch = new byte[MAX_PATH_LENGTH];
+        byte[] varint = new byte[16];
+        int previousLength = 0;
+        Cursor cursor = cursor();
+        while (cursor.next()) {
+            cursor.writeStatTo(out, scratch);
+            byte[] path = cursor.pathBytes(scratch);
+            int length = cursor.pathLength();
+            int common = 0;
+            int limit = Math.min(length, previousLength);
+            while (common < limit && path[common] == previous[common]) {
+                common++;
+            }
+            int varintStart = encodeVarint(previousLength - common, varint);
+            out.write(varint, varintStart, varint.length - varintStart);
+            out.write(path, common, length - common);
+            out.write(0);
+            System.arraycopy(path, common, previous, common, length - common);
+            previousLength = length;
+        }
+    }
+
+    private void writeTreeExtension(DataOutputStream out) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(payload)) {
+            List<String> directories = new ArrayList<>(cachedTrees.keySet());
+            Collections.sort(directories);
+            data.writeInt(directories.size());
+            for (String directory : directories) {
+                CachedTree tree = cachedTrees.get(directory);
+                data.writeUTF(directory);
+                data.writeInt(tree.entryCount);
+                data.write(tree.id.toBytes());
+            }
+        }
+        out.write(TREE_EXTENSION);
+        out.writeInt(payload.size());
+        payload.writeTo(out);
     }
 
     public void load() throws IOException {
-        entries.clear();
+        clear();
+        indexMtimeMillis = Long.MIN_VALUE;
 
         if (!Files.exists(indexFile)) return;
 
-        byte[] allData = Files.readAllBytes(indexFile);
-        if (allData.length < 20) throw new IOException("File too short");
+        indexMtimeMillis = Files.getLastModifiedTime(indexFile).toMillis();
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < 20) throw new IOException("File too short");
+            if (length > Integer.MAX_VALUE) throw new IOException("Index too large");
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
 
-        byte[] data = Arrays.copyOfRange(allData, 0, allData.length - 20);
-        byte[] expectedChecksum = Arrays.copyOfRange(allData, allData.length - 20, allData.length);
-        byte[] actualChecksum = SHA1Hasher.hash(data);
+        int dataLength = mapped.capacity() - 20;
+        byte[] expectedChecksum = new byte[20];
+        mapped.get(dataLength, expectedChecksum);
+        byte[] actualChecksum;
+        try (SHA1Hasher hasher = SHA1Hasher.newHasher()) {
+            actualChecksum = hasher.update(mapped.slice(0, dataLength)).digest();
+        }
 
         if (!Arrays.equals(expectedChecksum, actualChecksum)) {
             throw new IOException("Index corrupted");
         }
 
-        ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
+        ByteBuffer data = mapped.slice(0, dataLength);
+        if (dataLength >= HEADER_SIZE && data.getInt(0) == SIGNATURE_INT) {
+            readEntries(data);
+            baseChecksum = expectedChecksum;
+            baseLength = mapped.capacity();
+            deltaLength = 0;
+            rewriteRequired = false;
+            readDelta();
+        } else {
+            readLegacyEntries(data);
+        }
+    }
+
+    private void readDelta() throws IOException {
+        if (!Files.exists(deltaFile)) {
+            return;
+        }
+        byte[] delta = Files.readAllBytes(deltaFile);
+        ByteBuffer buffer = ByteBuffer.wrap(delta);
+        byte[] signature = new byte[4];
+        byte[] checksum = new byte[20];
+        if (delta.length < DELTA_HEADER_SIZE) {
+            deltaLength = -1;
+            return;
+        }
+        buffer.get(0, signature);
+        buffer.get(8, checksum);
+        if (!Arrays.equals(signature, DELTA_SIGNATURE) || buffer.getInt(4) != DELTA_VERSION
+                || !Arrays.equals(checksum, baseChecksum)) {
+            deltaLength = -1;
+            return;
+        }
+
+        int position = DELTA_HEADER_SIZE;
+        while (delta.length - position >= 4) {
+            int length = buffer.getInt(position);
+            if (length < 0 || length > delta.length - position - 24) {
+                break;
+            }
+            byte[] expected = Arrays.copyOfRange(delta, position + 4 + length, position + 24 + length);
+            if (!Arrays.equals(expected, SHA1Hasher.hash(delta, position + 4, length))) {
+                break;
+            }
+            applyDelta(delta, position + 4, length);
+            position += 24 + length;
+        }
+        deltaLength = position;
+        unsavedEntries.clear();
+        unsavedTrees.clear();
+        indexMtimeMillis = Math.max(indexMtimeMillis, Files.getLastModifiedTime(deltaFile).toMillis());
+    }
+
+    private void applyDelta(byte[] delta, int offset, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta, offset, length))) {
+            int entryChanges = in.readInt();
+            for (int i = 0; i < entryChanges; i++) {
+                boolean present = in.readBoolean();
+                byte[] path = new byte[in.readUnsignedShort()];
+                in.readFully(path);
+                String name = new String(path, StandardCharsets.UTF_8);
+                if (present) {
+                    long mtimeMillis = in.readLong();
+                    int size = in.readInt();
+                    int mode = in.readInt();
+                    byte[] hash = new byte[20];
+                    in.readFully(hash);
+                    add(new IndexEntry(name, hash, mode, size, mtimeMillis));
+                } else {
+                    remove(name);
+                }
+            }
+            int treeChanges = in.readInt();
+            for (int i = 0; i < treeChanges; i++) {
+                boolean present = in.readBoolean();
+                String directory = in.readUTF();
+                if (present) {
+                    int entryCount = in.readInt();
+                    byte[] hash = new byte[20];
+                    in.readFully(hash);
+                    cachedTrees.put(directory, new CachedTree(hash, entryCount));
+                } else {
+                    cachedTrees.remove(directory);
+                }
+            }
+        }
+    }
+
+    private void readEntries(ByteBuffer data) throws IOException {
+        int fileVersion = data.getInt(4);
+        int count = data.getInt(8);
+        if (count < 0) {
+            throw new IOException("Index corrupted");
+        }
+        int position;
+        if (fileVersion == VERSION) {
+            position = readTable(data, count);
+        } else if (fileVersion == VERSION_PREFIX_COMPRESSED) {
+            position = expandPrefixCompressed(data, count);
+        } else {
+            throw new IOException("Unsupported index version " + fileVersion);
+        }
+        version = fileVersion;
+        size = count;
+        readExtensions(data, position);
+    }
+
+    private int readTable(ByteBuffer data, int count) throws IOException {
+        int[] offsets = new int[count];
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (position + ENTRY_FIXED_SIZE > data.limit()) {
+                throw new IOException("Index corrupted");
+            }
+            offsets[i] = position;
+            position += recordLength(data.getShort(position + 36) & 0xFFFF);
+        }
+        if (position > data.limit()) {
+            throw new IOException("Index corrupted");
+        }
+        base = data;
+        baseOffsets = offsets;
+        return position;
+    }
+
+    private int expandPrefixCompressed(ByteBuffer data, int count) throws IOException {
+        int[] offsets = new int[count];
+        byte[] table = new byte[Math.max(64, data.limit() * 2)];
+        int tableLength = 0;
+        int previousStart = 0;
+        int previousLength = 0;
+        int position = HEADER_SIZE;
+        int limit = data.limit();
+        for (int i = 0; i < count; i++) {
+            if (position + ENTRY_STAT_SIZE >= limit) {
+                throw new IOException("Index corrupted");
+            }
+            int statStart = position;
+            position += ENTRY_STAT_SIZE;
+
+            int c = data.get(position++) & 0xFF;
+            long strip = c & 0x7F;
+            while ((c & 0x80) != 0) {
+                if (position >= limit || strip > MAX_PATH_LENGTH) {
+                    throw new IOException("Index corrupted");
+                }
+                c = data.get(position++) & 0xFF;
+                strip = ((strip + 1) << 7) | (c & 0x7F);
+            }
+            if (strip > previousLength) {
+                throw new IOException("Index corrupted");
+            }
+            int suffixStart = position;
+            while (position < limit && data.get(position) != 0) {
+                position++;
+            }
+            if (position >= limit) {
+                throw new IOException("Index corrupted");
+            }
+            int prefixLength = previousLength - (int) strip;
+            int suffixLength = position - suffixStart;
+            int pathLength = prefixLength + suffixLength;
+            if (pathLength > MAX_PATH_LENGTH) {
+                throw new IOException("Index corrupted");
+            }
+            position++;
+
+            int record = recordLength(pathLength);
+            if (tableLength + record > table.length) {
+                table = Arrays.copyOf(table, Math.max(table.length * 2, tableLength + record));
+            }
+            offsets[i] = tableLength;
+            data.get(statStart, table, tableLength, ENTRY_STAT_SIZE);
+            table[tableLength + 36] = (byte) (pathLength >>> 8);
+            table[tableLength + 37] = (byte) pathLength;
+            int pathStart = tableLength + ENTRY_FIXED_SIZE;
+            System.arraycopy(table, previousStart, table, pathStart, prefixLength);
+            data.get(suffixStart, table, pathStart + prefixLength, suffixLength);
+            previousStart = pathStart;
+            previousLength = pathLength;
+            tableLength += record;
+        }
+        base = ByteBuffer.wrap(table, 0, tableLength).slice();
+        baseOffsets = offsets;
+        return position;
+    }
+
+    private void readExtensions(ByteBuffer data, int position) throws IOException {
+        while (data.limit() - position >= 8) {
+            byte[] signature = new byte[4];
+            data.get(position, signature);
+            int length = data.getInt(position + 4);
+            position += 8;
+            if (length < 0 || length > data.limit() - position) {
+                throw new IOException("Index corrupted");
+            }
+            if (Arrays.equals(signature, TREE_EXTENSION)) {
+                byte[] payload = new byte[length];
+                data.get(position, payload);
+                readTreeExtension(payload);
+            }
+            position += length;
+        }
+    }
+
+    private void readLegacyEntries(ByteBuffer data) throws IOException {
+        byte[] allData = new byte[data.limit()];
+        data.get(0, allData);
+        ByteArrayInputStream byteStream = new ByteArrayInputStream(allData);
         try (DataInputStream in = new DataInputStream(byteStream)) {
             int entryCount = in.readInt();
 
             for (int i = 0; i < entryCount; i++) {
                 IndexEntry entry = readEntry(in);
-                entries.put(entry.getPath(), entry);
+                overlay.put(entry.getPath(), entry);
+            }
+            size = overlay.size();
+
+            while (in.available() >= 8) {
+                byte[] signature = new byte[4];
+                in.readFully(signature);
+                int length = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (Arrays.equals(signature, TREE_EXTENSION)) {
+                    readTreeExtension(payload);
+                }
+            }
+        }
+    }
+
+    private void readTreeExtension(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String directory = in.readUTF();
+                int entryCount = in.readInt();
+                byte[] hash = new byte[20];
+                in.readFully(hash);
+                cachedTrees.put(directory, new CachedTree(hash, entryCount));
             }
         }
     }
@@ -113,4 +994,111 @@ public class Index {
 
         return new IndexEntry(path, hash, mode, size, mtimeMillis);
     }
+
+    private int basePosition(String path) {
+        if (baseOffsets.length == 0) {
+            return -1;
+        }
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = baseOffsets.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareBasePath(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareBasePath(int position, byte[] key) {
+        int offset = baseOffsets[position];
+        int length = base.getShort(offset + 36) & 0xFFFF;
+        int start = offset + ENTRY_FIXED_SIZE;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(base.get(start + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private String basePath(int position) {
+        int offset = baseOffsets[position];
+        byte[] path = new byte[base.getShort(offset + 36) & 0xFFFF];
+        base.get(offset + ENTRY_FIXED_SIZE, path);
+        return new String(path, StandardCharsets.UTF_8);
+    }
+
+    private IndexEntry baseEntry(int position) {
+        int offset = baseOffsets[position];
+        return IndexEntry.of(basePath(position), ObjectId.fromBuffer(base, offset + 16),
+                base.getInt(offset + 12), base.getInt(offset + 8), base.getLong(offset));
+    }
+
+    private static int encodeVarint(int value, byte[] buffer) {
+        int position = buffer.length - 1;
+        buffer[position] = (byte) (value & 0x7F);
+        while ((value >>>= 7) != 0) {
+            buffer[--position] = (byte) (0x80 | (--value & 0x7F));
+        }
+        return position;
+    }
+
+    private static int defaultVersion() {
+        String configured = System.getenv("GIT_INDEX_VERSION");
+        if (configured == null) {
+            return VERSION;
+        }
+        try {
+            int requested = Integer.parseInt(configured.trim());
+            if (requested == VERSION || requested == VERSION_PREFIX_COMPRESSED) {
+                return requested;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        System.err.println("warning: GIT_INDEX_VERSION set, but the value is invalid; using version " + VERSION);
+        return VERSION;
+    }
+
+    private static boolean defaultSplitIndex() {
+        String configured = System.getenv("GIT_SPLIT_INDEX");
+        if (configured == null) {
+            return false;
+        }
+        return switch (configured.trim().toLowerCase()) {
+            case "1", "true", "yes", "on" -> true;
+            case "0", "false", "no", "off", "" -> false;
+            default -> {
+                System.err.println("warning: GIT_SPLIT_INDEX set, but the value is invalid; split index disabled");
+                yield false;
+            }
+        };
+    }
+
+    private static int recordLength(int pathLength) {
+        return (ENTRY_FIXED_SIZE + pathLength + 8) & ~7;
+    }
+
+    private static int comparePaths(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                if (Character.isSurrogate(x) || Character.isSurrogate(y)) {
+                    return Integer.compare(a.codePointAt(i), b.codePointAt(i));
+                }
+                return Character.compare(x, y);
+            }
+        }
+        return a.length() - b.length();
+    }
 }
@@ -1,28 +1,33 @@
 package org.example.repository;
 
-import org.example.utils.SHA1Hasher;
+import org.example.objects.ObjectId;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
-import java.util.Arrays;
 
 public class IndexEntry {
     public static final int MODE_FILE = 0100644;
     public static final int MODE_EXECUTABLE = 0100755;
+    public static final int SMUDGED_SIZE = -1;
 
     private final String path;
-    private final byte[] hash;
+    private final ObjectId id;
     private final int mode;
     private final int size;
     private final long mtimeMillis;
 
     public IndexEntry(String path, byte[] hash, int mode, int size, long mtimeMillis) {
-        if(path == null || hash == null) throw new IllegalArgumentException("Path and hash cannot be null");
-        if(hash.length != 20) throw new IllegalArgumentException("Hash length must be 20 bytes");
+        this(path, toId(hash), mode, size, mtimeMillis);
+    }
+
+    private IndexEntry(String path, ObjectId id, int mode, int size, long mtimeMillis) {
+        if(path == null || id == null) throw new IllegalArgumentException("Path and hash cannot be null");
         this.path = path;
-        this.hash = hash;
+        this.id = id;
         this.mode = mode;
         this.size = size;
         this.mtimeMillis = mtimeMillis;
@@ -33,35 +38,62 @@ public class IndexEntry {
     }
 
     public String getPath() { return path; }
-    public byte[] getHash() { return hash.clone(); }
+    public byte[] getHash() { return id.toBytes(); }
+    public ObjectId getId() { return id; }
     public int getMode() { return mode; }
     public int getSize() { return size; }
 
+    public static IndexEntry of(String path, ObjectId id, int mode, int size, long mtimeMillis) {
+        return new IndexEntry(path, id, mode, size, mtimeMillis);
+    }
+
     public static IndexEntry fromFile(String path, byte[] hash, Path file) throws IOException {
+        return fromFile(path, toId(hash), file);
+    }
+
+    public static IndexEntry fromFile(String path, ObjectId id, Path file) throws IOException {
         long size = Files.size(file);
         FileTime mtime = Files.getLastModifiedTime(file);
         boolean executable = Files.isExecutable(file);
         int mode = executable ? MODE_EXECUTABLE : MODE_FILE;
         long mtimeMillis = mtime.toMillis();
 
-        return new IndexEntry(path, hash, mode, (int)size,
+        return new IndexEntry(path, id, mode, (int)size,
                 mtimeMillis);
     }
 
+    private static ObjectId toId(byte[] hash) {
+        if(hash == null) throw new IllegalArgumentException("Path and hash cannot be null");
+        if(hash.length != 20) throw new IllegalArgumentException("Hash length must be 20 bytes");
+        return ObjectId.fromBytes(hash);
+    }
+
     public long getMtimeMillis() {
         return mtimeMillis;
     }
 
+    public boolean isSmudged() {
+        return size == SMUDGED_SIZE;
+    }
+
+    public IndexEntry smudged() {
+        return isSmudged() ? this : new IndexEntry(path, id, mode, SMUDGED_SIZE, mtimeMillis);
+    }
+
+    public boolean matchesStat(long currentSize, long currentMtimeMillis) {
+        return (int) currentSize == size && currentMtimeMillis == mtimeMillis;
+    }
+
     public boolean isModified(Path file) throws IOException {
-        if (!Files.exists(file)) {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
             return true;
         }
 
-        FileTime currentMtime = Files.getLastModifiedTime(file);
-        long currentSize = Files.size(file);
-
-        return currentMtime.toMillis() != getMtimeMillis() ||
-                currentSize != size;
+        return attrs.lastModifiedTime().toMillis() != getMtimeMillis() ||
+                attrs.size() != size;
     }
 
     @Override
@@ -73,13 +105,13 @@ public class IndexEntry {
                 size == that.size &&
                 mtimeMillis == that.mtimeMillis &&
                 path.equals(that.path) &&
-                Arrays.equals(hash, that.hash);
+                id.equals(that.id);
     }
 
     @Override
     public int hashCode() {
         int result = path.hashCode();
-        result = 31 * result + Arrays.hashCode(hash);
+        result = 31 * result + id.hashCode();
         result = 31 * result + mode;
         result = 31 * result + size;
         result = 31 * result + Long.hashCode(mtimeMillis);
@@ -89,7 +121,7 @@ public class IndexEntry {
     @Override
     public String toString() {
         String modeStr = String.format("%06o", mode);
-        String hashStr = SHA1Hasher.toHex(hash);
+        String hashStr = id.toHex();
         return String.format("%s %s %s", modeStr, hashStr, path);
     }
 }
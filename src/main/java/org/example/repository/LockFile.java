@@ -0,0 +1,146 @@
+package org.example.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+public class LockFile implements Closeable {
+    public static final String SUFFIX = ".lock";
+    public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 100;
+
+    private final Path target;
+    private final Path lockPath;
+    private FileChannel channel;
+    private boolean released;
+
+    private LockFile(Path target, Path lockPath, FileChannel channel) {
+        this.target = target;
+        this.lockPath = lockPath;
+        this.channel = channel;
+    }
+
+    public static LockFile acquire(Path target) throws IOException {
+        return acquire(target, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public static LockFile acquire(Path target, long timeoutMillis) throws IOException {
+        if (timeoutMillis < 0) {
+            throw new IllegalArgumentException("Lock timeout cannot be negative");
+        }
+        Path lockPath = target.resolveSibling(target.getFileName() + SUFFIX);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long backoff = 1;
+        while (true) {
+            try {
+                FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return new LockFile(target, lockPath, channel);
+            } catch (FileAlreadyExistsException e) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    throw new IOException("Unable to create '" + lockPath + "': File exists. "
+                            + "Another process seems to be running in this repository; "
+                            + "if not, remove the file to continue");
+                }
+                try {
+                    Thread.sleep(Math.min(backoff, remaining));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for " + lockPath);
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    public static void write(Path target, byte[] data) throws IOException {
+        try (LockFile lock = acquire(target)) {
+            lock.write(data);
+            lock.commit();
+        }
+    }
+
+    public static void writeString(Path target, String content) throws IOException {
+        write(target, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Path getTarget() {
+        return target;
+    }
+
+    public Path getLockPath() {
+        return lockPath;
+    }
+
+    public void write(byte[] data) throws IOException {
+        write(data, 0, data.length);
+    }
+
+    public void write(byte[] data, int offset, int length) throws IOException {
+        FileChannel open = channel();
+        ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+        while (buffer.hasRemaining()) {
+            open.write(buffer);
+        }
+    }
+
+    public void commit() throws IOException {
+        FileChannel open = channel();
+        open.force(true);
+        open.close();
+        channel = null;
+        Files.move(lockPath, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        released = true;
+    }
+
+    public void replaceTarget(byte[]... chunks) throws IOException {
+        channel();
+        Path staged = Files.createTempFile(lockPath.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(staged, StandardOpenOption.WRITE)) {
+                for (byte[] chunk : chunks) {
+                    ByteBuffer buffer = ByteBuffer.wrap(chunk);
+                    while (buffer.hasRemaining()) {
+                        out.write(buffer);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (released) {
+            return;
+        }
+        released = true;
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            Files.deleteIfExists(lockPath);
+        }
+    }
+
+    private FileChannel channel() {
+        if (channel == null) {
+            throw new IllegalStateException("Lock on " + target + " has already been released");
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.repository;
+
+public class LogOptions {
+    private int maxCount = -1;
+    private Long since;
+    private Long until;
+
+    public int getMaxCount() { return maxCount; }
+    public Long getSince() { return since; }
+    public Long getUntil() { return until; }
+
+    public LogOptions setMaxCount(int maxCount) {
+        if (maxCount < 0) {
+            throw new IllegalArgumentException("Max count cannot be negative: " + maxCount);
+        }
+        this.maxCount = maxCount;
+        return this;
+    }
+
+    public LogOptions setSince(Long since) {
+        this.since = since;
+        return this;
+    }
+
+    public LogOptions setUntil(Long until) {
+        this.until = until;
+        return this;
+    }
+
+    public boolean hasMaxCount() {
+        return maxCount >= 0;
+    }
+}
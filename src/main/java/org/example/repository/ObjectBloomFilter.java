@@ -0,0 +1,301 @@
+package org.example.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class ObjectBloomFilter implements Closeable {
+    private static final int MAGIC = 0x4D424C4D;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int STALE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int COUNT_OFFSET = 24;
+    private static final int HASH_COUNT = 7;
+    private static final int BITS_PER_OBJECT = 10;
+    private static final long MIN_CAPACITY = 16384;
+    private static final long MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE - 8) * 8L / BITS_PER_OBJECT;
+    private static final long STALE_LOCK_MILLIS = 60_000;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    public interface Source {
+        List<byte[]> listObjects() throws IOException;
+    }
+
+    private static class Mapping {
+        private final MappedByteBuffer buffer;
+        private final long numBits;
+
+        Mapping(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+            this.numBits = (long) (buffer.capacity() - HEADER_SIZE) * 8;
+        }
+
+        boolean isStale() {
+            return (int) INTS.getVolatile(buffer, STALE_OFFSET) != 0;
+        }
+
+        void markStale() {
+            INTS.setVolatile(buffer, STALE_OFFSET, 1);
+            buffer.force();
+        }
+
+        long capacity() {
+            return (long) LONGS.getVolatile(buffer, CAPACITY_OFFSET);
+        }
+
+        long count() {
+            return (long) LONGS.getVolatile(buffer, COUNT_OFFSET);
+        }
+
+        boolean test(byte[] id) {
+            long h1 = h1(id);
+            long h2 = h2(id);
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+                long word = (long) LONGS.getAcquire(buffer, wordOffset(bit));
+                if ((word & (1L << (bit & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void set(byte[] id) {
+            long h1 = h1(id);
+            long h2 = h2(id);
+            boolean changed = false;
+            for (int i = 0; i < HASH_COUNT; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+                long mask = 1L << (bit & 63);
+                long previous = (long) LONGS.getAndBitwiseOr(buffer, wordOffset(bit), mask);
+                changed |= (previous & mask) == 0;
+            }
+            if (changed) {
+                LONGS.getAndAdd(buffer, COUNT_OFFSET, 1L);
+            }
+        }
+
+        private static int wordOffset(long bit) {
+            return HEADER_SIZE + (int) (bit >>> 6) * 8;
+        }
+    }
+
+    private final Path file;
+    private final Path lockFile;
+    private final Source source;
+    private volatile Mapping mapping;
+    private volatile boolean unavailable;
+
+    public ObjectBloomFilter(Path file, Source source) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.source = source;
+    }
+
+    public boolean mightContain(byte[] id) {
+        Mapping current = current();
+        return current == null || current.test(id);
+    }
+
+    public void add(byte[] id) {
+        Mapping current = current();
+        if (current == null) {
+            current = mapExisting();
+        }
+        while (current != null) {
+            current.set(id);
+            if (!current.isStale()) {
+                return;
+            }
+            current = reopen(current);
+        }
+    }
+
+    public synchronized boolean rebuild() throws IOException {
+        Mapping rebuilt = build(true);
+        if (rebuilt == null) {
+            return false;
+        }
+        mapping = rebuilt;
+        unavailable = false;
+        return true;
+    }
+
+    public long getCapacity() {
+        Mapping current = current();
+        return current == null ? 0 : current.capacity();
+    }
+
+    public long getCount() {
+        Mapping current = current();
+        return current == null ? 0 : current.count();
+    }
+
+    public boolean isAvailable() {
+        return current() != null;
+    }
+
+    @Override
+    public void close() {
+        mapping = null;
+    }
+
+    private Mapping current() {
+        Mapping current = mapping;
+        if (current != null && !current.isStale()) {
+            return current;
+        }
+        if (unavailable) {
+            return null;
+        }
+        return reopen(current);
+    }
+
+    private synchronized Mapping reopen(Mapping seen) {
+        if (mapping != seen && mapping != null && !mapping.isStale()) {
+            return mapping;
+        }
+        try {
+            Mapping opened = map();
+            if (opened == null || opened.isStale()) {
+                opened = build(false);
+            } else if (opened.count() > opened.capacity() * 2) {
+                Mapping resized = build(true);
+                if (resized != null) {
+                    opened = resized;
+                }
+            }
+            mapping = opened;
+            unavailable = opened == null;
+        } catch (IOException e) {
+            System.err.println("warning: object filter disabled: " + e.getMessage());
+            mapping = null;
+            unavailable = true;
+        }
+        return mapping;
+    }
+
+    private synchronized Mapping mapExisting() {
+        try {
+            Mapping opened = map();
+            if (opened != null && !opened.isStale()) {
+                mapping = opened;
+                unavailable = false;
+                return opened;
+            }
+        } catch (IOException e) {
+            System.err.println("warning: unable to update object filter: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private Mapping map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size <= HEADER_SIZE || size > Integer.MAX_VALUE || (size - HEADER_SIZE) % 8 != 0) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if ((int) INTS.get(buffer, 0) != MAGIC || (int) INTS.get(buffer, 4) != VERSION
+                    || (int) INTS.get(buffer, 8) != HASH_COUNT) {
+                return null;
+            }
+            return new Mapping(buffer);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Mapping build(boolean replace) throws IOException {
+        if (!acquireLock()) {
+            return null;
+        }
+        try {
+            Mapping old = map();
+            if (!replace && old != null && !old.isStale()) {
+                return old;
+            }
+
+            List<byte[]> ids = source.listObjects();
+            long capacity = Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, ids.size() * 2L));
+            long words = (capacity * BITS_PER_OBJECT + 63) / 64;
+
+            Path temp = Files.createTempFile(file.getParent(), "tmp_bloom_", "");
+            Mapping fresh;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(HASH_COUNT).putInt(0).putLong(capacity).putLong(0);
+                header.flip();
+                channel.write(header, 0);
+                channel.write(ByteBuffer.allocate(1), HEADER_SIZE + words * 8 - 1);
+                fresh = new Mapping(channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + words * 8));
+            }
+            for (byte[] id : ids) {
+                fresh.set(id);
+            }
+            fresh.buffer.force();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (old != null) {
+                old.markStale();
+            }
+            for (byte[] id : source.listObjects()) {
+                fresh.set(id);
+            }
+            return fresh;
+        } finally {
+            Files.deleteIfExists(lockFile);
+        }
+    }
+
+    private boolean acquireLock() throws IOException {
+        Files.createDirectories(file.getParent());
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                Files.createFile(lockFile);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                try {
+                    long age = System.currentTimeMillis() - Files.getLastModifiedTime(lockFile).toMillis();
+                    if (age < STALE_LOCK_MILLIS) {
+                        return false;
+                    }
+                    Files.deleteIfExists(lockFile);
+                } catch (NoSuchFileException ignored) {
+                }
+            }
+        }
+        return false;
+    }
+
+    private static long h1(byte[] id) {
+        return readLong(id, 0);
+    }
+
+    private static long h2(byte[] id) {
+        return readLong(id, 8) | 1;
+    }
+
+    private static long readLong(byte[] id, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (id[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.repository;
+
+import org.example.objects.GitObject;
+import org.example.objects.ObjectId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class ObjectCache {
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private static class CachedObject {
+        private final GitObject object;
+        private final long weight;
+
+        CachedObject(GitObject object, long weight) {
+            this.object = object;
+            this.weight = weight;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<ObjectId, CachedObject> objects = new LinkedHashMap<>(64, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public ObjectCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ObjectCache(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size cannot be negative");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public GitObject get(String hash) {
+        return get(ObjectId.fromHex(hash));
+    }
+
+    public synchronized GitObject get(ObjectId id) {
+        CachedObject cached = objects.get(id);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.object;
+    }
+
+    public void put(String hash, GitObject object, int contentSize) {
+        put(ObjectId.fromHex(hash), object, contentSize);
+    }
+
+    public synchronized void put(ObjectId id, GitObject object, int contentSize) {
+        long objectWeight = (long) contentSize + ENTRY_OVERHEAD;
+        if (objectWeight > maxBytes) {
+            return;
+        }
+        object.freeze();
+        CachedObject previous = objects.put(id, new CachedObject(object, objectWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += objectWeight;
+
+        Iterator<CachedObject> it = objects.values().iterator();
+        while (weight > maxBytes && it.hasNext()) {
+            weight -= it.next().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public void remove(String hash) {
+        remove(ObjectId.fromHex(hash));
+    }
+
+    public synchronized void remove(ObjectId id) {
+        CachedObject removed = objects.remove(id);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        objects.clear();
+        weight = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int size() {
+        return objects.size();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -3,21 +3,71 @@ package org.example.repository;
 import org.example.objects.Blob;
 import org.example.objects.Commit;
 import org.example.objects.GitObject;
+import org.example.objects.ObjectId;
 import org.example.objects.Tree;
+import org.example.utils.SHA1Hasher;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
-public class ObjectStorage {
+public class ObjectStorage implements Closeable {
+    private static final int DELTA_WINDOW = 10;
+    private static final int MAX_DELTA_DEPTH = 50;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private final Path objectsDir;
+    private final Path packDir;
+    private final PackWindowCache windowCache;
+    private final ObjectCache objectCache;
+    private final ObjectBloomFilter bloomFilter;
+    private final Path commitGraphFile;
+    private volatile List<PackFile> packs;
+    private volatile FileTime packDirMtime;
+    private CommitGraph commitGraph;
+    private boolean commitGraphLoaded;
 
     public ObjectStorage(Path objectsDir) {
+        this(objectsDir, PackWindowCache.DEFAULT_WINDOW_SIZE, PackWindowCache.DEFAULT_BUDGET);
+    }
+
+    public ObjectStorage(Path objectsDir, int packWindowSize, long packMappedLimit) {
+        this(objectsDir, packWindowSize, packMappedLimit, ObjectCache.DEFAULT_MAX_BYTES);
+    }
+
+    public ObjectStorage(Path objectsDir, int packWindowSize, long packMappedLimit, long objectCacheLimit) {
         this.objectsDir = objectsDir.resolve("objects");
+        this.packDir = this.objectsDir.resolve("pack");
+        this.windowCache = new PackWindowCache(packWindowSize, packMappedLimit);
+        this.objectCache = new ObjectCache(objectCacheLimit);
+        this.bloomFilter = new ObjectBloomFilter(this.objectsDir.resolve("info").resolve("bloom"), this::listAllObjectIds);
+        this.commitGraphFile = this.objectsDir.resolve("info").resolve("commit-graph");
     }
 
     public void store(GitObject object) throws IOException {
@@ -25,19 +75,310 @@ public class ObjectStorage {
         if (exists(hash)) {
             return;
         }
-        byte[] serialized = object.serialize();
-        String header = object.getType() + " " + serialized.length + "\0";
-        byte[] headerBytes = header.getBytes();
+        Files.createDirectories(objectsDir);
+        Path temp = Files.createTempFile(objectsDir, "tmp_obj_", "");
+        try {
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), STREAM_BUFFER_SIZE))) {
+                if (object instanceof Blob blob) {
+                    out.write(("blob " + blob.getSize() + "\0").getBytes());
+                    try (InputStream content = blob.openStream()) {
+                        content.transferTo(out);
+                    }
+                } else {
+                    byte[] serialized = object.serialize();
+                    out.write((object.getType() + " " + serialized.length + "\0").getBytes());
+                    out.write(serialized);
+                }
+            }
+            moveIntoPlace(temp, hash, object.getHash());
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 
-        byte[] data = new byte[headerBytes.length + serialized.length];
-        System.arraycopy(headerBytes, 0, data, 0, headerBytes.length);
-        System.arraycopy(serialized, 0, data, headerBytes.length, serialized.length);
+    public byte[] storeFile(Path file) throws IOException {
+        Files.createDirectories(objectsDir);
+        Path temp = Files.createTempFile(objectsDir, "tmp_obj_", "");
+        try {
+            byte[] hash;
+            try (OutputStream out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), STREAM_BUFFER_SIZE))) {
+                hash = streamBlob(file, out);
+            }
+            moveIntoPlace(temp, SHA1Hasher.toHex(hash), hash);
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
 
-        byte[] compressed = compress(data);
-        storeRaw(hash, compressed);
+    private void moveIntoPlace(Path temp, String hex, byte[] hash) throws IOException {
+        if (exists(hex)) {
+            return;
+        }
+        Path objectPath = getObjectPath(hex);
+        Files.createDirectories(objectPath.getParent());
+        Files.move(temp, objectPath, StandardCopyOption.ATOMIC_MOVE);
+        bloomFilter.add(hash);
+    }
+
+    public byte[] hashFile(Path file) throws IOException {
+        return streamBlob(file, null);
     }
 
     public GitObject load(String hash) throws IOException {
+        validateHash(hash);
+        return loadObject(ObjectId.fromHex(hash));
+    }
+
+    public GitObject loadObject(ObjectId id) throws IOException {
+        GitObject cached = objectCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        PackFile.PackedObject raw = readObject(id);
+        GitObject object = createObject(raw.getType(), id, raw.getContent());
+        if (object instanceof Tree || object instanceof Commit) {
+            objectCache.put(id, object, raw.getContent().length);
+        }
+        return object;
+    }
+
+    public Blob openBlob(ObjectId id) throws IOException {
+        if (!hasObject(id)) {
+            throw new IOException("Object not found: " + id);
+        }
+        return Blob.lazy(id, () -> {
+            PackFile.PackedObject raw = readObject(id);
+            if (!"blob".equals(raw.getType())) {
+                throw new IOException("Expected blob " + id + " but found " + raw.getType());
+            }
+            byte[] content = raw.getContent();
+            if (!id.equals(ObjectId.fromBytes(SHA1Hasher.hashObject("blob", content)))) {
+                throw new IOException("Hash mismatch for blob " + id);
+            }
+            return ByteBuffer.wrap(content);
+        });
+    }
+
+    public boolean delete(String hash) throws IOException {
+        validateHash(hash);
+        return deleteObject(ObjectId.fromHex(hash));
+    }
+
+    public boolean deleteObject(ObjectId id) throws IOException {
+        objectCache.remove(id);
+        return Files.deleteIfExists(getObjectPath(id));
+    }
+
+    public boolean exists(String hash) {
+        validateHash(hash);
+        return hasObject(ObjectId.fromHex(hash));
+    }
+
+    public boolean hasObject(ObjectId id) {
+        byte[] rawHash = id.toBytes();
+        if (!bloomFilter.mightContain(rawHash)) {
+            return false;
+        }
+        if (packsContain(getPacks(), rawHash) || Files.exists(getObjectPath(id))) {
+            return true;
+        }
+        List<PackFile> rescanned = rescanPacksIfChanged();
+        return rescanned != null && packsContain(rescanned, rawHash);
+    }
+
+    public int packLooseObjects() throws IOException {
+        List<String> looseHashes = listLooseObjects();
+        if (looseHashes.isEmpty()) {
+            return 0;
+        }
+
+        try (PackWriter writer = new PackWriter(packDir, looseHashes.size())) {
+            for (String hash : looseHashes) {
+                PackFile.PackedObject raw = readLoose(hash);
+                writer.addObject(SHA1Hasher.fromHex(hash), raw.getType(), raw.getContent());
+            }
+            writer.finish();
+        }
+        reloadPacks();
+
+        deleteLooseObjects(looseHashes);
+        return looseHashes.size();
+    }
+
+    public int repack(Map<String, String> pathHints) throws IOException {
+        List<PackFile> oldPacks = getPacks();
+        List<String> looseHashes = listLooseObjects();
+
+        Set<String> allHashes = new LinkedHashSet<>(looseHashes);
+        for (PackFile pack : oldPacks) {
+            PackIndex packIndex = pack.getIndex();
+            for (int i = 0; i < packIndex.size(); i++) {
+                allHashes.add(SHA1Hasher.toHex(packIndex.getHash(i)));
+            }
+        }
+        if (allHashes.isEmpty()) {
+            return 0;
+        }
+
+        List<RepackEntry> entries = new ArrayList<>();
+        for (String hash : allHashes) {
+            PackFile.PackedObject raw = readObject(ObjectId.fromHex(hash));
+            String path = pathHints.get(hash);
+            entries.add(new RepackEntry(hash, raw.getType(), raw.getContent(),
+                    path == null ? 0 : nameHash(path)));
+        }
+        entries.sort(Comparator.comparingInt((RepackEntry e) -> PackFile.typeCode(e.type))
+                .thenComparing(e -> e.nameHash, Integer::compareUnsigned)
+                .thenComparing(Comparator.comparingInt((RepackEntry e) -> e.size).reversed())
+                .thenComparing(e -> e.hash));
+
+        String packName;
+        try (PackWriter writer = new PackWriter(packDir, entries.size())) {
+            Deque<WindowEntry> window = new ArrayDeque<>();
+            for (RepackEntry entry : entries) {
+                byte[] content = entry.content;
+                entry.content = null;
+                byte[] rawHash = SHA1Hasher.fromHex(entry.hash);
+
+                WindowEntry base = null;
+                byte[] bestDelta = null;
+                int maxSize = content.length / 2 - 20;
+                for (WindowEntry candidate : window) {
+                    if (!candidate.type.equals(entry.type) || candidate.depth >= MAX_DELTA_DEPTH) {
+                        continue;
+                    }
+                    if (content.length - candidate.content.length >= maxSize) {
+                        continue;
+                    }
+                    byte[] delta = Delta.create(candidate.content, content);
+                    int limit = bestDelta == null ? maxSize : bestDelta.length;
+                    if (delta.length < limit) {
+                        base = candidate;
+                        bestDelta = delta;
+                    }
+                }
+
+                int depth = 0;
+                if (bestDelta != null) {
+                    writer.addDelta(rawHash, SHA1Hasher.fromHex(base.hash), bestDelta);
+                    depth = base.depth + 1;
+                } else {
+                    writer.addObject(rawHash, entry.type, content);
+                }
+
+                window.addLast(new WindowEntry(entry.hash, entry.type, content, depth));
+                if (window.size() > DELTA_WINDOW) {
+                    window.removeFirst();
+                }
+            }
+            packName = writer.finish();
+        }
+        reloadPacks();
+
+        for (PackFile pack : oldPacks) {
+            String oldName = pack.getPackPath().getFileName().toString();
+            if (!oldName.equals(packName + ".pack")) {
+                Files.deleteIfExists(packDir.resolve(oldName.replace(".pack", ".idx")));
+                Files.deleteIfExists(pack.getPackPath());
+            }
+        }
+        deleteLooseObjects(looseHashes);
+        reloadPacks();
+        bloomFilter.rebuild();
+        return entries.size();
+    }
+
+    public synchronized CommitGraph getCommitGraph() {
+        if (!commitGraphLoaded) {
+            try {
+                commitGraph = CommitGraph.open(commitGraphFile);
+            } catch (IOException e) {
+                System.err.println("warning: ignoring commit graph: " + e.getMessage());
+                commitGraph = null;
+            }
+            commitGraphLoaded = true;
+        }
+        return commitGraph;
+    }
+
+    public int writeCommitGraph(Collection<String> tips) throws IOException {
+        List<CommitGraph.Entry> entries = new ArrayList<>();
+        Set<ObjectId> visited = new HashSet<>();
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        for (String tip : tips) {
+            pending.addLast(ObjectId.fromHex(tip));
+        }
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (!visited.add(id)) {
+                continue;
+            }
+            if (!(loadObject(id) instanceof Commit commit)) {
+                throw new IOException("Not a commit: " + id);
+            }
+            List<byte[]> parents = new ArrayList<>();
+            for (ObjectId parent : commit.getParentIds()) {
+                if (parent != null) {
+                    parents.add(parent.toBytes());
+                    pending.push(parent);
+                }
+            }
+            entries.add(new CommitGraph.Entry(id.toBytes(), commit.getTreeHash(), parents,
+                    commit.getCommitTime()));
+        }
+
+        synchronized (this) {
+            if (entries.isEmpty()) {
+                Files.deleteIfExists(commitGraphFile);
+            } else {
+                CommitGraph.write(commitGraphFile, entries);
+            }
+            commitGraphLoaded = false;
+            commitGraph = null;
+        }
+        return entries.size();
+    }
+
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+
+    public ObjectBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    public PackWindowCache getWindowCache() {
+        return windowCache;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        bloomFilter.close();
+        commitGraph = null;
+        commitGraphLoaded = false;
+        List<PackFile> current = packs;
+        packs = null;
+        packDirMtime = null;
+        if (current != null) {
+            for (PackFile pack : current) {
+                pack.close();
+            }
+        }
+    }
+
+    public int getPackCount() {
+        return getPacks().size();
+    }
+
+    private PackFile.PackedObject readObject(ObjectId id) throws IOException {
+        PackFile.PackedObject packed = findPacked(id.toBytes());
+        return packed != null ? packed : readLoose(id.toHex());
+    }
+
+    private PackFile.PackedObject readLoose(String hash) throws IOException {
         byte[] compressed = loadRaw(hash);
         byte[] fullData = decompress(compressed);
 
@@ -60,28 +401,226 @@ public class ObjectStorage {
         }
         System.arraycopy(fullData, contentStart, content, 0, contentLength);
 
-        return createObject(type, hash, content);
+        return new PackFile.PackedObject(type, content);
     }
 
-    public boolean delete(String hash) throws IOException {
-        Path objectPath = getObjectPath(hash);
-        return Files.deleteIfExists(objectPath);
+    private void deleteLooseObjects(List<String> hashes) throws IOException {
+        for (String hash : hashes) {
+            Path objectPath = getObjectPath(hash);
+            Files.deleteIfExists(objectPath);
+            try (Stream<Path> remaining = Files.list(objectPath.getParent())) {
+                if (remaining.findAny().isEmpty()) {
+                    Files.deleteIfExists(objectPath.getParent());
+                }
+            } catch (NoSuchFileException ignored) {
+            }
+        }
     }
 
-    public boolean exists(String hash) {
-        Path objectPath = getObjectPath(hash);
-        return Files.exists(objectPath);
+    private static int nameHash(String path) {
+        int hash = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            }
+            hash = (hash >>> 2) + (c << 24);
+        }
+        return hash;
     }
 
-    private void storeRaw(String hash, byte[] data) throws IOException {
-        Path objectPath = getObjectPath(hash);
-        Path objectDir = objectPath.getParent();
+    private byte[] streamBlob(Path file, OutputStream out) throws IOException {
+        try (SHA1Hasher hasher = SHA1Hasher.newHasher();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            byte[] header = ("blob " + size + "\0").getBytes();
+            hasher.update(header);
+            if (out != null) {
+                out.write(header);
+            }
 
-        if(!Files.exists(objectDir)) {
-            Files.createDirectories(objectDir);
+            ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+            long total = 0;
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                hasher.update(buffer.array(), 0, read);
+                if (out != null) {
+                    out.write(buffer.array(), 0, read);
+                }
+                total += read;
+                buffer.clear();
+            }
+            if (total != size) {
+                throw new IOException("File changed while reading: " + file);
+            }
+            return hasher.digest();
         }
+    }
+
+    private List<byte[]> listAllObjectIds() throws IOException {
+        List<byte[]> ids = new ArrayList<>();
+        for (String hash : listLooseObjects()) {
+            ids.add(SHA1Hasher.fromHex(hash));
+        }
+        for (PackFile pack : getPacks()) {
+            PackIndex packIndex = pack.getIndex();
+            for (int i = 0; i < packIndex.size(); i++) {
+                ids.add(packIndex.getHash(i));
+            }
+        }
+        return ids;
+    }
+
+    private List<String> listLooseObjects() throws IOException {
+        List<String> hashes = new ArrayList<>();
+        if (!Files.isDirectory(objectsDir)) {
+            return hashes;
+        }
+        try (Stream<Path> dirs = Files.list(objectsDir)) {
+            for (Path dir : (Iterable<Path>) dirs.sorted()::iterator) {
+                String prefix = dir.getFileName().toString();
+                if (!Files.isDirectory(dir) || !prefix.matches("[0-9a-f]{2}")) {
+                    continue;
+                }
+                try (Stream<Path> files = Files.list(dir)) {
+                    files.map(file -> prefix + file.getFileName())
+                            .filter(hash -> hash.matches("[0-9a-f]{40}"))
+                            .sorted()
+                            .forEach(hashes::add);
+                }
+            }
+        }
+        return hashes;
+    }
+
+    private PackFile.PackedObject findPacked(byte[] rawHash) throws IOException {
+        PackFile.PackedObject packed = readFromPacks(getPacks(), rawHash);
+        if (packed == null && !Files.exists(getObjectPath(SHA1Hasher.toHex(rawHash)))) {
+            List<PackFile> rescanned = rescanPacksIfChanged();
+            if (rescanned != null) {
+                packed = readFromPacks(rescanned, rawHash);
+            }
+        }
+        return packed;
+    }
 
-        Files.write(objectPath, data);
+    private PackFile.PackedObject readFromPacks(List<PackFile> candidates, byte[] rawHash) throws IOException {
+        for (PackFile pack : candidates) {
+            if (pack.contains(rawHash)) {
+                return pack.read(rawHash, this::resolveDeltaBase);
+            }
+        }
+        return null;
+    }
+
+    private PackFile.PackedObject resolveDeltaBase(byte[] rawHash) throws IOException {
+        ObjectId id = ObjectId.fromBytes(rawHash);
+        return hasObject(id) ? readObject(id) : null;
+    }
+
+    private boolean packsContain(List<PackFile> candidates, byte[] rawHash) {
+        for (PackFile pack : candidates) {
+            if (pack.contains(rawHash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PackFile> getPacks() {
+        List<PackFile> current = packs;
+        if (current == null) {
+            current = reloadPacks();
+        }
+        return current;
+    }
+
+    private List<PackFile> rescanPacksIfChanged() {
+        FileTime mtime = readPackDirMtime();
+        if (mtime == null || mtime.equals(packDirMtime)) {
+            return null;
+        }
+        return reloadPacks();
+    }
+
+    private synchronized List<PackFile> reloadPacks() {
+        FileTime mtime = readPackDirMtime();
+        Map<Path, PackFile> open = new HashMap<>();
+        if (packs != null) {
+            for (PackFile pack : packs) {
+                open.put(pack.getPackPath(), pack);
+            }
+        }
+        List<PackFile> loaded = new ArrayList<>();
+        if (mtime != null) {
+            try (Stream<Path> files = Files.list(packDir)) {
+                for (Path idx : (Iterable<Path>) files.sorted()::iterator) {
+                    String name = idx.getFileName().toString();
+                    if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                        PackFile existing = open.remove(idx.resolveSibling(name.replace(".idx", ".pack")));
+                        if (existing != null) {
+                            loaded.add(existing);
+                            continue;
+                        }
+                        try {
+                            loaded.add(PackFile.open(idx, windowCache));
+                        } catch (IOException e) {
+                            System.err.println("warning: skipping unreadable pack " + name + ": " + e.getMessage());
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("warning: unable to list " + packDir + ": " + e.getMessage());
+            }
+        }
+        packDirMtime = mtime;
+        packs = loaded;
+        for (PackFile gone : open.values()) {
+            try {
+                gone.close();
+            } catch (IOException e) {
+                System.err.println("warning: unable to close " + gone.getPackPath() + ": " + e.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    private static class RepackEntry {
+        private final String hash;
+        private final String type;
+        private final int size;
+        private final int nameHash;
+        private byte[] content;
+
+        RepackEntry(String hash, String type, byte[] content, int nameHash) {
+            this.hash = hash;
+            this.type = type;
+            this.size = content.length;
+            this.content = content;
+            this.nameHash = nameHash;
+        }
+    }
+
+    private static class WindowEntry {
+        private final String hash;
+        private final String type;
+        private final byte[] content;
+        private final int depth;
+
+        WindowEntry(String hash, String type, byte[] content, int depth) {
+            this.hash = hash;
+            this.type = type;
+            this.content = content;
+            this.depth = depth;
+        }
+    }
+
+    private FileTime readPackDirMtime() {
+        try {
+            return Files.getLastModifiedTime(packDir);
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     private byte[] loadRaw(String hash) throws IOException {
@@ -92,14 +631,6 @@ public class ObjectStorage {
         return Files.readAllBytes(objectPath);
     }
 
-    private byte[] compress(byte[] data) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try(DeflaterOutputStream dos = new DeflaterOutputStream(baos)) {
-            dos.write(data);
-        }
-        return baos.toByteArray();
-    }
-
     private byte[] decompress(byte[] data) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         try(InflaterInputStream iis = new InflaterInputStream(new ByteArrayInputStream(data))) {
@@ -112,7 +643,7 @@ public class ObjectStorage {
         return baos.toByteArray();
     }
 
-    private GitObject createObject(String type, String hash, byte[] content) throws IOException {
+    private GitObject createObject(String type, ObjectId id, byte[] content) throws IOException {
         GitObject obj = switch (type) {
             case "blob" -> new Blob();
             case "tree" -> new Tree();
@@ -122,11 +653,11 @@ public class ObjectStorage {
 
         obj.deserialize(content);
 
-        String actualHash = obj.getHexhash();
-        if (!actualHash.equals(hash)) {
+        ObjectId actualId = obj.getId();
+        if (!actualId.equals(id)) {
             throw new IllegalStateException(
                     String.format("Hash mismatch! Expected: %s, Actual: %s",
-                            hash, actualHash));
+                            id, actualId));
         }
 
         return obj;
@@ -142,6 +673,16 @@ public class ObjectStorage {
     }
 
     private Path getObjectPath(String hash) {
+        validateHash(hash);
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private Path getObjectPath(ObjectId id) {
+        String hash = id.toHex();
+        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private void validateHash(String hash) {
         if (hash == null) {
             throw new IllegalArgumentException("Hash cannot be null");
         }
@@ -151,6 +692,5 @@ public class ObjectStorage {
         if (!hash.matches("[0-9a-fA-F]+")) {
             throw new IllegalArgumentException("Hash contains invalid characters: " + hash);
         }
-        return objectsDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
     }
 }
@@ -0,0 +1,284 @@
+package org.example.repository;
+
+import org.example.utils.SHA1Hasher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class PackFile implements Closeable {
+    public static final int OBJ_COMMIT = 1;
+    public static final int OBJ_TREE = 2;
+    public static final int OBJ_BLOB = 3;
+    public static final int OBJ_OFS_DELTA = 6;
+    public static final int OBJ_REF_DELTA = 7;
+    public static final int MAX_DELTA_CHAIN = 4095;
+
+    private static final byte[] SIGNATURE = {'P', 'A', 'C', 'K'};
+
+    public static class PackedObject {
+        private final String type;
+        private final byte[] content;
+
+        public PackedObject(String type, byte[] content) {
+            this.type = type;
+            this.content = content;
+        }
+
+        public String getType() { return type; }
+        public byte[] getContent() { return content; }
+    }
+
+    public interface BaseResolver {
+        PackedObject resolve(byte[] hash) throws IOException;
+    }
+
+    private static class EntryData {
+        private int typeCode;
+        private long baseOffset = -1;
+        private byte[] baseHash;
+        private byte[] data;
+    }
+
+    private final Path packPath;
+    private final PackIndex index;
+    private final FileChannel channel;
+    private final PackWindowCache windows;
+    private final long length;
+
+    private PackFile(Path packPath, PackIndex index, FileChannel channel, PackWindowCache windows) throws IOException {
+        this.packPath = packPath;
+        this.index = index;
+        this.channel = channel;
+        this.windows = windows;
+        this.length = channel.size();
+    }
+
+    public static PackFile open(Path idxPath) throws IOException {
+        return open(idxPath, new PackWindowCache());
+    }
+
+    public static PackFile open(Path idxPath, PackWindowCache windows) throws IOException {
+        String idxName = idxPath.getFileName().toString();
+        if (!idxName.endsWith(".idx")) {
+            throw new IllegalArgumentException("Not a pack index: " + idxPath);
+        }
+        Path packPath = idxPath.resolveSibling(idxName.substring(0, idxName.length() - 4) + ".pack");
+        PackIndex index = PackIndex.read(idxPath);
+
+        FileChannel channel = FileChannel.open(packPath, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            int read;
+            do {
+                read = channel.read(header);
+            } while (header.hasRemaining() && read != -1);
+            header.flip();
+            if (header.remaining() < 12) {
+                throw new IOException("Pack file too short: " + packPath);
+            }
+            for (byte b : SIGNATURE) {
+                if (header.get() != b) {
+                    throw new IOException("Invalid pack signature: " + packPath);
+                }
+            }
+            int version = header.getInt();
+            int count = header.getInt();
+            if (version != 2) {
+                throw new IOException("Unsupported pack version " + version + ": " + packPath);
+            }
+            if (count != index.size()) {
+                throw new IOException("Pack and index object counts differ: " + packPath);
+            }
+            return new PackFile(packPath, index, channel, windows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPackPath() {
+        return packPath;
+    }
+
+    public PackIndex getIndex() {
+        return index;
+    }
+
+    public boolean contains(byte[] hash) {
+        return index.contains(hash);
+    }
+
+    public PackedObject read(byte[] hash) throws IOException {
+        return read(hash, null);
+    }
+
+    public PackedObject read(byte[] hash, BaseResolver resolver) throws IOException {
+        long offset = index.findOffset(hash);
+        if (offset < 0) {
+            return null;
+        }
+        return readAt(offset, resolver);
+    }
+
+    public PackedObject readAt(long offset, BaseResolver resolver) throws IOException {
+        Deque<byte[]> deltas = new ArrayDeque<>();
+        PackedObject base = null;
+        long current = offset;
+
+        while (base == null) {
+            if (deltas.size() > MAX_DELTA_CHAIN) {
+                throw new IOException("Delta chain too deep at offset " + offset + " in " + packPath);
+            }
+            EntryData entry = readEntry(current);
+            if (entry.typeCode == OBJ_OFS_DELTA) {
+                deltas.push(entry.data);
+                current = entry.baseOffset;
+            } else if (entry.typeCode == OBJ_REF_DELTA) {
+                deltas.push(entry.data);
+                long baseOffset = index.findOffset(entry.baseHash);
+                if (baseOffset >= 0) {
+                    current = baseOffset;
+                } else {
+                    base = resolver == null ? null : resolver.resolve(entry.baseHash);
+                    if (base == null) {
+                        throw new IOException("Missing delta base " + SHA1Hasher.toHex(entry.baseHash));
+                    }
+                }
+            } else {
+                base = new PackedObject(typeName(entry.typeCode), entry.data);
+            }
+        }
+
+        byte[] content = base.getContent();
+        while (!deltas.isEmpty()) {
+            content = Delta.apply(content, deltas.pop());
+        }
+        return new PackedObject(base.getType(), content);
+    }
+
+    @Override
+    public void close() throws IOException {
+        windows.evict(this);
+        channel.close();
+    }
+
+    private EntryData readEntry(long offset) throws IOException {
+        Cursor in = new Cursor(offset);
+
+        EntryData entry = new EntryData();
+        int c = in.read();
+        entry.typeCode = (c >> 4) & 0x07;
+        long size = c & 0x0F;
+        int shift = 4;
+        while ((c & 0x80) != 0) {
+            c = in.read();
+            size |= (long) (c & 0x7F) << shift;
+            shift += 7;
+        }
+
+        if (entry.typeCode == OBJ_OFS_DELTA) {
+            c = in.read();
+            long distance = c & 0x7F;
+            while ((c & 0x80) != 0) {
+                c = in.read();
+                distance = ((distance + 1) << 7) | (c & 0x7F);
+            }
+            if (distance <= 0 || distance > offset) {
+                throw new IOException("Invalid delta base offset at " + offset);
+            }
+            entry.baseOffset = offset - distance;
+        } else if (entry.typeCode == OBJ_REF_DELTA) {
+            entry.baseHash = new byte[20];
+            for (int i = 0; i < entry.baseHash.length; i++) {
+                entry.baseHash[i] = (byte) in.read();
+            }
+        } else {
+            typeName(entry.typeCode);
+        }
+
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IOException("Packed object too large: " + size + " bytes");
+        }
+        entry.data = in.inflate((int) size);
+        return entry;
+    }
+
+    static String typeName(int typeCode) throws IOException {
+        return switch (typeCode) {
+            case OBJ_COMMIT -> "commit";
+            case OBJ_TREE -> "tree";
+            case OBJ_BLOB -> "blob";
+            default -> throw new IOException("Unsupported pack object type: " + typeCode);
+        };
+    }
+
+    static int typeCode(String type) {
+        return switch (type) {
+            case "commit" -> OBJ_COMMIT;
+            case "tree" -> OBJ_TREE;
+            case "blob" -> OBJ_BLOB;
+            default -> throw new IllegalArgumentException("Unknown object type: " + type);
+        };
+    }
+
+    private class Cursor {
+        private final long start;
+        private long position;
+        private PackWindowCache.Window window;
+
+        Cursor(long start) {
+            this.start = start;
+            this.position = start;
+        }
+
+        int read() throws IOException {
+            int b = window(position).get(position) & 0xFF;
+            position++;
+            return b;
+        }
+
+        byte[] inflate(int size) throws IOException {
+            byte[] content = new byte[size];
+            Inflater inflater = new Inflater();
+            try {
+                int n = 0;
+                while (n < size) {
+                    if (inflater.needsInput()) {
+                        PackWindowCache.Window current = window(position);
+                        inflater.setInput(current.slice(position));
+                        position = current.getEnd();
+                    }
+                    int inflated = inflater.inflate(content, n, size - n);
+                    n += inflated;
+                    if (inflated == 0 && n < size
+                            && (inflater.finished() || inflater.needsDictionary())) {
+                        throw new IOException("Packed object data truncated at offset " + start);
+                    }
+                }
+                return content;
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt packed object at offset " + start + ": " + e.getMessage(), e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        private PackWindowCache.Window window(long at) throws IOException {
+            if (at >= length) {
+                throw new IOException("Unexpected end of pack at offset " + start);
+            }
+            if (window == null || at < window.getStart() || at >= window.getEnd()) {
+                window = windows.get(PackFile.this, channel, at);
+            }
+            return window;
+        }
+    }
+}
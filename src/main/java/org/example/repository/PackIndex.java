@@ -0,0 +1,208 @@
+package org.example.repository;
+
+import org.example.utils.SHA1Hasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+public class PackIndex {
+    private static final byte[] MAGIC = {(byte) 0xFF, 't', 'O', 'c'};
+    private static final int VERSION = 2;
+    private static final int FANOUT_SIZE = 256;
+    private static final int HEADER_SIZE = 8;
+
+    public static class Entry {
+        private final byte[] hash;
+        private final long offset;
+        private final int crc32;
+
+        public Entry(byte[] hash, long offset, int crc32) {
+            if (hash == null || hash.length != 20) {
+                throw new IllegalArgumentException("Hash length must be 20 bytes");
+            }
+            this.hash = hash;
+            this.offset = offset;
+            this.crc32 = crc32;
+        }
+
+        public byte[] getHash() { return hash; }
+        public long getOffset() { return offset; }
+        public int getCrc32() { return crc32; }
+    }
+
+    private final int[] fanout;
+    private final byte[] names;
+    private final int[] crcs;
+    private final long[] offsets;
+    private final byte[] packChecksum;
+
+    private PackIndex(int[] fanout, byte[] names, int[] crcs, long[] offsets, byte[] packChecksum) {
+        this.fanout = fanout;
+        this.names = names;
+        this.crcs = crcs;
+        this.offsets = offsets;
+        this.packChecksum = packChecksum;
+    }
+
+    public static PackIndex read(Path idxFile) throws IOException {
+        byte[] data = Files.readAllBytes(idxFile);
+        if (data.length < HEADER_SIZE + FANOUT_SIZE * 4 + 40) {
+            throw new IOException("Pack index too short: " + idxFile);
+        }
+
+        byte[] expectedChecksum = Arrays.copyOfRange(data, data.length - 20, data.length);
+        byte[] actualChecksum = SHA1Hasher.hash(data, 0, data.length - 20);
+        if (!Arrays.equals(expectedChecksum, actualChecksum)) {
+            throw new IOException("Pack index corrupted: " + idxFile);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte[] magic = new byte[4];
+        buffer.get(magic);
+        if (!Arrays.equals(MAGIC, magic) || buffer.getInt() != VERSION) {
+            throw new IOException("Unsupported pack index format: " + idxFile);
+        }
+
+        int[] fanout = new int[FANOUT_SIZE];
+        for (int i = 0; i < FANOUT_SIZE; i++) {
+            fanout[i] = buffer.getInt();
+        }
+        int count = fanout[FANOUT_SIZE - 1];
+
+        byte[] names = new byte[count * 20];
+        buffer.get(names);
+
+        int[] crcs = new int[count];
+        for (int i = 0; i < count; i++) {
+            crcs[i] = buffer.getInt();
+        }
+
+        int[] smallOffsets = new int[count];
+        int largeCount = 0;
+        for (int i = 0; i < count; i++) {
+            smallOffsets[i] = buffer.getInt();
+            if (smallOffsets[i] < 0) largeCount++;
+        }
+
+        long[] largeOffsets = new long[largeCount];
+        for (int i = 0; i < largeCount; i++) {
+            largeOffsets[i] = buffer.getLong();
+        }
+
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = smallOffsets[i] >= 0
+                    ? smallOffsets[i]
+                    : largeOffsets[smallOffsets[i] & 0x7FFFFFFF];
+        }
+
+        byte[] packChecksum = new byte[20];
+        buffer.get(packChecksum);
+
+        return new PackIndex(fanout, names, crcs, offsets, packChecksum);
+    }
+
+    public static void write(Path idxFile, List<Entry> entries, byte[] packChecksum) throws IOException {
+        Entry[] sorted = entries.toArray(new Entry[0]);
+        Arrays.sort(sorted, Comparator.comparing(Entry::getHash, Arrays::compareUnsigned));
+
+        int largeCount = 0;
+        for (Entry entry : sorted) {
+            if (entry.getOffset() > Integer.MAX_VALUE) largeCount++;
+        }
+
+        int size = HEADER_SIZE + FANOUT_SIZE * 4 + sorted.length * (20 + 4 + 4) + largeCount * 8 + 40;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC);
+        buffer.putInt(VERSION);
+
+        int[] fanout = new int[FANOUT_SIZE];
+        for (Entry entry : sorted) {
+            fanout[entry.getHash()[0] & 0xFF]++;
+        }
+        int total = 0;
+        for (int i = 0; i < FANOUT_SIZE; i++) {
+            total += fanout[i];
+            buffer.putInt(total);
+        }
+
+        for (Entry entry : sorted) {
+            buffer.put(entry.getHash());
+        }
+        for (Entry entry : sorted) {
+            buffer.putInt(entry.getCrc32());
+        }
+
+        int largeIndex = 0;
+        for (Entry entry : sorted) {
+            if (entry.getOffset() > Integer.MAX_VALUE) {
+                buffer.putInt(0x80000000 | largeIndex++);
+            } else {
+                buffer.putInt((int) entry.getOffset());
+            }
+        }
+        for (Entry entry : sorted) {
+            if (entry.getOffset() > Integer.MAX_VALUE) {
+                buffer.putLong(entry.getOffset());
+            }
+        }
+
+        buffer.put(packChecksum);
+        buffer.put(SHA1Hasher.hash(buffer.array(), 0, buffer.position()));
+
+        Files.write(idxFile, buffer.array());
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    public int findPosition(byte[] hash) {
+        int first = hash[0] & 0xFF;
+        int low = first == 0 ? 0 : fanout[first - 1];
+        int high = fanout[first] - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(names, mid * 20, mid * 20 + 20, hash, 0, 20);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(byte[] hash) {
+        return findPosition(hash) >= 0;
+    }
+
+    public long findOffset(byte[] hash) {
+        int position = findPosition(hash);
+        return position < 0 ? -1 : offsets[position];
+    }
+
+    public byte[] getHash(int position) {
+        return Arrays.copyOfRange(names, position * 20, position * 20 + 20);
+    }
+
+    public long getOffset(int position) {
+        return offsets[position];
+    }
+
+    public int getCrc32(int position) {
+        return crcs[position];
+    }
+
+    public byte[] getPackChecksum() {
+        return packChecksum.clone();
+    }
+}
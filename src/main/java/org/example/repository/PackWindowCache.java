@@ -0,0 +1,140 @@
+package org.example.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+public class PackWindowCache {
+    public static final int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    public static class Window {
+        private final long start;
+        private final ByteBuffer buffer;
+
+        Window(long start, ByteBuffer buffer) {
+            this.start = start;
+            this.buffer = buffer;
+        }
+
+        public long getStart() { return start; }
+        public long getEnd() { return start + buffer.capacity(); }
+
+        public byte get(long position) {
+            return buffer.get((int) (position - start));
+        }
+
+        public ByteBuffer slice(long position) {
+            int relative = (int) (position - start);
+            return buffer.slice(relative, buffer.capacity() - relative);
+        }
+    }
+
+    private static final class Key {
+        private final PackFile pack;
+        private final long windowIndex;
+
+        Key(PackFile pack, long windowIndex) {
+            this.pack = pack;
+            this.windowIndex = windowIndex;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key that)) return false;
+            return pack == that.pack && windowIndex == that.windowIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(System.identityHashCode(pack), windowIndex);
+        }
+    }
+
+    private final int windowSize;
+    private final long budget;
+    private final LinkedHashMap<Key, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+    private long mappedBytes;
+    private long mapCount;
+
+    public PackWindowCache() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_BUDGET);
+    }
+
+    public PackWindowCache(int windowSize, long budget) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        if (budget < windowSize) {
+            throw new IllegalArgumentException("Budget must hold at least one window");
+        }
+        this.windowSize = windowSize;
+        this.budget = budget;
+    }
+
+    public synchronized Window get(PackFile pack, FileChannel channel, long position) throws IOException {
+        long windowIndex = position / windowSize;
+        Key key = new Key(pack, windowIndex);
+        Window window = windows.get(key);
+        if (window != null) {
+            return window;
+        }
+
+        long start = windowIndex * windowSize;
+        long length = Math.min(windowSize, channel.size() - start);
+        if (length <= 0) {
+            throw new IOException("Read past end of pack " + pack.getPackPath() + " at " + position);
+        }
+
+        evictUntil(budget - length);
+        window = new Window(start, channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+        windows.put(key, window);
+        mappedBytes += length;
+        mapCount++;
+        return window;
+    }
+
+    public synchronized void evict(PackFile pack) {
+        Iterator<Map.Entry<Key, Window>> it = windows.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Window> entry = it.next();
+            if (entry.getKey().pack == pack) {
+                mappedBytes -= entry.getValue().buffer.capacity();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public synchronized int getWindowCount() {
+        return windows.size();
+    }
+
+    public synchronized long getMapCount() {
+        return mapCount;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    private void evictUntil(long limit) {
+        Iterator<Window> it = windows.values().iterator();
+        while (mappedBytes > limit && it.hasNext()) {
+            mappedBytes -= it.next().buffer.capacity();
+            it.remove();
+        }
+    }
+}
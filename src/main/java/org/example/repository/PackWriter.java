@@ -0,0 +1,187 @@
+package org.example.repository;
+
+import org.example.utils.SHA1Hasher;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+public class PackWriter implements Closeable {
+    private final Path packDir;
+    private final Path tempPack;
+    private final int expectedCount;
+    private final PackOutputStream out;
+    private final List<PackIndex.Entry> entries = new ArrayList<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private boolean finished;
+
+    public PackWriter(Path packDir, int objectCount) throws IOException {
+        if (objectCount < 0) {
+            throw new IllegalArgumentException("Object count cannot be negative");
+        }
+        this.packDir = packDir;
+        this.expectedCount = objectCount;
+
+        Files.createDirectories(packDir);
+        this.tempPack = Files.createTempFile(packDir, "tmp_pack_", ".pack");
+        this.out = new PackOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPack)));
+
+        out.write(new byte[]{'P', 'A', 'C', 'K'});
+        writeInt(2);
+        writeInt(objectCount);
+    }
+
+    public void addObject(byte[] hash, String type, byte[] content) throws IOException {
+        if (entries.size() == expectedCount) {
+            throw new IllegalStateException("Pack already holds " + expectedCount + " objects");
+        }
+        long offset = out.position;
+        out.crc.reset();
+
+        writeObjectHeader(PackFile.typeCode(type), content.length);
+        out.write(compress(content));
+
+        entries.add(new PackIndex.Entry(hash.clone(), offset, (int) out.crc.getValue()));
+        offsets.put(SHA1Hasher.toHex(hash), offset);
+    }
+
+    public void addDelta(byte[] hash, byte[] baseHash, byte[] delta) throws IOException {
+        if (entries.size() == expectedCount) {
+            throw new IllegalStateException("Pack already holds " + expectedCount + " objects");
+        }
+        long offset = out.position;
+        out.crc.reset();
+
+        Long baseOffset = offsets.get(SHA1Hasher.toHex(baseHash));
+        if (baseOffset != null) {
+            writeObjectHeader(PackFile.OBJ_OFS_DELTA, delta.length);
+            writeOffsetDistance(offset - baseOffset);
+        } else {
+            writeObjectHeader(PackFile.OBJ_REF_DELTA, delta.length);
+            out.write(baseHash);
+        }
+        out.write(compress(delta));
+
+        entries.add(new PackIndex.Entry(hash.clone(), offset, (int) out.crc.getValue()));
+        offsets.put(SHA1Hasher.toHex(hash), offset);
+    }
+
+    public String finish() throws IOException {
+        if (entries.size() != expectedCount) {
+            throw new IllegalStateException(
+                    "Expected " + expectedCount + " objects but " + entries.size() + " were written");
+        }
+        byte[] checksum = out.hasher.digest();
+        out.writeTrailer(checksum);
+        out.close();
+        finished = true;
+
+        String name = "pack-" + SHA1Hasher.toHex(checksum);
+        Path packPath = packDir.resolve(name + ".pack");
+        Path idxPath = packDir.resolve(name + ".idx");
+
+        Files.move(tempPack, packPath, StandardCopyOption.REPLACE_EXISTING);
+
+        Path tempIdx = Files.createTempFile(packDir, "tmp_idx_", ".idx");
+        PackIndex.write(tempIdx, entries, checksum);
+        Files.move(tempIdx, idxPath, StandardCopyOption.REPLACE_EXISTING);
+
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            out.close();
+            Files.deleteIfExists(tempPack);
+        }
+    }
+
+    private void writeObjectHeader(int typeCode, long size) throws IOException {
+        int c = (typeCode << 4) | (int) (size & 0x0F);
+        size >>>= 4;
+        while (size != 0) {
+            out.write(c | 0x80);
+            c = (int) (size & 0x7F);
+            size >>>= 7;
+        }
+        out.write(c);
+    }
+
+    private void writeOffsetDistance(long distance) throws IOException {
+        byte[] buffer = new byte[10];
+        int pos = buffer.length - 1;
+        buffer[pos] = (byte) (distance & 0x7F);
+        while ((distance >>>= 7) != 0) {
+            buffer[--pos] = (byte) (0x80 | (--distance & 0x7F));
+        }
+        out.write(buffer, pos, buffer.length - pos);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(baos)) {
+            dos.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    private static class PackOutputStream extends FilterOutputStream {
+        private final SHA1Hasher hasher = SHA1Hasher.newHasher();
+        private final CRC32 crc = new CRC32();
+        private long position;
+
+        PackOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        void writeTrailer(byte[] checksum) throws IOException {
+            out.write(checksum);
+            position += checksum.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                hasher.close();
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            hasher.update((byte) b);
+            crc.update(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            hasher.update(b, off, len);
+            crc.update(b, off, len);
+            position += len;
+        }
+    }
+}
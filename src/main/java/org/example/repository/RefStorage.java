@@ -1,9 +1,13 @@
 package org.example.repository;
 
+import org.example.objects.ObjectId;
+
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -46,7 +50,7 @@ public class RefStorage {
         String ref = getHeadRef();
         if (ref == null) {
             String content = Files.readString(headFile()).trim();
-            return content.matches("[0-9a-f]{40}") ? content : null;
+            return ObjectId.isHex(content) ? content : null;
         }
         Path refPath = gitDir.resolve(ref);
         if (Files.exists(refPath)) return Files.readString(refPath).trim();
@@ -54,14 +58,31 @@ public class RefStorage {
     }
 
     public void updateHeadCommit(String commitHash) throws IOException {
-        if (commitHash == null || !commitHash.matches("[0-9a-f]{40}")) {
+        if (!ObjectId.isHex(commitHash)) {
             throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
         }
         String ref = getHeadRef();
-        if (ref == null) Files.writeString(headFile(), commitHash + "\n");
+        if (ref == null) writeRef(headFile(), commitHash);
         else {
             Path refPath = gitDir.resolve(ref);
-            Files.writeString(refPath, commitHash + "\n");
+            writeRef(refPath, commitHash);
+        }
+    }
+
+    public void updateHeadCommit(String commitHash, String expectedHash) throws IOException {
+        if (!ObjectId.isHex(commitHash)) {
+            throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
+        }
+        String ref = getHeadRef();
+        Path refPath = ref == null ? headFile() : gitDir.resolve(ref);
+        try (LockFile lock = LockFile.acquire(refPath)) {
+            String current = Files.exists(refPath) ? Files.readString(refPath).trim() : null;
+            if (!Objects.equals(current, expectedHash)) {
+                throw new IOException("cannot lock ref '" + (ref == null ? "HEAD" : ref) + "': is at "
+                        + current + " but expected " + expectedHash);
+            }
+            lock.write((commitHash + "\n").getBytes(StandardCharsets.UTF_8));
+            lock.commit();
         }
     }
 
@@ -69,7 +90,7 @@ public class RefStorage {
         if (branchName == null || branchName.isEmpty()) {
             throw new IllegalArgumentException("Branch name cannot be empty");
         }
-        if (commitHash == null || !commitHash.matches("[0-9a-f]{40}")) {
+        if (!ObjectId.isHex(commitHash)) {
             throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
         }
         Path branchPath = refsDir().resolve(branchName);
@@ -77,7 +98,13 @@ public class RefStorage {
             throw new IOException("Branch already exists: " + branchName);
         }
         Files.createDirectories(branchPath.getParent());
-        Files.writeString(branchPath, commitHash + "\n");
+        try (LockFile lock = LockFile.acquire(branchPath)) {
+            if (Files.exists(branchPath)) {
+                throw new IOException("Branch already exists: " + branchName);
+            }
+            lock.write((commitHash + "\n").getBytes(StandardCharsets.UTF_8));
+            lock.commit();
+        }
     }
 
     public void deleteBranch(String branchName) throws IOException {
@@ -96,7 +123,15 @@ public class RefStorage {
             throw new IOException("Branch does not exist: " + branchName);
         }
 
-        Files.delete(branchPath);
+        LockFile lock = LockFile.acquire(branchPath);
+        try {
+            if (!Files.exists(branchPath)) {
+                throw new IOException("Branch does not exist: " + branchName);
+            }
+            Files.delete(branchPath);
+        } finally {
+            lock.close();
+        }
     }
 
     public List<String> listBranches() throws IOException {
@@ -117,13 +152,13 @@ public class RefStorage {
         if (branchName == null || branchName.isEmpty()) {
             throw new IllegalArgumentException("Branch name cannot be empty");
         }
-        if (commitHash == null || !commitHash.matches("[0-9a-f]{40}")) {
+        if (!ObjectId.isHex(commitHash)) {
             throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
         }
 
         Path branchPath = refsDir().resolve(branchName);
         Files.createDirectories(branchPath.getParent());
-        Files.writeString(branchPath, commitHash + "\n");
+        writeRef(branchPath, commitHash);
     }
 
     public void setHead(String branchName) throws IOException {
@@ -137,15 +172,15 @@ public class RefStorage {
         }
 
         String ref = "refs/heads/" + branchName;
-        Files.writeString(headFile(), "ref: " + ref + "\n");
+        writeRef(headFile(), "ref: " + ref);
     }
 
     public void setDetachedHead(String commitHash) throws IOException {
-        if (commitHash == null || !commitHash.matches("[0-9a-f]{40}")) {
+        if (!ObjectId.isHex(commitHash)) {
             throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
         }
 
-        Files.writeString(headFile(), commitHash + "\n");
+        writeRef(headFile(), commitHash);
     }
 
     public boolean isDetachedHead() throws IOException {
@@ -166,4 +201,8 @@ public class RefStorage {
         Path branchPath = refsDir().resolve(branchName);
         return Files.exists(branchPath);
     }
+
+    private static void writeRef(Path refPath, String value) throws IOException {
+        LockFile.writeString(refPath, value + "\n");
+    }
 }
@@ -1,15 +1,25 @@
 package org.example.repository;
 
-import org.example.objects.Blob;
 import org.example.objects.Commit;
+import org.example.objects.ObjectId;
 import org.example.objects.Tree;
-import org.example.utils.SHA1Hasher;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import static org.example.utils.Colors.*;
 
@@ -19,13 +29,19 @@ public class Repository {
     private final ObjectStorage objectStorage;
     private final RefStorage refStorage;
     private final Index index;
+    private final WorkingTreeWriter workingTreeWriter;
 
     public Repository(Path workingDir) {
+        this(workingDir, Runtime.getRuntime().availableProcessors(), WorkingTreeWriter.DEFAULT_IO_THREADS);
+    }
+
+    public Repository(Path workingDir, int checkoutThreads, int checkoutIoThreads) {
         this.workingDir = workingDir.toAbsolutePath().normalize();
         this.gitDir = workingDir.resolve(".git");
         this.objectStorage = new ObjectStorage(gitDir);
         this.refStorage = new RefStorage(gitDir);
         this.index = new Index(gitDir.resolve("index"));
+        this.workingTreeWriter = new WorkingTreeWriter(objectStorage, this.workingDir, checkoutThreads, checkoutIoThreads);
     }
 
     public void init() throws IOException {
@@ -37,7 +53,7 @@ public class Repository {
         Files.createDirectories(gitDir.resolve("refs").resolve("heads"));
         Files.createDirectories(gitDir.resolve("refs").resolve("tags"));
 
-        Files.writeString(gitDir.resolve("HEAD"), "ref: refs/heads/master\n");
+        LockFile.writeString(gitDir.resolve("HEAD"), "ref: refs/heads/master\n");
 
         index.clear();
         index.save();
@@ -51,283 +67,297 @@ public class Repository {
     }
 
     public void add(String filePath) throws IOException {
-        index.load();
-        if (filePath == null || filePath.trim().isEmpty()) {
-            throw new IllegalArgumentException("File path cannot be empty");
-        }
-        String normalizedPath = normalizePath(filePath);
-        if (normalizedPath.startsWith(".git/")) {
-            return;
-        }
-        Map<String, byte[]> headFiles = getHeadFiles();
+        index.lockForUpdate();
+        try {
+            if (filePath == null || filePath.trim().isEmpty()) {
+                throw new IllegalArgumentException("File path cannot be empty");
+            }
+            String normalizedPath = normalizePath(filePath);
+            if (normalizedPath.startsWith(".git/")) {
+                return;
+            }
+            Map<String, ObjectId> headFiles = getHeadFiles();
 
-        Path file = workingDir.resolve(normalizedPath);
+            Path file = workingDir.resolve(normalizedPath);
 
-        if (!Files.exists(file)) {
-            throw new IOException("File does not exist: " + filePath);
-        }
+            if (!Files.exists(file)) {
+                throw new IOException("File does not exist: " + filePath);
+            }
 
-        if (Files.isDirectory(file)) {
-            try (var stream = Files.walk(file)) {
-                stream.filter(Files::isRegularFile)
-                        .forEach(subFile -> {
-                            try {
-                                String relativePath = normalizePath(subFile);
-                                addFile(relativePath, headFiles);
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        });
+            boolean directory = Files.isDirectory(file);
+            IgnoreRules ignoreRules = IgnoreRules.load(workingDir, gitDir);
+            if (!normalizedPath.isEmpty() && ignoreRules.isIgnored(normalizedPath, directory)
+                    && !isTracked(normalizedPath, directory)) {
+                throw new IOException("The following path is ignored by one of your .gitignore files: " + filePath);
             }
-        } else {
-            addFile(normalizedPath, headFiles);
+
+            if (directory) {
+                addFiles(file, ignoreRules, headFiles, false);
+            } else {
+                addFile(normalizedPath, headFiles);
+            }
+            index.save();
+        } finally {
+            index.unlock();
         }
-        index.save();
     }
 
-    private void addFile(String filePath, Map<String, byte[]> headFiles) throws IOException {
+    private void addFile(String filePath, Map<String, ObjectId> headFiles) throws IOException {
         if (filePath.startsWith(".git/")) {
             return;
         }
-        Path file = workingDir.resolve(filePath);
-        byte[] content = Files.readAllBytes(file);
-        Blob blob = new Blob(content);
-
         IndexEntry existingEntry = index.getEntry(filePath);
-        boolean inHead = headFiles.containsKey(filePath);
-        byte[] headHash = headFiles.get(filePath);
-
-        if (existingEntry != null && Arrays.equals(existingEntry.getHash(), blob.getHash())) {
-            return;
+        IndexEntry entry = stageFile(filePath,
+                existingEntry == null ? null : existingEntry.getId(), headFiles.get(filePath));
+        if (entry != null) {
+            index.add(entry);
+            System.out.println("add '" + filePath + "'");
         }
-
-        if (inHead && headHash != null && Arrays.equals(headHash, blob.getHash())) {
-            return;
-        }
-
-        objectStorage.store(blob);
-        IndexEntry entry = IndexEntry.fromFile(filePath, blob.getHash(), file);
-        index.add(entry);
-
-        System.out.println("add '" + filePath + "'");
     }
 
-    public void addAll() throws IOException {
-        index.load();
-        Map<String, byte[]> headFiles = getHeadFiles();
-        try (var stream = Files.walk(workingDir)) {
-            stream.filter(Files::isRegularFile)
-                    .forEach(file -> {
-                        try {
-                            String relativePath = normalizePath(file);
-
-                            if (relativePath.startsWith(".git")) {
-                                return;
-                            }
-
-                            addFile(relativePath, headFiles);
-                        } catch (IOException e) {
-                            System.err.println("Failed to add " + file + ": " + e.getMessage());
-                        }
-                    });
+    private IndexEntry stageFile(String filePath, ObjectId indexedId, ObjectId headId) throws IOException {
+        Path file = workingDir.resolve(filePath);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        int mode = Files.isExecutable(file) ? IndexEntry.MODE_EXECUTABLE : IndexEntry.MODE_FILE;
+        if (indexedId != null || headId != null) {
+            ObjectId id = ObjectId.fromBytes(objectStorage.hashFile(file));
+            if (id.equals(indexedId) || id.equals(headId)) {
+                return null;
+            }
         }
-        index.save();
-    }
-
-
-    public void remove(String filePath, boolean cached, boolean force) throws IOException {
-        index.load();
-        String normalizedPath = normalizePath(filePath);
-        Path file = workingDir.resolve(normalizedPath);
 
-        IndexEntry indexEntry = index.getEntry(normalizedPath);
-        boolean fileExistsInWorkingDir = Files.exists(file);
-        Map<String, byte[]> headFiles = getHeadFiles();
-        boolean fileExistsInHead = headFiles.containsKey(normalizedPath);
+        ObjectId id = ObjectId.fromBytes(objectStorage.storeFile(file));
+        return IndexEntry.of(filePath, id, mode, (int) attrs.size(), attrs.lastModifiedTime().toMillis());
+    }
 
-        if (indexEntry == null && !fileExistsInWorkingDir && !fileExistsInHead) {
-            throw new IOException("path '" + filePath + "' did not match any files");
+    private boolean isTracked(String path, boolean directory) {
+        if (!directory) {
+            return index.contains(path);
         }
-
-        if (!force && fileExistsInWorkingDir) {
-            if (indexEntry != null && indexEntry.isModified(file)) {
-                throw new IOException("the following file has local modifications:\n    " + filePath +
-                        "\n(use --force to force removal)");
-            }
-            if (indexEntry == null && fileExistsInHead) {
-                byte[] headHash = headFiles.get(normalizedPath);
-                byte[] workingHash = getWorkingFiles().get(normalizedPath);
-                if (headHash != null && workingHash != null && !Arrays.equals(headHash, workingHash)) {
-                    throw new IOException("the following file has local modifications:\n    " + filePath +
-                            "\n(use --force to force removal)");
-                }
+        String prefix = path + "/";
+        Index.Cursor cursor = index.cursor();
+        while (cursor.next()) {
+            if (cursor.getPath().startsWith(prefix)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        if (!cached && fileExistsInWorkingDir) {
+    private void addFiles(Path start, IgnoreRules ignoreRules, Map<String, ObjectId> headFiles, boolean skipFailures)
+            throws IOException {
+        int depth = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+        Deque<PendingAdd> pending = new ArrayDeque<>();
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
             try {
-                Files.delete(file);
-            } catch (IOException e) {
-                throw new IOException("unable to remove '" + normalizedPath + "': " + e.getMessage());
+                walkWorkingTree(start, ignoreRules, true, (file, relativePath, attrs) -> {
+                    IndexEntry existingEntry = index.getEntry(relativePath);
+                    ObjectId indexedId = existingEntry == null ? null : existingEntry.getId();
+                    ObjectId headId = headFiles.get(relativePath);
+                    pending.addLast(new PendingAdd(file, relativePath,
+                            workers.submit(() -> stageFile(relativePath, indexedId, headId))));
+                    if (pending.size() >= depth) {
+                        mergeAdd(pending.removeFirst(), skipFailures);
+                    }
+                });
+                while (!pending.isEmpty()) {
+                    mergeAdd(pending.removeFirst(), skipFailures);
+                }
+            } finally {
+                for (PendingAdd add : pending) {
+                    add.result.cancel(true);
+                }
             }
         }
+    }
 
-        if (indexEntry != null) {
-            index.remove(normalizedPath);
+    private void mergeAdd(PendingAdd add, boolean skipFailures) throws IOException {
+        IndexEntry entry;
+        try {
+            entry = add.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while adding " + add.path, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (skipFailures && cause instanceof IOException) {
+                System.err.println("Failed to add " + add.file + ": " + cause.getMessage());
+                return;
+            }
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException("Failed to add " + add.path, cause);
         }
-        index.save();
-        if (cached) {
-            System.out.println("removed from index: " + filePath);
-        } else {
-            System.out.println("removed: " + filePath);
+        if (entry != null) {
+            index.add(entry);
+            System.out.println("add '" + add.path + "'");
         }
     }
 
-    public String commit(String message, String author) throws IOException {
-        index.load();
-        if (message == null || message.trim().isEmpty()) {
-            throw new IllegalArgumentException("Commit message cannot be empty");
-        }
-        if (author == null || author.trim().isEmpty()) {
-            throw new IllegalArgumentException("Author cannot be empty");
+    public void addAll() throws IOException {
+        index.lockForUpdate();
+        try {
+            Map<String, ObjectId> headFiles = getHeadFiles();
+            addFiles(workingDir, IgnoreRules.load(workingDir, gitDir), headFiles, true);
+            index.save();
+        } finally {
+            index.unlock();
         }
+    }
 
-        if (!hasChangesToCommit()) {
-            throw new IllegalStateException("nothing to commit, working tree clean");
-        }
 
-        Tree rootTree = buildTreeFromIndex();
-        objectStorage.store(rootTree);
+    public void remove(String filePath, boolean cached, boolean force) throws IOException {
+        index.lockForUpdate();
+        try {
+            String normalizedPath = normalizePath(filePath);
+            Path file = workingDir.resolve(normalizedPath);
 
-        String parentHash = refStorage.getHeadCommit();
-        List<byte[]> parents = new ArrayList<>();
-        if(parentHash != null) parents.add(SHA1Hasher.fromHex(parentHash));
+            IndexEntry indexEntry = index.getEntry(normalizedPath);
+            boolean fileExistsInWorkingDir = Files.exists(file);
+            Map<String, ObjectId> headFiles = getHeadFiles();
+            boolean fileExistsInHead = headFiles.containsKey(normalizedPath);
 
-        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
-        String fullAuthor = author + " " + timestamp + " +0000";
+            if (indexEntry == null && !fileExistsInWorkingDir && !fileExistsInHead) {
+                throw new IOException("path '" + filePath + "' did not match any files");
+            }
 
-        Commit commit = new Commit(
-                rootTree.getHash(),
-                parents,
-                fullAuthor,
-                fullAuthor,
-                message
-        );
+            if (!force && fileExistsInWorkingDir) {
+                if (indexEntry != null && isModified(indexEntry, file)) {
+                    throw new IOException("the following file has local modifications:\n    " + filePath +
+                            "\n(use --force to force removal)");
+                }
+                if (indexEntry == null && fileExistsInHead) {
+                    ObjectId headId = headFiles.get(normalizedPath);
+                    ObjectId workingId = getWorkingFiles().get(normalizedPath);
+                    if (headId != null && workingId != null && !headId.equals(workingId)) {
+                        throw new IOException("the following file has local modifications:\n    " + filePath +
+                                "\n(use --force to force removal)");
+                    }
+                }
+            }
 
-        objectStorage.store(commit);
+            if (!cached && fileExistsInWorkingDir) {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new IOException("unable to remove '" + normalizedPath + "': " + e.getMessage());
+                }
+            }
 
-        if (parentHash == null) {
-            refStorage.createBranch("master", commit.getHexhash());
-            refStorage.setHead("master");
-        } else {
-            refStorage.updateHeadCommit(commit.getHexhash());
+            if (indexEntry != null) {
+                index.remove(normalizedPath);
+            }
+            index.save();
+            if (cached) {
+                System.out.println("removed from index: " + filePath);
+            } else {
+                System.out.println("removed: " + filePath);
+            }
+        } finally {
+            index.unlock();
         }
-
-        String branch = refStorage.getCurrentBranch();
-        if (branch == null) branch = "detached HEAD";
-
-        System.out.println("[" + branch + " " + commit.getHexhash().substring(0, 7) + "] " + message);
-
-        return commit.getHexhash();
     }
 
-    private Tree buildTreeFromIndex() throws IOException {
-        Map<String, List<IndexEntry>> entriesByDir = new HashMap<>();
-        entriesByDir.put("", new ArrayList<>());
-
-        for (IndexEntry entry : index.getEntries()) {
-            String path = entry.getPath();
-            String fileDir = getDirectoryPath(path);
-            entriesByDir.computeIfAbsent(fileDir, k -> new ArrayList<>()).add(entry);
-        }
-
-        Set<String> allDirs = new HashSet<>(entriesByDir.keySet());
-        for (String dir : new ArrayList<>(allDirs)) {
-            String parent = getDirectoryPath(dir);
-            while (!parent.isEmpty() && !allDirs.contains(parent)) {
-                entriesByDir.put(parent, new ArrayList<>());
-                allDirs.add(parent);
-                parent = getDirectoryPath(parent);
+    public String commit(String message, String author) throws IOException {
+        index.lockForUpdate();
+        try {
+            if (message == null || message.trim().isEmpty()) {
+                throw new IllegalArgumentException("Commit message cannot be empty");
+            }
+            if (author == null || author.trim().isEmpty()) {
+                throw new IllegalArgumentException("Author cannot be empty");
             }
-        }
 
-        List<String> directories = new ArrayList<>(entriesByDir.keySet());
-        directories.sort((a, b) -> Integer.compare(countSlashes(b), countSlashes(a)));
+            if (!hasChangesToCommit()) {
+                throw new IllegalStateException("nothing to commit, working tree clean");
+            }
 
+            String parentHash = refStorage.getHeadCommit();
+            byte[] rootTreeHash = buildTreeFromIndex().toBytes();
+            index.save();
 
-        Map<String, Tree> trees = new HashMap<>();
+            List<byte[]> parents = new ArrayList<>();
+            if(parentHash != null) parents.add(ObjectId.fromHex(parentHash).toBytes());
 
-        for (String dir : directories) {
-            Tree tree = new Tree();
+            String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+            String fullAuthor = author + " " + timestamp + " +0000";
 
-            for (IndexEntry entry : entriesByDir.get(dir)) {
-                String entryDir = getDirectoryPath(entry.getPath());
-                if (dir.equals(entryDir)) {
-                    String fileName = getFileName(entry.getPath());
-                    tree.addFile(fileName, entry.getHash());
-                }
-            }
+            Commit commit = new Commit(
+                    rootTreeHash,
+                    parents,
+                    fullAuthor,
+                    fullAuthor,
+                    message
+            );
 
-            for (String subDir : trees.keySet()) {
-                if (isDirectChild(dir, subDir)) {
-                    Tree subTree = trees.get(subDir);
+            objectStorage.store(commit);
 
-                    String dirName = getFileName(subDir);
-                    tree.addDirectory(dirName, subTree.getHash());
-                }
+            if (parentHash == null) {
+                refStorage.createBranch("master", commit.getHexhash());
+                refStorage.setHead("master");
+            } else {
+                refStorage.updateHeadCommit(commit.getHexhash(), parentHash);
             }
-            objectStorage.store(tree);
-            trees.put(dir, tree);
-        }
 
-        Tree rootTree = trees.get("");
-        if (rootTree == null) {
-            rootTree = new Tree();
-        }
+            String branch = refStorage.getCurrentBranch();
+            if (branch == null) branch = "detached HEAD";
 
-        for (Map.Entry<String, Tree> entry : trees.entrySet()) {
-            String dirPath = entry.getKey();
-            Tree tree = entry.getValue();
+            System.out.println("[" + branch + " " + commit.getHexhash().substring(0, 7) + "] " + message);
 
-            if (!dirPath.isEmpty() && !dirPath.contains("/")) {
-                rootTree.addDirectory(dirPath, tree.getHash());
-            }
+            return commit.getHexhash();
+        } finally {
+            index.unlock();
         }
-
-        objectStorage.store(rootTree);
-        return rootTree;
-    }
-
-    private String getDirectoryPath(String path) {
-        int lastSlash = path.lastIndexOf('/');
-        return lastSlash == -1 ? "" : path.substring(0, lastSlash);
-    }
-
-    private String getFileName(String path) {
-        int lastSlash = path.lastIndexOf('/');
-        return lastSlash == -1 ? path : path.substring(lastSlash + 1);
     }
 
-    private int countSlashes(String path) {
-        return (int) path.chars().filter(ch -> ch == '/').count();
+    private ObjectId buildTreeFromIndex() throws IOException {
+        List<IndexEntry> entries = index.getEntries();
+        return buildTree("", entries, 0, entries.size());
     }
 
-    private boolean isDirectChild(String parent, String child) {
-        if (parent.isEmpty()) {
-            return !child.isEmpty() && !child.contains("/");
-        }
+    private ObjectId buildTree(String dir, List<IndexEntry> entries, int from, int to) throws IOException {
+        Index.CachedTree cached = index.getCachedTree(dir);
+        if (cached != null && cached.getEntryCount() == to - from
+                && objectStorage.hasObject(cached.getId())) {
+            return cached.getId();
+        }
+
+        String prefix = dir.isEmpty() ? "" : dir + "/";
+        Tree.Builder builder = new Tree.Builder(Math.min(to - from, 1024));
+        int i = from;
+        while (i < to) {
+            IndexEntry entry = entries.get(i);
+            String relativePath = entry.getPath().substring(prefix.length());
+            int slash = relativePath.indexOf('/');
+            if (slash == -1) {
+                builder.addFile(relativePath, entry.getId());
+                i++;
+                continue;
+            }
 
-        if (!child.startsWith(parent + "/")) {
-            return false;
+            String name = relativePath.substring(0, slash);
+            String childPrefix = prefix + name + "/";
+            int end = i;
+            while (end < to && entries.get(end).getPath().startsWith(childPrefix)) {
+                end++;
+            }
+            builder.addDirectory(name, buildTree(prefix + name, entries, i, end));
+            i = end;
         }
 
-        String afterParent = child.substring(parent.length() + 1);
-        return !afterParent.contains("/");
+        Tree tree = builder.build();
+        objectStorage.store(tree);
+        index.putCachedTree(dir, tree.getId(), to - from);
+        return tree.getId();
     }
 
     private boolean hasChangesToCommit() throws IOException {
         if (index.isEmpty()) {
-            Map<String, byte[]> headFiles = getHeadFiles();
+            Map<String, ObjectId> headFiles = getHeadFiles();
             for (String headPath : headFiles.keySet()) {
                 if (!index.contains(headPath)) {
                     return true;
@@ -336,15 +366,15 @@ public class Repository {
             return false;
         }
 
-        Map<String, byte[]> headFiles = getHeadFiles();
-        Map<String, byte[]> indexFiles = getIndexFiles();
+        Map<String, ObjectId> headFiles = getHeadFiles();
+        Map<String, ObjectId> indexFiles = getIndexFiles();
 
-        for (Map.Entry<String, byte[]> entry : indexFiles.entrySet()) {
+        for (Map.Entry<String, ObjectId> entry : indexFiles.entrySet()) {
             String path = entry.getKey();
-            byte[] indexHash = entry.getValue();
-            byte[] headHash = headFiles.get(path);
+            ObjectId indexId = entry.getValue();
+            ObjectId headId = headFiles.get(path);
 
-            if (headHash == null || !Arrays.equals(headHash, indexHash)) {
+            if (headId == null || !headId.equals(indexId)) {
                 return true;
             }
         }
@@ -378,10 +408,14 @@ public class Repository {
         return refStorage.getCurrentBranch();
     }
 
+    public String getHeadCommit() throws IOException {
+        return refStorage.getHeadCommit();
+    }
+
     public void checkout(String branch) throws IOException {
         if(refStorage.branchExists(branch)) {
             checkoutBranch(branch);
-        } else if (branch.matches("[0-9a-f]{40}")) {
+        } else if (ObjectId.isHex(branch)) {
             checkoutCommit(branch);
         } else {
             throw new IllegalArgumentException(
@@ -395,17 +429,18 @@ public class Repository {
         String commitHash = refStorage.getBranchCommit(branch);
         Commit commit = (Commit) objectStorage.load(commitHash);
 
-        clearWorkingDirectory();
-
-        restoreTree(commit.getTreeHash(), workingDir);
-        updateIndexFromCommit(commit);
-
-        refStorage.setHead(branch);
+        index.lockForUpdate();
+        try {
+            switchWorkingTree(commit);
+            refStorage.setHead(branch);
+        } finally {
+            index.unlock();
+        }
         System.out.println("Switched to branch '" + branch + "'");
     }
 
     private void checkoutCommit(String commitHash) throws IOException {
-        if (!commitHash.matches("[0-9a-f]{40}")) {
+        if (!ObjectId.isHex(commitHash)) {
             throw new IllegalArgumentException("Invalid commit hash: " + commitHash);
         }
 
@@ -415,16 +450,20 @@ public class Repository {
 
         Commit commit = (Commit) objectStorage.load(commitHash);
 
-        clearWorkingDirectory();
-        restoreTree(commit.getTreeHash(), workingDir);
-        updateIndexFromCommit(commit);
-        refStorage.setDetachedHead(commitHash);
+        index.lockForUpdate();
+        try {
+            switchWorkingTree(commit);
+            refStorage.setDetachedHead(commitHash);
+        } finally {
+            index.unlock();
+        }
 
         System.out.println("Note: switching to detached HEAD state");
         System.out.println("HEAD is now at " + commitHash.substring(0, 7));
     }
 
     public void checkoutB(String branch) throws IOException {
+        index.load();
         if (hasUncommittedChanges()) {
             throw new IOException("Your local changes would be lost. Please commit or stash them first.");
         }
@@ -432,61 +471,237 @@ public class Repository {
         checkout(branch);
     }
 
-    private void restoreTree(byte[] treeHash, Path currDir) throws IOException {
-        Tree tree = (Tree) objectStorage.load(SHA1Hasher.toHex(treeHash));
+    private void switchWorkingTree(Commit target) throws IOException {
+        if (hasUncommittedChanges()) {
+            throw new IOException("Your local changes would be lost. Please commit or stash them first.");
+        }
+
+        String headHash = refStorage.getHeadCommit();
+        ObjectId headTree = headHash == null ? null : ((Commit) objectStorage.load(headHash)).getTreeId();
 
-        for(Tree.Entry entry : tree.getEntries()) {
-            if(entry.getType().equals("blob")) {
-                Blob blob = (Blob) objectStorage.load(entry.getHexHash());
-                Path filePath = currDir.resolve(entry.getName());
+        List<PathChange> changes = new ArrayList<>();
+        Map<String, Index.CachedTree> targetTrees = new HashMap<>();
+        diffTrees(headTree, target.getTreeId(), "", changes, targetTrees);
+
+        checkCheckoutConflicts(changes);
+
+        for (PathChange change : changes) {
+            if (change.newId == null) {
+                Path file = workingDir.resolve(change.path);
+                Files.deleteIfExists(file);
+                index.remove(change.path);
+                deleteEmptyParentDirectories(file.getParent());
+            }
+        }
+        SortedMap<String, ObjectId> writes = new TreeMap<>();
+        for (PathChange change : changes) {
+            if (change.newId != null) {
+                writes.put(change.path, change.newId);
+            }
+        }
+        for (IndexEntry entry : workingTreeWriter.write(writes)) {
+            index.add(entry);
+        }
+        for (Map.Entry<String, Index.CachedTree> tree : targetTrees.entrySet()) {
+            index.putCachedTree(tree.getKey(), tree.getValue().getId(), tree.getValue().getEntryCount());
+        }
+        index.save();
+    }
 
-                Path parent = filePath.getParent();
-                if (parent != null) {
-                    Files.createDirectories(parent);
+    private int diffTrees(ObjectId oldTreeId, ObjectId newTreeId, String dir, List<PathChange> changes,
+                          Map<String, Index.CachedTree> targetTrees) throws IOException {
+        if (oldTreeId != null && oldTreeId.equals(newTreeId)) {
+            Index.CachedTree cached = index.getCachedTree(dir);
+            return cached != null && cached.getId().equals(newTreeId) ? cached.getEntryCount() : -1;
+        }
+
+        Map<String, Tree.Entry> oldEntries = loadTreeEntries(oldTreeId);
+        Map<String, Tree.Entry> newEntries = loadTreeEntries(newTreeId);
+        Set<String> names = new TreeSet<>(oldEntries.keySet());
+        names.addAll(newEntries.keySet());
+
+        int count = 0;
+        boolean complete = true;
+        for (String name : names) {
+            String path = dir.isEmpty() ? name : dir + "/" + name;
+            Tree.Entry oldEntry = oldEntries.get(name);
+            Tree.Entry newEntry = newEntries.get(name);
+
+            ObjectId oldSubtree = idOfType(oldEntry, "tree");
+            ObjectId newSubtree = idOfType(newEntry, "tree");
+            if (oldSubtree != null || newSubtree != null) {
+                int subtreeCount = diffTrees(oldSubtree, newSubtree, path, changes, targetTrees);
+                if (newSubtree != null) {
+                    if (subtreeCount < 0) {
+                        complete = false;
+                    } else {
+                        count += subtreeCount;
+                    }
                 }
-                Files.write(filePath, blob.serialize());
-            } else if(entry.getType().equals("tree")) {
-                Path newDir = currDir.resolve(entry.getName());
-                Files.createDirectories(newDir);
-                restoreTree(entry.getHash(), newDir);
             }
+
+            ObjectId oldBlob = idOfType(oldEntry, "blob");
+            ObjectId newBlob = idOfType(newEntry, "blob");
+            if (oldBlob == null && newBlob == null) {
+                continue;
+            }
+            if (newBlob != null) {
+                count++;
+            }
+            if (oldBlob != null && oldBlob.equals(newBlob)
+                    && oldEntry.getMode().equals(newEntry.getMode())) {
+                IndexEntry indexed = index.getEntry(path);
+                if (indexed == null || !indexed.getId().equals(newBlob)) {
+                    complete = false;
+                }
+            } else {
+                changes.add(new PathChange(path, oldBlob, newBlob));
+            }
+        }
+
+        if (newTreeId == null || !complete) {
+            return -1;
         }
+        targetTrees.put(dir, new Index.CachedTree(newTreeId, count));
+        return count;
     }
 
-    private void updateIndexFromCommit(Commit commit) throws IOException {
-        index.clear();
+    private Map<String, Tree.Entry> loadTreeEntries(ObjectId treeId) throws IOException {
+        Map<String, Tree.Entry> entries = new HashMap<>();
+        if (treeId != null) {
+            Tree tree = (Tree) objectStorage.loadObject(treeId);
+            Tree.Cursor cursor = tree.cursor();
+            while (cursor.next()) {
+                Tree.Entry entry = cursor.toEntry();
+                entries.put(entry.getName(), entry);
+            }
+        }
+        return entries;
+    }
+
+    private ObjectId idOfType(Tree.Entry entry, String type) {
+        return entry != null && type.equals(entry.getType()) ? entry.getId() : null;
+    }
+
+    private void checkCheckoutConflicts(List<PathChange> changes) throws IOException {
+        Set<String> replaced = new HashSet<>();
+        for (PathChange change : changes) {
+            if (change.oldId != null) {
+                replaced.add(change.path);
+            }
+        }
+
+        List<String> localChanges = new ArrayList<>();
+        List<String> untracked = new ArrayList<>();
+        IgnoreRules ignoreRules = null;
+        for (PathChange change : changes) {
+            IndexEntry indexed = index.getEntry(change.path);
+            if (change.oldId != null) {
+                if (indexed == null || !indexed.getId().equals(change.oldId)) {
+                    localChanges.add(change.path);
+                }
+            } else if (indexed != null) {
+                if (!indexed.getId().equals(change.newId)) {
+                    localChanges.add(change.path);
+                }
+            } else if (isBlockedByUntracked(change.path, replaced)) {
+                untracked.add(change.path);
+            } else {
+                Path file = workingDir.resolve(change.path);
+                if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)
+                        && !ObjectId.fromBytes(objectStorage.hashFile(file)).equals(change.newId)) {
+                    if (ignoreRules == null) {
+                        ignoreRules = IgnoreRules.load(workingDir, gitDir);
+                    }
+                    if (!ignoreRules.isIgnored(change.path, false)) {
+                        untracked.add(change.path);
+                    }
+                }
+            }
+        }
 
-        Map<String, byte[]> commitFiles = getFilesFromCommit(commit);
-        for (Map.Entry<String, byte[]> entry : commitFiles.entrySet()) {
+        if (!localChanges.isEmpty()) {
+            throw new IOException("Your local changes to the following files would be overwritten by checkout:\n\t"
+                    + String.join("\n\t", localChanges)
+                    + "\nPlease commit your changes or stash them before you switch branches.");
+        }
+        if (!untracked.isEmpty()) {
+            throw new IOException("The following untracked working tree files would be overwritten by checkout:\n\t"
+                    + String.join("\n\t", untracked)
+                    + "\nPlease move or remove them before you switch branches.");
+        }
+    }
+
+    private boolean isBlockedByUntracked(String path, Set<String> replaced) throws IOException {
+        int slash = path.indexOf('/');
+        while (slash != -1) {
+            String ancestor = path.substring(0, slash);
+            Path ancestorPath = workingDir.resolve(ancestor);
+            if (Files.exists(ancestorPath, LinkOption.NOFOLLOW_LINKS)
+                    && !Files.isDirectory(ancestorPath, LinkOption.NOFOLLOW_LINKS) && !replaced.contains(ancestor)) {
+                return true;
+            }
+            slash = path.indexOf('/', slash + 1);
+        }
+
+        Path file = workingDir.resolve(path);
+        if (Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            try (var stream = Files.walk(file)) {
+                return stream.anyMatch(p -> !Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)
+                        && !replaced.contains(normalizePath(p)));
+            }
+        }
+        return Files.exists(file, LinkOption.NOFOLLOW_LINKS) && !Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS);
+    }
+
+    private int primeCachedTrees(ObjectId treeId, String dir) throws IOException {
+        Tree tree = (Tree) objectStorage.loadObject(treeId);
+        int count = 0;
+        Tree.Cursor cursor = tree.cursor();
+        while (cursor.next()) {
+            if (cursor.isTree()) {
+                count += primeCachedTrees(cursor.getId(), dir.isEmpty() ? cursor.getName() : dir + "/" + cursor.getName());
+            } else if (cursor.isBlob()) {
+                count++;
+            }
+        }
+        index.putCachedTree(dir, treeId, count);
+        return count;
+    }
+
+    private void updateIndexFromCommit(Commit commit) throws IOException {
+        List<IndexEntry> entries = new ArrayList<>();
+        Map<String, ObjectId> commitFiles = getFilesFromCommit(commit);
+        for (Map.Entry<String, ObjectId> entry : commitFiles.entrySet()) {
             String filePath = entry.getKey();
-            byte[] hash = entry.getValue();
+            ObjectId id = entry.getValue();
             Path file = workingDir.resolve(filePath);
 
             if (Files.exists(file)) {
-                IndexEntry indexEntry = IndexEntry.fromFile(filePath, hash, file);
-                index.add(indexEntry);
+                entries.add(IndexEntry.fromFile(filePath, id, file));
             }
         }
+        replaceIndex(commit, entries);
+    }
 
+    private void replaceIndex(Commit commit, List<IndexEntry> entries) throws IOException {
+        index.clear();
+        for (IndexEntry entry : entries) {
+            index.add(entry);
+        }
+        primeCachedTrees(commit.getTreeId(), "");
         index.save();
     }
 
-    private Map<String, byte[]> getFilesFromCommit(Commit commit) throws IOException {
-        Map<String, byte[]> files = new HashMap<>();
-        Tree tree = (Tree) objectStorage.load(SHA1Hasher.toHex(commit.getTreeHash()));
+    private Map<String, ObjectId> getFilesFromCommit(Commit commit) throws IOException {
+        Map<String, ObjectId> files = new HashMap<>();
+        Tree tree = (Tree) objectStorage.loadObject(commit.getTreeId());
         collectFilesFromTree(tree, "", files);
         return files;
     }
 
-    private void clearWorkingDirectory() throws IOException {
-        if (hasUncommittedChanges()) {
-            throw new IOException(
-                    "Your local changes would be lost. Please commit or stash them first."
-            );
-        }
-
-        Map<String, byte[]> headFiles = getHeadFiles();
-        for (String filePath : headFiles.keySet()) {
+    private void clearWorkingDirectory(Set<String> trackedPaths) throws IOException {
+        for (String filePath : trackedPaths) {
             Path file = workingDir.resolve(filePath);
             if (Files.exists(file)) {
                 try {
@@ -496,23 +711,18 @@ public class Repository {
                 }
             }
         }
-        try (var stream = Files.walk(workingDir)) {
-            stream.filter(Files::isRegularFile)
-                    .filter(path -> !path.startsWith(gitDir))
-                    .forEach(file -> {
-                        try {
-                            String relativePath = normalizePath(file);
-
-                            if (relativePath.startsWith(".git")) {
-                                return;
-                            }
-                            if (!headFiles.containsKey(relativePath)) {
-                                Files.delete(file);
-                                deleteEmptyParentDirectories(file.getParent());
-                            }
-                        } catch (IOException e) {
-                        }
-                    });
+        List<Path> untracked = new ArrayList<>();
+        walkWorkingTree(workingDir, IgnoreRules.load(workingDir, gitDir), false, (file, relativePath, attrs) -> {
+            if (!trackedPaths.contains(relativePath)) {
+                untracked.add(file);
+            }
+        });
+        for (Path file : untracked) {
+            try {
+                Files.delete(file);
+                deleteEmptyParentDirectories(file.getParent());
+            } catch (IOException e) {
+            }
         }
     }
 
@@ -530,13 +740,12 @@ public class Repository {
     }
 
     private boolean hasUncommittedChanges() throws IOException {
-        index.load();
-        for (IndexEntry entry : index.getEntries()) {
+        for (IndexEntry entry : index.refresh(workingDir)) {
             Path file = workingDir.resolve(entry.getPath());
-            if (!Files.exists(file)) {
+            if (!Files.isRegularFile(file) || !entry.isSmudged() && entry.isModified(file)) {
                 return true;
             }
-            if (entry.isModified(file)) {
+            if (!entry.getId().equals(ObjectId.fromBytes(objectStorage.hashFile(file)))) {
                 return true;
             }
         }
@@ -544,68 +753,140 @@ public class Repository {
         return false;
     }
 
+    private boolean isModified(IndexEntry entry, Path file) throws IOException {
+        if (!entry.isModified(file)) {
+            return false;
+        }
+        return !entry.isSmudged() || !Files.isRegularFile(file)
+                || !entry.getId().equals(ObjectId.fromBytes(objectStorage.hashFile(file)));
+    }
+
     public List<Commit> log() throws IOException {
         List<Commit> result = new ArrayList<>();
+        log(new LogOptions(), result::add);
+        return result;
+    }
 
+    public void log(LogOptions options, Consumer<Commit> consumer) throws IOException {
         String headHash = refStorage.getHeadCommit();
-        if (headHash == null) return result;
+        if (headHash == null || (options.hasMaxCount() && options.getMaxCount() == 0)) {
+            return;
+        }
 
-        List<Commit> allCommits = new ArrayList<>();
-        collectAllCommits(headHash, allCommits, new HashSet<>());
+        PriorityQueue<QueuedCommit> queue = new PriorityQueue<>();
+        Set<ObjectId> seen = new HashSet<>();
+        long sequence = 0;
+        CommitInfo head = readCommitInfo(ObjectId.fromHex(headHash));
+        if (head == null) {
+            return;
+        }
+        seen.add(head.id);
+        queue.add(new QueuedCommit(head, sequence++));
 
-        allCommits.sort((c1, c2) -> Long.compare(
-                extractTimestamp(c2),
-                extractTimestamp(c1)
-        ));
+        int shown = 0;
+        while (!queue.isEmpty()) {
+            CommitInfo info = queue.poll().info;
+            if (options.getSince() != null && info.commitTime < options.getSince()) {
+                break;
+            }
 
-        return allCommits;
-    }
+            if (options.getUntil() == null || info.commitTime <= options.getUntil()) {
+                consumer.accept((Commit) objectStorage.loadObject(info.id));
+                shown++;
+                if (options.hasMaxCount() && shown >= options.getMaxCount()) {
+                    break;
+                }
+            }
 
-    private void collectAllCommits(String commitHash, List<Commit> result, Set<String> visited)
-            throws IOException {
-        if (visited.contains(commitHash) || !objectStorage.exists(commitHash)) {
-            return;
+            for (ObjectId parentId : info.parents) {
+                if (seen.add(parentId)) {
+                    CommitInfo parent = readCommitInfo(parentId);
+                    if (parent != null) {
+                        queue.add(new QueuedCommit(parent, sequence++));
+                    }
+                }
+            }
         }
+    }
 
-        Commit commit = (Commit) objectStorage.load(commitHash);
-        result.add(commit);
-        visited.add(commitHash);
+    public boolean isAncestor(String ancestorSpec, String descendantSpec) throws IOException {
+        String ancestorHash = resolveCommitHash(ancestorSpec);
+        String descendantHash = resolveCommitHash(descendantSpec);
+        if (ancestorHash == null || descendantHash == null) {
+            throw new IllegalStateException("No commits yet");
+        }
+        CommitInfo ancestor = readCommitInfo(ObjectId.fromHex(ancestorHash));
+        if (ancestor == null) {
+            throw new IOException("Commit not found: " + ancestorSpec);
+        }
 
-        for (byte[] parentHash : commit.getParentHashes()) {
-            if (parentHash != null) {
-                collectAllCommits(SHA1Hasher.toHex(parentHash), result, visited);
+        Deque<ObjectId> pending = new ArrayDeque<>();
+        Set<ObjectId> visited = new HashSet<>();
+        pending.push(ObjectId.fromHex(descendantHash));
+        while (!pending.isEmpty()) {
+            ObjectId id = pending.pop();
+            if (id.equals(ancestor.id)) {
+                return true;
+            }
+            if (!visited.add(id)) {
+                continue;
+            }
+            CommitInfo info = readCommitInfo(id);
+            if (info == null) {
+                continue;
+            }
+            if (ancestor.generation != CommitGraph.GENERATION_INFINITY && info.generation <= ancestor.generation) {
+                continue;
+            }
+            for (ObjectId parent : info.parents) {
+                pending.push(parent);
             }
         }
+        return false;
     }
 
-    private long extractTimestamp(Commit commit) {
-        String signature = commit.getCommitter() != null ? commit.getCommitter() : commit.getAuthor();
-        if (signature == null) return 0L;
+    private CommitInfo readCommitInfo(ObjectId commitId) throws IOException {
+        CommitGraph graph = objectStorage.getCommitGraph();
+        if (graph != null) {
+            int position = graph.findPosition(commitId);
+            if (position >= 0) {
+                List<ObjectId> parents = new ArrayList<>();
+                for (int parent : graph.getParents(position)) {
+                    parents.add(graph.getObjectId(parent));
+                }
+                return new CommitInfo(commitId, graph.getCommitTime(position), graph.getGeneration(position), parents);
+            }
+        }
 
-        String[] parts = signature.split(" ");
-        for (int i = parts.length - 2; i >= 0; i--) {
-            try {
-                return Long.parseLong(parts[i]);
-            } catch (NumberFormatException ignored) {}
+        if (!objectStorage.hasObject(commitId)) {
+            return null;
         }
-        return 0L;
+        Commit commit = (Commit) objectStorage.loadObject(commitId);
+        List<ObjectId> parents = new ArrayList<>();
+        for (ObjectId parentId : commit.getParentIds()) {
+            if (parentId != null) {
+                parents.add(parentId);
+            }
+        }
+        return new CommitInfo(commitId, commit.getCommitTime(), CommitGraph.GENERATION_INFINITY, parents);
     }
 
     public void status() throws IOException {
         index.load();
+        index.refresh(workingDir);
         String branch = refStorage.getCurrentBranch();
         if (branch == null) branch = "detached HEAD";
 
         System.out.println("On branch " + branch);
         System.out.println();
 
-        Map<String, byte[]> rawH = getHeadFiles();
-        Map<String, byte[]> rawI = getIndexFiles();
-        Map<String, byte[]> rawW = getWorkingFiles();
+        Map<String, ObjectId> rawH = getHeadFiles();
+        Map<String, ObjectId> rawI = getIndexFiles();
+        Map<String, ObjectId> rawW = getWorkingFiles();
 
-        Map<String, byte[]> H = normalizePaths(rawH);
-        Map<String, byte[]> I = normalizePaths(rawI);
-        Map<String, byte[]> W = normalizePaths(rawW);
+        Map<String, ObjectId> H = normalizePaths(rawH);
+        Map<String, ObjectId> I = normalizePaths(rawI);
+        Map<String, ObjectId> W = normalizePaths(rawW);
 
         Set<String> allPaths = new TreeSet<>();
         allPaths.addAll(H.keySet());
@@ -622,9 +903,9 @@ public class Repository {
         Set<String> untracked = new LinkedHashSet<>();
 
         for (String path : allPaths) {
-            byte[] h = H.get(path);
-            byte[] i = I.get(path);
-            byte[] w = W.get(path);
+            ObjectId h = H.get(path);
+            ObjectId i = I.get(path);
+            ObjectId w = W.get(path);
 
             boolean inHead = h != null;
             boolean inIndex = i != null;
@@ -632,7 +913,7 @@ public class Repository {
 
             if (!inHead && inIndex) {
                 stagedAdded.add(path);
-                if (inWork && !hashesEqual(i, w)) {
+                if (inWork && !Objects.equals(i, w)) {
                     unstagedModified.add(path);
                 }
                 continue;
@@ -654,21 +935,21 @@ public class Repository {
             }
 
             if (inHead && inIndex && inWork) {
-                if (!hashesEqual(h, i)) {
+                if (!Objects.equals(h, i)) {
                     stagedModified.add(path);
                 }
-                if (!hashesEqual(i, w)) {
+                if (!Objects.equals(i, w)) {
                     unstagedModified.add(path);
                 }
                 continue;
             }
 
-            if (inHead && !inIndex && inWork && !hashesEqual(h, w)) {
+            if (inHead && !inIndex && inWork && !Objects.equals(h, w)) {
                 unstagedModified.add(path);
                 continue;
             }
 
-            if (inHead && inIndex && !inWork && !hashesEqual(h, i)) {
+            if (inHead && inIndex && !inWork && !Objects.equals(h, i)) {
                 unstagedDeleted.add(path);
                 continue;
             }
@@ -678,21 +959,15 @@ public class Repository {
                 unstagedModified, unstagedDeleted, untracked);
     }
 
-    private Map<String, byte[]> normalizePaths(Map<String, byte[]> input) {
-        Map<String, byte[]> out = new HashMap<>();
-        for (Map.Entry<String, byte[]> e : input.entrySet()) {
+    private Map<String, ObjectId> normalizePaths(Map<String, ObjectId> input) {
+        Map<String, ObjectId> out = new HashMap<>();
+        for (Map.Entry<String, ObjectId> e : input.entrySet()) {
             String normalized = e.getKey().replace(File.separatorChar, '/');
             out.put(normalized, e.getValue());
         }
         return out;
     }
 
-    private boolean hashesEqual(byte[] a, byte[] b) {
-        if (a == b) return true;
-        if (a == null || b == null) return false;
-        return Arrays.equals(a, b);
-    }
-
     private void printStatusDetailed(Set<String> stagedAdded,
                                      Set<String> stagedModified,
                                      Set<String> stagedDeleted,
@@ -732,40 +1007,91 @@ public class Repository {
         }
     }
 
-    private Map<String, byte[]> getIndexFiles() {
-        Map<String, byte[]> indexFiles = new HashMap<>();
+    private Map<String, ObjectId> getIndexFiles() {
+        Map<String, ObjectId> indexFiles = new HashMap<>();
 
-        for (IndexEntry entry : index.getEntries()) {
-            indexFiles.put(entry.getPath(), entry.getHash());
+        Index.Cursor cursor = index.cursor();
+        while (cursor.next()) {
+            indexFiles.put(cursor.getPath(), cursor.getId());
         }
 
         return indexFiles;
     }
 
-    private Map<String, byte[]> getWorkingFiles() throws IOException {
-        Map<String, byte[]> workingFiles = new HashMap<>();
+    private Map<String, ObjectId> getWorkingFiles() throws IOException {
+        Map<String, ObjectId> workingFiles = new HashMap<>();
 
-        try (var stream = Files.walk(workingDir)) {
-            stream.filter(Files::isRegularFile)
-                    .filter(path -> !path.startsWith(gitDir))
-                    .forEach(file -> {
-                        try {
-                            String relativePath = normalizePath(file);
-                            if (!relativePath.startsWith(".git")) {
-                                byte[] content = Files.readAllBytes(file);
-                                Blob blob = new Blob(content);
-                                workingFiles.put(relativePath, blob.getHash());
-                            }
-                        } catch (IOException e) {
-                        }
-                    });
-        }
+        walkWorkingTree(workingDir, IgnoreRules.load(workingDir, gitDir), true, (file, relativePath, attrs) -> {
+            IndexEntry entry = index.getEntry(relativePath);
+            if (entry != null && (index.isUpToDate(relativePath) || !index.isRacilyClean(entry)
+                    && entry.matchesStat(attrs.size(), attrs.lastModifiedTime().toMillis()))) {
+                workingFiles.put(relativePath, entry.getId());
+                return;
+            }
+            try {
+                workingFiles.put(relativePath, ObjectId.fromBytes(objectStorage.hashFile(file)));
+            } catch (IOException ignored) {
+            }
+        });
 
         return workingFiles;
     }
 
-    private Map<String, byte[]> getHeadFiles() throws IOException {
-        Map<String, byte[]> headFiles = new HashMap<>();
+    private void walkWorkingTree(Path start, IgnoreRules ignoreRules, boolean includeTracked,
+                                 WorkingFileVisitor visitor) throws IOException {
+        Path dotGit = workingDir.resolve(".git");
+        Set<String> visited = new HashSet<>();
+
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (dir.equals(dotGit)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                if (!dir.equals(workingDir) && ignoreRules.matches(normalizePath(dir), true)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile()) {
+                    String relativePath = normalizePath(file);
+                    if (!ignoreRules.matches(relativePath, false)) {
+                        visited.add(relativePath);
+                        visitor.visit(file, relativePath, attrs);
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (!includeTracked) {
+            return;
+        }
+        String prefix = start.equals(workingDir) ? "" : normalizePath(start) + "/";
+        Index.Cursor cursor = index.cursor();
+        while (cursor.next()) {
+            String path = cursor.getPath();
+            if (!path.startsWith(prefix) || visited.contains(path)) {
+                continue;
+            }
+            Path file = workingDir.resolve(path);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if (attrs.isRegularFile()) {
+                visitor.visit(file, path, attrs);
+            }
+        }
+    }
+
+    private Map<String, ObjectId> getHeadFiles() throws IOException {
+        Map<String, ObjectId> headFiles = new HashMap<>();
 
         String headCommitHash = refStorage.getHeadCommit();
         if (headCommitHash == null) {
@@ -773,21 +1099,22 @@ public class Repository {
         }
 
         Commit headCommit = (Commit) objectStorage.load(headCommitHash);
-        Tree headTree = (Tree) objectStorage.load(SHA1Hasher.toHex(headCommit.getTreeHash()));
+        Tree headTree = (Tree) objectStorage.loadObject(headCommit.getTreeId());
 
         collectFilesFromTree(headTree, "", headFiles);
 
         return headFiles;
     }
 
-    private void collectFilesFromTree(Tree tree, String currentPath, Map<String, byte[]> files) throws IOException {
-        for (Tree.Entry entry : tree.getEntries()) {
-            String fullPath = currentPath.isEmpty() ? entry.getName() : currentPath + "/" + entry.getName();
+    private void collectFilesFromTree(Tree tree, String currentPath, Map<String, ObjectId> files) throws IOException {
+        Tree.Cursor cursor = tree.cursor();
+        while (cursor.next()) {
+            String fullPath = currentPath.isEmpty() ? cursor.getName() : currentPath + "/" + cursor.getName();
 
-            if ("blob".equals(entry.getType())) {
-                files.put(fullPath, entry.getHash());
-            } else if ("tree".equals(entry.getType())) {
-                Tree subTree = (Tree) objectStorage.load(entry.getHexHash());
+            if (cursor.isBlob()) {
+                files.put(fullPath, cursor.getId());
+            } else if (cursor.isTree()) {
+                Tree subTree = (Tree) objectStorage.loadObject(cursor.getId());
                 collectFilesFromTree(subTree, fullPath, files);
             }
         }
@@ -821,7 +1148,13 @@ public class Repository {
         }
 
         Files.createDirectories(tagPath.getParent());
-        Files.writeString(tagPath, headCommit + "\n");
+        try (LockFile lock = LockFile.acquire(tagPath)) {
+            if (Files.exists(tagPath)) {
+                throw new IOException("Tag already exists: " + tagName);
+            }
+            lock.write((headCommit + "\n").getBytes(StandardCharsets.UTF_8));
+            lock.commit();
+        }
 
         System.out.println("Created tag '" + tagName + "' at " + headCommit.substring(0, 7));
     }
@@ -846,7 +1179,15 @@ public class Repository {
             throw new IOException("Tag does not exist: " + tagName);
         }
 
-        Files.delete(tagPath);
+        LockFile lock = LockFile.acquire(tagPath);
+        try {
+            if (!Files.exists(tagPath)) {
+                throw new IOException("Tag does not exist: " + tagName);
+            }
+            Files.delete(tagPath);
+        } finally {
+            lock.close();
+        }
         System.out.println("Deleted tag '" + tagName + "'");
     }
 
@@ -867,12 +1208,84 @@ public class Repository {
         System.out.println();
         System.out.println("commit " + commitHash);
         System.out.println("Author: " + commit.getAuthor());
-        System.out.println("Date:   " + new java.util.Date(extractTimestamp(commit) * 1000));
+        System.out.println("Date:   " + new java.util.Date(commit.getCommitTime() * 1000));
         System.out.println();
         System.out.println("    " + commit.getMessage());
     }
 
+    public void gc() throws IOException {
+        gc(false);
+    }
+
+    public void gc(boolean aggressive) throws IOException {
+        List<String> tips = collectRefTips();
+        int packed = aggressive ? objectStorage.repack(collectPathHints(tips)) : objectStorage.packLooseObjects();
+        objectStorage.writeCommitGraph(tips);
+        if (packed == 0) {
+            System.out.println("Nothing to pack");
+        } else {
+            System.out.println("Packed " + packed + " objects (" + objectStorage.getPackCount() + " packs total)");
+        }
+    }
+
+    private List<String> collectRefTips() throws IOException {
+        Set<String> tips = new LinkedHashSet<>();
+        String headCommit = refStorage.getHeadCommit();
+        if (headCommit != null) tips.add(headCommit);
+        for (String branch : refStorage.listBranches()) {
+            tips.add(refStorage.getBranchCommit(branch));
+        }
+        for (String tag : listTags()) {
+            tips.add(Files.readString(gitDir.resolve("refs/tags").resolve(tag)).trim());
+        }
+        List<String> existing = new ArrayList<>();
+        for (String tip : tips) {
+            if (objectStorage.exists(tip)) {
+                existing.add(tip);
+            }
+        }
+        return existing;
+    }
+
+    private Map<String, String> collectPathHints(List<String> tips) throws IOException {
+        Map<String, String> pathHints = new HashMap<>();
+        Deque<String> pending = new ArrayDeque<>(tips);
+
+        Set<String> visited = new HashSet<>();
+        while (!pending.isEmpty()) {
+            String commitHash = pending.pop();
+            if (!visited.add(commitHash) || !objectStorage.exists(commitHash)) {
+                continue;
+            }
+            Commit commit = (Commit) objectStorage.load(commitHash);
+            collectTreePaths(commit.getTreeId().toHex(), "", pathHints);
+            for (ObjectId parentId : commit.getParentIds()) {
+                if (parentId != null) {
+                    pending.push(parentId.toHex());
+                }
+            }
+        }
+        return pathHints;
+    }
+
+    private void collectTreePaths(String treeHash, String path, Map<String, String> pathHints) throws IOException {
+        if (pathHints.putIfAbsent(treeHash, path) != null) {
+            return;
+        }
+        Tree tree = (Tree) objectStorage.load(treeHash);
+        Tree.Cursor cursor = tree.cursor();
+        while (cursor.next()) {
+            String fullPath = path.isEmpty() ? cursor.getName() : path + "/" + cursor.getName();
+            if (cursor.isTree()) {
+                collectTreePaths(cursor.getId().toHex(), fullPath, pathHints);
+            } else {
+                pathHints.putIfAbsent(cursor.getId().toHex(), fullPath);
+            }
+        }
+    }
+
     public void reset(String mode, String commitHash) throws IOException {
+        String headHash = refStorage.getHeadCommit();
         String actualCommitHash = resolveCommitHash(commitHash);
 
         if (actualCommitHash == null) {
@@ -895,13 +1308,13 @@ public class Repository {
 
         switch (mode) {
             case "--soft":
-                resetSoft(actualCommitHash);
+                resetSoft(actualCommitHash, headHash);
                 break;
             case "--mixed":
-                resetMixed(targetCommit);
+                resetMixed(targetCommit, headHash);
                 break;
             case "--hard":
-                resetHard(targetCommit);
+                resetHard(targetCommit, headHash);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown reset mode: " + mode);
@@ -937,31 +1350,111 @@ public class Repository {
     }
 
     private String getNthParent(String commitHash, int n) throws IOException {
-        String current = commitHash;
+        if (commitHash == null) {
+            return null;
+        }
+        ObjectId current = ObjectId.fromHex(commitHash);
         for (int i = 0; i < n; i++) {
-            Commit commit = (Commit) objectStorage.load(current);
-            List<byte[]> parents = commit.getParentHashes();
-            if (parents.isEmpty()) {
+            CommitInfo info = readCommitInfo(current);
+            if (info == null) {
+                throw new IOException("Commit not found: " + current);
+            }
+            if (info.parents.isEmpty()) {
                 throw new IOException("No parent commit for " + current);
             }
-            current = SHA1Hasher.toHex(parents.get(0));
+            current = info.parents.get(0);
         }
-        return current;
+        return current.toHex();
     }
 
-    private void resetSoft(String commitHash) throws IOException {
-        refStorage.updateHeadCommit(commitHash);
+    private void resetSoft(String commitHash, String headHash) throws IOException {
+        refStorage.updateHeadCommit(commitHash, headHash);
     }
 
-    private void resetMixed(Commit targetCommit) throws IOException {
-        refStorage.updateHeadCommit(targetCommit.getHexhash());
-        updateIndexFromCommit(targetCommit);
+    private void resetMixed(Commit targetCommit, String headHash) throws IOException {
+        index.lockForUpdate();
+        try {
+            refStorage.updateHeadCommit(targetCommit.getHexhash(), headHash);
+            updateIndexFromCommit(targetCommit);
+        } finally {
+            index.unlock();
+        }
     }
 
-    private void resetHard(Commit targetCommit) throws IOException {
-        refStorage.updateHeadCommit(targetCommit.getHexhash());
-        clearWorkingDirectory();
-        restoreTree(targetCommit.getTreeHash(), workingDir);
-        updateIndexFromCommit(targetCommit);
+    private void resetHard(Commit targetCommit, String headHash) throws IOException {
+        index.lockForUpdate();
+        try {
+            if (hasUncommittedChanges()) {
+                throw new IOException(
+                        "Your local changes would be lost. Please commit or stash them first."
+                );
+            }
+            Set<String> trackedPaths = new HashSet<>(getHeadFiles().keySet());
+            trackedPaths.addAll(getIndexFiles().keySet());
+
+            refStorage.updateHeadCommit(targetCommit.getHexhash(), headHash);
+            clearWorkingDirectory(trackedPaths);
+            replaceIndex(targetCommit, workingTreeWriter.write(new TreeMap<>(getFilesFromCommit(targetCommit))));
+        } finally {
+            index.unlock();
+        }
+    }
+
+    private interface WorkingFileVisitor {
+        void visit(Path file, String relativePath, BasicFileAttributes attrs) throws IOException;
+    }
+
+    private static class QueuedCommit implements Comparable<QueuedCommit> {
+        private final CommitInfo info;
+        private final long sequence;
+
+        QueuedCommit(CommitInfo info, long sequence) {
+            this.info = info;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(QueuedCommit other) {
+            int byTime = Long.compare(other.info.commitTime, info.commitTime);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static class CommitInfo {
+        private final ObjectId id;
+        private final long commitTime;
+        private final int generation;
+        private final List<ObjectId> parents;
+
+        CommitInfo(ObjectId id, long commitTime, int generation, List<ObjectId> parents) {
+            this.id = id;
+            this.commitTime = commitTime;
+            this.generation = generation;
+            this.parents = parents;
+        }
+    }
+
+    private static class PathChange {
+        private final String path;
+        private final ObjectId oldId;
+        private final ObjectId newId;
+
+        PathChange(String path, ObjectId oldId, ObjectId newId) {
+            this.path = path;
+            this.oldId = oldId;
+            this.newId = newId;
+        }
+    }
+
+    private static class PendingAdd {
+        private final Path file;
+        private final String path;
+        private final Future<IndexEntry> result;
+
+        PendingAdd(Path file, String path, Future<IndexEntry> result) {
+            this.file = file;
+            this.path = path;
+            this.result = result;
+        }
     }
 }
@@ -0,0 +1,155 @@
+package org.example.repository;
+
+import org.example.objects.ObjectId;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+public class WorkingTreeWriter {
+    public static final int DEFAULT_IO_THREADS = 8;
+
+    private final ObjectStorage objectStorage;
+    private final Path workingDir;
+    private final int inflateThreads;
+    private final int ioThreads;
+
+    public WorkingTreeWriter(ObjectStorage objectStorage, Path workingDir) {
+        this(objectStorage, workingDir, Runtime.getRuntime().availableProcessors(), DEFAULT_IO_THREADS);
+    }
+
+    public WorkingTreeWriter(ObjectStorage objectStorage, Path workingDir, int inflateThreads, int ioThreads) {
+        if (inflateThreads <= 0 || ioThreads <= 0) {
+            throw new IllegalArgumentException("Thread counts must be positive");
+        }
+        this.objectStorage = objectStorage;
+        this.workingDir = workingDir;
+        this.inflateThreads = inflateThreads;
+        this.ioThreads = ioThreads;
+    }
+
+    public List<IndexEntry> write(SortedMap<String, ObjectId> files) throws IOException {
+        createDirectories(files.keySet());
+        if (files.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> paths = new ArrayList<>(files.size());
+        List<CompletableFuture<IndexEntry>> results = new ArrayList<>(files.size());
+        Semaphore inFlight = new Semaphore(inflateThreads + ioThreads * 2);
+        ExecutorService inflatePool = Executors.newFixedThreadPool(Math.min(inflateThreads, files.size()));
+        ExecutorService ioPool = Executors.newFixedThreadPool(Math.min(ioThreads, files.size()));
+        try {
+            for (Map.Entry<String, ObjectId> file : files.entrySet()) {
+                String path = file.getKey();
+                ObjectId id = file.getValue();
+                try {
+                    inFlight.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing " + path);
+                }
+                CompletableFuture<IndexEntry> result = CompletableFuture
+                        .supplyAsync(() -> inflate(path, id), inflatePool)
+                        .thenApplyAsync(content -> writeFile(path, id, content), ioPool);
+                result.whenComplete((entry, error) -> inFlight.release());
+                paths.add(path);
+                results.add(result);
+            }
+            return collect(paths, results);
+        } finally {
+            inflatePool.shutdownNow();
+            ioPool.shutdownNow();
+        }
+    }
+
+    public int getInflateThreads() {
+        return inflateThreads;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    private void createDirectories(Iterable<String> paths) throws IOException {
+        TreeSet<String> directories = new TreeSet<>();
+        for (String path : paths) {
+            int slash = path.lastIndexOf('/');
+            if (slash != -1) {
+                directories.add(path.substring(0, slash));
+            }
+        }
+        String previous = null;
+        for (String directory : directories.descendingSet()) {
+            if (previous != null && previous.startsWith(directory + "/")) {
+                continue;
+            }
+            Files.createDirectories(workingDir.resolve(directory));
+            previous = directory;
+        }
+    }
+
+    private ByteBuffer inflate(String path, ObjectId id) {
+        try {
+            return objectStorage.openBlob(id).getContent();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private IndexEntry writeFile(String path, ObjectId id, ByteBuffer content) {
+        try {
+            Path file = workingDir.resolve(path);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+            }
+            return IndexEntry.fromFile(path, id, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private List<IndexEntry> collect(List<String> paths, List<CompletableFuture<IndexEntry>> results)
+            throws IOException {
+        List<IndexEntry> entries = new ArrayList<>(results.size());
+        IOException failure = null;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                entries.add(results.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing " + paths.get(i));
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() instanceof UncheckedIOException unchecked ? unchecked.getCause() : e.getCause();
+                IOException error = new IOException("Failed to write " + paths.get(i) + ": " + cause.getMessage(), cause);
+                if (failure == null) {
+                    failure = error;
+                } else {
+                    failure.addSuppressed(error);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return entries;
+    }
+}
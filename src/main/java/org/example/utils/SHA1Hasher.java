@@ -1,15 +1,98 @@
 package org.example.utils;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SHA1Hasher implements AutoCloseable {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int MAX_POOLED_DIGESTS = 64;
+    private static final MessageDigest PROTOTYPE = newDigest();
+    private static final ConcurrentLinkedQueue<MessageDigest> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private MessageDigest digest;
+
+    private SHA1Hasher(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    public static SHA1Hasher newHasher() {
+        return new SHA1Hasher(acquire());
+    }
 
-public class SHA1Hasher {
     public static byte[] hash(byte[] bytes) {
+        return hash(bytes, 0, bytes.length);
+    }
+
+    public static byte[] hash(byte[] bytes, int offset, int length) {
+        MessageDigest digest = acquire();
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-1");
-            return digest.digest(bytes);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+            digest.update(bytes, offset, length);
+            return digest.digest();
+        } finally {
+            release(digest);
+        }
+    }
+
+    public static byte[] hashObject(String type, byte[] content) {
+        return hashObject(type, content, 0, content.length);
+    }
+
+    public static byte[] hashObject(String type, byte[] content, int offset, int length) {
+        MessageDigest digest = acquire();
+        try {
+            updateHeader(digest, type, length);
+            digest.update(content, offset, length);
+            return digest.digest();
+        } finally {
+            release(digest);
+        }
+    }
+
+    public SHA1Hasher update(byte b) {
+        active().update(b);
+        return this;
+    }
+
+    public SHA1Hasher update(byte[] bytes) {
+        return update(bytes, 0, bytes.length);
+    }
+
+    public SHA1Hasher update(byte[] bytes, int offset, int length) {
+        active().update(bytes, offset, length);
+        return this;
+    }
+
+    public SHA1Hasher update(ByteBuffer buffer) {
+        active().update(buffer);
+        return this;
+    }
+
+    public SHA1Hasher updateHeader(String type, long size) {
+        updateHeader(active(), type, size);
+        return this;
+    }
+
+    public byte[] digest() {
+        MessageDigest finished = active();
+        digest = null;
+        try {
+            return finished.digest();
+        } finally {
+            release(finished);
+        }
+    }
+
+    @Override
+    public void close() {
+        MessageDigest abandoned = digest;
+        digest = null;
+        if (abandoned != null) {
+            release(abandoned);
         }
     }
 
@@ -17,11 +100,12 @@ public class SHA1Hasher {
         if (bytes == null) {
             throw new IllegalArgumentException("Bytes array cannot be null");
         }
-        StringBuilder hex = new StringBuilder(bytes.length * 2);
-        for (byte b : bytes) {
-            hex.append(String.format("%02x", b & 0xFF));
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
         }
-        return hex.toString();
+        return new String(hex);
     }
 
     public static byte[] fromHex(String hex) {
@@ -34,10 +118,70 @@ public class SHA1Hasher {
 
         byte[] bytes = new byte[20];
         for (int i = 0; i < 20; i++) {
-            int index = i * 2;
-            int value = Integer.parseInt(hex.substring(index, index + 2), 16);
-            bytes[i] = (byte) value;
+            bytes[i] = (byte) ((hexValue(hex, i * 2) << 4) | hexValue(hex, i * 2 + 1));
         }
         return bytes;
     }
+
+    private MessageDigest active() {
+        if (digest == null) {
+            throw new IllegalStateException("Hasher has already been digested");
+        }
+        return digest;
+    }
+
+    private static void updateHeader(MessageDigest digest, String type, long size) {
+        digest.update(type.getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ' ');
+        byte[] digits = new byte[20];
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + size % 10);
+            size /= 10;
+        } while (size > 0);
+        digest.update(digits, position, digits.length - position);
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest acquire() {
+        MessageDigest digest = POOL.poll();
+        if (digest == null) {
+            return copyPrototype();
+        }
+        POOLED.decrementAndGet();
+        return digest;
+    }
+
+    private static void release(MessageDigest digest) {
+        digest.reset();
+        if (POOLED.incrementAndGet() <= MAX_POOLED_DIGESTS) {
+            POOL.offer(digest);
+        } else {
+            POOLED.decrementAndGet();
+        }
+    }
+
+    private static MessageDigest copyPrototype() {
+        try {
+            return (MessageDigest) PROTOTYPE.clone();
+        } catch (CloneNotSupportedException e) {
+            return newDigest();
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static int hexValue(String hex, int index) {
+        int value = Character.digit(hex.charAt(index), 16);
+        if (value < 0) {
+            throw new NumberFormatException("Invalid hex character '" + hex.charAt(index) + "' in " + hex);
+        }
+        return value;
+    }
 }
@@ -1,14 +1,28 @@
 package org.example.integration;
 
+import org.example.objects.Blob;
+import org.example.commands.LogCommand;
 import org.example.objects.Commit;
+import org.example.objects.Tree;
+import org.example.repository.Index;
+import org.example.repository.IndexEntry;
+import org.example.repository.LockFile;
+import org.example.repository.LogOptions;
+import org.example.repository.ObjectStorage;
 import org.example.repository.Repository;
+import org.example.utils.SHA1Hasher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -263,6 +277,25 @@ class RepositoryIntegrationTest {
         assertFalse(tags.contains("v1.0"));
     }
 
+    @Test
+    void shouldNotDeleteTagWhileItIsLocked() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("test.txt"), "content");
+        repo.add("test.txt");
+        repo.commit("Initial commit", "Test User <test@example.com>");
+        repo.createTag("v1.0");
+
+        LockFile lock = LockFile.acquire(tempDir.resolve(".git/refs/tags/v1.0"));
+        try {
+            assertThrows(IOException.class, () -> repo.deleteTag("v1.0"));
+        } finally {
+            lock.close();
+        }
+
+        assertTrue(Files.exists(tempDir.resolve(".git/refs/tags/v1.0")));
+        assertFalse(Files.exists(tempDir.resolve(".git/refs/tags/v1.0.lock")));
+    }
+
     @Test
     void shouldPreventDeletingNonExistentTag() throws IOException {
         repo.init();
@@ -622,4 +655,670 @@ class RepositoryIntegrationTest {
 
         assertFalse(Files.exists(tempDir.resolve("pom.xml")));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRemoveTrackedIgnoredFilesOnHardReset() throws IOException {
+        repo.init();
+
+        Files.writeString(tempDir.resolve("keep.txt"), "keep");
+        repo.add("keep.txt");
+        String commit1 = repo.commit("Initial", "Test User <test@example.com>");
+
+        Files.createDirectories(tempDir.resolve("build"));
+        Files.writeString(tempDir.resolve("build/out.txt"), "generated");
+        repo.add("build/out.txt");
+        Files.writeString(tempDir.resolve(".gitignore"), "build/\n");
+        repo.add(".gitignore");
+        repo.commit("Add build output", "Test User <test@example.com>");
+
+        repo.reset("--hard", commit1);
+
+        assertFalse(Files.exists(tempDir.resolve("build/out.txt")));
+        assertFalse(Files.exists(tempDir.resolve(".gitignore")));
+        assertEquals("keep", Files.readString(tempDir.resolve("keep.txt")));
+    }
+
+    @Test
+    void shouldIndexFilesWrittenByHardResetWithTheirStat() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("dir"));
+        Files.writeString(tempDir.resolve("dir/a.txt"), "a1");
+        Files.writeString(tempDir.resolve("b.txt"), "b1");
+        repo.addAll();
+        String first = repo.commit("first", "Test User <test@example.com>");
+        Files.writeString(tempDir.resolve("dir/a.txt"), "a2 longer");
+        repo.addAll();
+        repo.commit("second", "Test User <test@example.com>");
+
+        captureOutput(() -> repo.reset("--hard", first));
+
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertEquals(2, index.size());
+        for (IndexEntry entry : index.getEntries()) {
+            Path file = tempDir.resolve(entry.getPath());
+            assertTrue(entry.matchesStat(Files.size(file), Files.getLastModifiedTime(file).toMillis()));
+        }
+        assertEquals("a1", Files.readString(tempDir.resolve("dir/a.txt")));
+        assertTrue(captureOutput(() -> repo.status()).contains("nothing to commit, working tree clean"));
+    }
+
+    @Test
+    void shouldKeepHeadWhenHardResetIsRefused() throws IOException {
+        repo.init();
+
+        Path testFile = tempDir.resolve("test.txt");
+        Files.writeString(testFile, "v1");
+        repo.add("test.txt");
+        String commit1 = repo.commit("First commit", "Test User <test@example.com>");
+        Files.writeString(testFile, "v2");
+        repo.add("test.txt");
+        String commit2 = repo.commit("Second commit", "Test User <test@example.com>");
+        Files.writeString(testFile, "local edit");
+
+        assertThrows(IOException.class, () -> repo.reset("--hard", commit1));
+
+        assertEquals(commit2, repo.getHeadCommit());
+    }
+
+    @Test
+    void shouldAddManyFilesInWalkOrder() throws IOException {
+        repo.init();
+        for (int dir = 0; dir < 8; dir++) {
+            Path directory = Files.createDirectories(tempDir.resolve("dir" + dir).resolve("nested"));
+            for (int file = 0; file < 25; file++) {
+                Files.writeString(directory.resolve("file" + file + ".txt"), "content " + (file % 5) + "\n");
+            }
+        }
+        List<String> expectedOrder = new ArrayList<>();
+        try (var stream = Files.walk(tempDir)) {
+            stream.filter(Files::isRegularFile)
+                    .map(file -> tempDir.relativize(file).toString().replace('\\', '/'))
+                    .filter(path -> !path.startsWith(".git"))
+                    .forEach(path -> expectedOrder.add("add '" + path + "'"));
+        }
+
+        String output = captureOutput(() -> repo.addAll());
+
+        assertEquals(expectedOrder, output.lines().toList());
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertEquals(200, index.size());
+        IndexEntry entry = index.getEntry("dir3/nested/file7.txt");
+        assertArrayEquals(new Blob("content 2\n".getBytes()).getHash(), entry.getHash());
+    }
+
+    @Test
+    void shouldSkipUnchangedFilesWhenAddingAgain() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("src"));
+        Files.writeString(tempDir.resolve("src/a.txt"), "a");
+        Files.writeString(tempDir.resolve("src/b.txt"), "b");
+        repo.add("src");
+        Files.writeString(tempDir.resolve("src/b.txt"), "changed");
+
+        String output = captureOutput(() -> repo.add("src"));
+
+        assertEquals(List.of("add 'src/b.txt'"), output.lines().toList());
+    }
+
+    @Test
+    void shouldTrustIndexWhenStatMatches() throws IOException {
+        repo.init();
+        Path file = tempDir.resolve("stable.txt");
+        Files.writeString(file, "original");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(file, past);
+        repo.add("stable.txt");
+        repo.commit("stable", "Test User <test@example.com>");
+
+        Files.writeString(file, "modified");
+        Files.setLastModifiedTime(file, past);
+
+        assertTrue(captureOutput(() -> repo.status()).contains("nothing to commit, working tree clean"));
+    }
+
+    @Test
+    void shouldRehashRacilyCleanFiles() throws IOException {
+        repo.init();
+        Path file = tempDir.resolve("racy.txt");
+        Files.writeString(file, "original");
+        FileTime future = FileTime.fromMillis(System.currentTimeMillis() + 60_000);
+        Files.setLastModifiedTime(file, future);
+        repo.add("racy.txt");
+        repo.commit("racy", "Test User <test@example.com>");
+
+        Files.writeString(file, "modified");
+        Files.setLastModifiedTime(file, future);
+
+        String status = captureOutput(() -> repo.status());
+        assertTrue(status.contains("Changes not staged for commit:"));
+        assertTrue(status.contains("racy.txt"));
+    }
+
+    @Test
+    void shouldNotWriteIndexDeltaUnlessSplitIndexIsEnabled() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        repo.add("a.txt");
+        repo.commit("add a", "Test User <test@example.com>");
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+        repo.add("b.txt");
+
+        assertFalse(Files.exists(tempDir.resolve(".git/index.delta")));
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void shouldKeepRacilyCleanChangesVisibleAfterLaterIndexWrites() throws IOException {
+        repo.init();
+        Path file = tempDir.resolve("a.txt");
+        FileTime tick = FileTime.fromMillis(System.currentTimeMillis() - 5_000);
+        Files.writeString(file, "aaaa");
+        Files.setLastModifiedTime(file, tick);
+        repo.add("a.txt");
+        String commit = repo.commit("add a", "Test User <test@example.com>");
+
+        Files.setLastModifiedTime(tempDir.resolve(".git/index"), tick);
+        if (Files.exists(tempDir.resolve(".git/index.delta"))) {
+            Files.setLastModifiedTime(tempDir.resolve(".git/index.delta"), tick);
+        }
+        Files.writeString(file, "bbbb");
+        Files.setLastModifiedTime(file, tick);
+        assertTrue(captureOutput(() -> repo.status()).contains("modified:   a.txt"));
+
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+        repo.add("b.txt");
+
+        assertTrue(captureOutput(() -> repo.status()).contains("modified:   a.txt"));
+        assertThrows(IOException.class, () -> repo.reset("--hard", commit));
+        assertEquals("bbbb", Files.readString(file));
+    }
+
+    @Test
+    void shouldKeepEveryEntryWhenAddingConcurrently() throws Exception {
+        repo.init();
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int i = 0; i < 4; i++) {
+            String name = "file" + i + ".txt";
+            Files.writeString(tempDir.resolve(name), "content " + i);
+            threads.add(new Thread(() -> {
+                try {
+                    new Repository(tempDir).add(name);
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(List.of(), failures);
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void shouldHoldIndexLockUntilCommitMovesHead() throws Exception {
+        repo.init();
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        repo.add("a.txt");
+        repo.commit("first", "Test User <test@example.com>");
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+        repo.add("b.txt");
+
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread committer;
+        try (LockFile refLock = LockFile.acquire(tempDir.resolve(".git/refs/heads/master"))) {
+            committer = new Thread(() -> {
+                try {
+                    repo.commit("second", "Test User <test@example.com>");
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            });
+            committer.start();
+            Thread.sleep(300);
+            assertTrue(committer.isAlive());
+            assertThrows(IOException.class, () -> LockFile.acquire(tempDir.resolve(".git/index"), 0));
+        }
+        committer.join();
+
+        assertEquals(List.of(), failures);
+        assertFalse(Files.exists(tempDir.resolve(".git/index.lock")));
+        assertEquals("second", ((Commit) new ObjectStorage(tempDir.resolve(".git")).load(repo.getHeadCommit()))
+                .getMessage());
+    }
+
+    @Test
+    void shouldDetectSizeChangeWithoutRehashingUnchangedFiles() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("a.txt"), "a");
+        Files.writeString(tempDir.resolve("b.txt"), "b");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+        Files.setLastModifiedTime(tempDir.resolve("a.txt"), past);
+        Files.setLastModifiedTime(tempDir.resolve("b.txt"), past);
+        repo.addAll();
+        repo.commit("two files", "Test User <test@example.com>");
+
+        Files.writeString(tempDir.resolve("b.txt"), "bigger");
+        Files.setLastModifiedTime(tempDir.resolve("b.txt"), past);
+
+        String status = captureOutput(() -> repo.status());
+        assertTrue(status.contains("b.txt"));
+        assertFalse(status.contains("a.txt"));
+    }
+
+    @Test
+    void shouldSkipIgnoredFilesWhenAddingAll() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve(".gitignore"), "target/\n*.log\n");
+        Files.createDirectories(tempDir.resolve("target/classes"));
+        Files.writeString(tempDir.resolve("target/classes/App.class"), "binary");
+        Files.writeString(tempDir.resolve("debug.log"), "log");
+        Files.writeString(tempDir.resolve("App.java"), "class App {}");
+
+        repo.addAll();
+
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertTrue(index.contains("App.java"));
+        assertTrue(index.contains(".gitignore"));
+        assertFalse(index.contains("debug.log"));
+        assertFalse(index.contains("target/classes/App.class"));
+    }
+
+    @Test
+    void shouldNotListIgnoredFilesAsUntracked() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve(".gitignore"), "node_modules/\n");
+        Files.createDirectories(tempDir.resolve("node_modules/lib"));
+        Files.writeString(tempDir.resolve("node_modules/lib/index.js"), "module");
+        Files.writeString(tempDir.resolve("main.js"), "main");
+        repo.add(".gitignore");
+        repo.add("main.js");
+        repo.commit("initial", "Test User <test@example.com>");
+
+        String status = captureOutput(() -> repo.status());
+
+        assertTrue(status.contains("nothing to commit, working tree clean"));
+        assertFalse(status.contains("node_modules"));
+    }
+
+    @Test
+    void shouldStillTrackFilesInsideIgnoredDirectories() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("build"));
+        Files.writeString(tempDir.resolve("build/config.txt"), "tracked");
+        repo.add("build/config.txt");
+        repo.commit("track config", "Test User <test@example.com>");
+        Files.writeString(tempDir.resolve(".gitignore"), "build/\n");
+        repo.add(".gitignore");
+        repo.commit("ignore build", "Test User <test@example.com>");
+
+        Files.writeString(tempDir.resolve("build/config.txt"), "changed content");
+
+        String status = captureOutput(() -> repo.status());
+        assertTrue(status.contains("modified:   build/config.txt"));
+        assertFalse(status.contains("deleted"));
+    }
+
+    @Test
+    void shouldRefuseToAddIgnoredFile() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve(".gitignore"), "*.secret\n");
+        Files.writeString(tempDir.resolve("key.secret"), "hunter2");
+
+        assertThrows(IOException.class, () -> repo.add("key.secret"));
+    }
+
+    @Test
+    void shouldReuseUnchangedSubtreesOnCommit() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("a"));
+        Files.createDirectories(tempDir.resolve("b/c"));
+        Files.writeString(tempDir.resolve("a/one.txt"), "one");
+        Files.writeString(tempDir.resolve("b/c/two.txt"), "two");
+        Files.writeString(tempDir.resolve("root.txt"), "root");
+        repo.addAll();
+        repo.commit("first", "Test User <test@example.com>");
+
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        byte[] bTree = index.getCachedTree("b").getHash();
+        byte[] firstRoot = index.getCachedTree("").getHash();
+
+        Files.writeString(tempDir.resolve("a/one.txt"), "changed");
+        repo.add("a/one.txt");
+        index.load();
+        assertNull(index.getCachedTree("a"));
+        assertNull(index.getCachedTree(""));
+        assertArrayEquals(bTree, index.getCachedTree("b").getHash());
+
+        repo.commit("second", "Test User <test@example.com>");
+
+        index.load();
+        assertArrayEquals(bTree, index.getCachedTree("b").getHash());
+        assertFalse(java.util.Arrays.equals(firstRoot, index.getCachedTree("").getHash()));
+        Commit head = repo.log().get(0);
+        assertArrayEquals(index.getCachedTree("").getHash(), head.getTreeHash());
+    }
+
+    @Test
+    void shouldWriteEachTopLevelDirectoryOnceInRootTree() throws IOException {
+        repo.init();
+        for (String dir : List.of("alpha", "beta", "gamma")) {
+            Files.createDirectories(tempDir.resolve(dir));
+            Files.writeString(tempDir.resolve(dir).resolve("file.txt"), dir);
+        }
+        Files.writeString(tempDir.resolve("top.txt"), "top");
+        repo.addAll();
+        repo.commit("dirs", "Test User <test@example.com>");
+
+        ObjectStorage storage = new ObjectStorage(tempDir.resolve(".git"));
+        Tree root = (Tree) storage.load(
+                SHA1Hasher.toHex(repo.log().get(0).getTreeHash()));
+
+        assertEquals(List.of("alpha", "beta", "gamma", "top.txt"),
+                root.getEntries().stream().map(Tree.Entry::getName).toList());
+    }
+
+    @Test
+    void shouldPrimeCachedTreesFromCheckedOutCommit() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("src"));
+        Files.writeString(tempDir.resolve("src/Main.java"), "main");
+        repo.add("src/Main.java");
+        repo.commit("first", "Test User <test@example.com>");
+        repo.createBranch("feature");
+
+        repo.checkout("feature");
+
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertNotNull(index.getCachedTree("src"));
+        assertArrayEquals(repo.log().get(0).getTreeHash(), index.getCachedTree("").getHash());
+    }
+
+    @Test
+    void shouldOnlyRewriteFilesThatDifferOnCheckout() throws IOException {
+        repo.init();
+        Files.createDirectories(tempDir.resolve("lib"));
+        Path stable = tempDir.resolve("lib/stable.txt");
+        Files.writeString(stable, "stable");
+        FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 3_600_000L);
+        Files.setLastModifiedTime(stable, past);
+        Files.writeString(tempDir.resolve("changing.txt"), "master");
+        repo.addAll();
+        repo.commit("first", "Test User <test@example.com>");
+
+        repo.createBranch("feature");
+        repo.checkout("feature");
+        Files.writeString(tempDir.resolve("changing.txt"), "feature");
+        Files.writeString(tempDir.resolve("added.txt"), "added");
+        repo.addAll();
+        repo.commit("feature work", "Test User <test@example.com>");
+
+        repo.checkout("master");
+
+        assertEquals(past, Files.getLastModifiedTime(stable));
+        assertEquals("master", Files.readString(tempDir.resolve("changing.txt")));
+        assertFalse(Files.exists(tempDir.resolve("added.txt")));
+
+        Index index = new Index(tempDir.resolve(".git/index"));
+        index.load();
+        assertEquals(2, index.size());
+        assertFalse(index.contains("added.txt"));
+        assertEquals(past.toMillis(), index.getEntry("lib/stable.txt").getMtimeMillis());
+        assertArrayEquals(repo.log().get(0).getTreeHash(), index.getCachedTree("").getHash());
+    }
+
+    @Test
+    void shouldKeepUntrackedFilesOnCheckout() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("tracked.txt"), "tracked");
+        repo.add("tracked.txt");
+        repo.commit("first", "Test User <test@example.com>");
+        repo.createBranch("feature");
+
+        Files.writeString(tempDir.resolve("notes.txt"), "local notes");
+        repo.checkout("feature");
+
+        assertEquals("local notes", Files.readString(tempDir.resolve("notes.txt")));
+    }
+
+    @Test
+    void shouldRefuseToOverwriteUntrackedFilesOnCheckout() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("tracked.txt"), "tracked");
+        repo.add("tracked.txt");
+        repo.commit("first", "Test User <test@example.com>");
+
+        repo.createBranch("feature");
+        repo.checkout("feature");
+        Files.writeString(tempDir.resolve("new.txt"), "from feature");
+        repo.add("new.txt");
+        repo.commit("add new", "Test User <test@example.com>");
+        repo.checkout("master");
+
+        Files.writeString(tempDir.resolve("new.txt"), "local work");
+
+        IOException error = assertThrows(IOException.class, () -> repo.checkout("feature"));
+        assertTrue(error.getMessage().contains("new.txt"));
+        assertEquals("local work", Files.readString(tempDir.resolve("new.txt")));
+        assertEquals("master", repo.getCurrentBranch());
+    }
+
+    @Test
+    void shouldSwapFileAndDirectoryOnCheckout() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("entry"), "file");
+        repo.add("entry");
+        repo.commit("file", "Test User <test@example.com>");
+
+        repo.createBranch("feature");
+        repo.checkout("feature");
+        repo.remove("entry", false, false);
+        Files.createDirectories(tempDir.resolve("entry"));
+        Files.writeString(tempDir.resolve("entry/nested.txt"), "nested");
+        repo.add("entry/nested.txt");
+        repo.commit("directory", "Test User <test@example.com>");
+
+        repo.checkout("master");
+        assertEquals("file", Files.readString(tempDir.resolve("entry")));
+
+        repo.checkout("feature");
+        assertEquals("nested", Files.readString(tempDir.resolve("entry/nested.txt")));
+    }
+
+    @Test
+    void shouldPackOnlyLooseObjectsUnlessAggressive() throws IOException {
+        repo.init();
+        Files.writeString(tempDir.resolve("a.txt"), "one");
+        repo.add("a.txt");
+        repo.commit("first", "Test User <test@example.com>");
+        captureOutput(() -> repo.gc());
+
+        Files.writeString(tempDir.resolve("a.txt"), "two");
+        repo.add("a.txt");
+        String second = repo.commit("second", "Test User <test@example.com>");
+        captureOutput(() -> repo.gc());
+
+        ObjectStorage storage = new ObjectStorage(tempDir.resolve(".git"));
+        assertEquals(2, storage.getPackCount());
+
+        captureOutput(() -> repo.gc(true));
+
+        storage = new ObjectStorage(tempDir.resolve(".git"));
+        assertEquals(1, storage.getPackCount());
+        assertEquals("second", ((Commit) storage.load(second)).getMessage());
+        try (var loose = Files.list(tempDir.resolve(".git/objects"))) {
+            assertTrue(loose.allMatch(path -> path.getFileName().toString().equals("pack")
+                    || path.getFileName().toString().equals("info")));
+        }
+    }
+
+    @Test
+    void shouldAnswerHistoryQueriesFromCommitGraph() throws IOException {
+        repo.init();
+        Path file = tempDir.resolve("file.txt");
+        Files.writeString(file, "one");
+        repo.add("file.txt");
+        String first = repo.commit("first", "Test User <test@example.com>");
+        repo.createBranch("feature");
+
+        Files.writeString(file, "two");
+        repo.add("file.txt");
+        String second = repo.commit("second", "Test User <test@example.com>");
+
+        repo.checkout("feature");
+        Files.writeString(tempDir.resolve("feature.txt"), "feature");
+        repo.add("feature.txt");
+        String featureCommit = repo.commit("feature", "Test User <test@example.com>");
+
+        repo.gc();
+        assertTrue(Files.exists(tempDir.resolve(".git/objects/info/commit-graph")));
+
+        repo.checkout("master");
+        Files.writeString(file, "three");
+        repo.add("file.txt");
+        String afterGc = repo.commit("after gc", "Test User <test@example.com>");
+
+        assertTrue(repo.isAncestor(first, "master"));
+        assertTrue(repo.isAncestor(second, afterGc));
+        assertTrue(repo.isAncestor(first, "feature"));
+        assertFalse(repo.isAncestor(featureCommit, "master"));
+        assertFalse(repo.isAncestor(second, "feature"));
+        assertFalse(repo.isAncestor(afterGc, second));
+
+        List<Commit> log = repo.log();
+        assertEquals(List.of(afterGc, second, first).stream().sorted().toList(),
+                log.stream().map(Commit::getHexhash).sorted().toList());
+
+        repo.reset("--soft", "HEAD~2");
+        assertEquals(first, repo.log().get(0).getHexhash());
+    }
+
+    @Test
+    void shouldWalkLongLinearHistoryIteratively() throws Exception {
+        repo.init();
+        List<String> hashes = writeLinearHistory(3_000, 1_000_000L);
+
+        List<Commit> newest = new ArrayList<>();
+        repo.log(new LogOptions().setMaxCount(3), newest::add);
+        assertEquals(hashes.subList(hashes.size() - 3, hashes.size()).reversed(),
+                newest.stream().map(Commit::getHexhash).toList());
+
+        List<Commit> all = new ArrayList<>();
+        Throwable[] failure = new Throwable[1];
+        Thread walker = new Thread(null, () -> {
+            try {
+                all.addAll(repo.log());
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "log-walker", 128 * 1024);
+        walker.start();
+        walker.join();
+
+        assertNull(failure[0]);
+        assertEquals(3_000, all.size());
+    }
+
+    @Test
+    void shouldStopLogAtSinceAndSkipCommitsAfterUntil() throws IOException {
+        repo.init();
+        List<String> hashes = writeLinearHistory(10, 1_000L);
+
+        List<Commit> since = new ArrayList<>();
+        repo.log(new LogOptions().setSince(1_005L), since::add);
+        assertEquals(hashes.subList(5, 10).reversed(), since.stream().map(Commit::getHexhash).toList());
+
+        List<Commit> window = new ArrayList<>();
+        repo.log(new LogOptions().setSince(1_002L).setUntil(1_004L).setMaxCount(2), window::add);
+        assertEquals(List.of(hashes.get(4), hashes.get(3)), window.stream().map(Commit::getHexhash).toList());
+    }
+
+    @Test
+    void shouldInterleaveBranchesByCommitTime() throws IOException {
+        repo.init();
+        ObjectStorage storage = new ObjectStorage(tempDir.resolve(".git"));
+        byte[] tree = storeEmptyTree(storage);
+        Commit root = storeCommit(storage, tree, List.of(), 100, "root");
+        Commit left = storeCommit(storage, tree, List.of(root), 300, "left");
+        Commit right = storeCommit(storage, tree, List.of(root), 200, "right");
+        Commit rightTip = storeCommit(storage, tree, List.of(right), 400, "right tip");
+        Commit merge = storeCommit(storage, tree, List.of(left, rightTip), 500, "merge");
+        Files.writeString(tempDir.resolve(".git/refs/heads/master"), merge.getHexhash() + "\n");
+
+        assertEquals(List.of("merge", "right tip", "left", "right", "root"),
+                repo.log().stream().map(Commit::getMessage).toList());
+    }
+
+    @Test
+    void shouldStreamLimitedLogFromCommand() throws IOException {
+        repo.init();
+        List<String> hashes = writeLinearHistory(5, 1_000L);
+
+        String output = captureOutput(() -> new LogCommand().execute(new String[]{"-n", "2"}, repo));
+
+        assertTrue(output.contains(hashes.get(4)));
+        assertTrue(output.contains(hashes.get(3)));
+        assertFalse(output.contains(hashes.get(2)));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LogCommand().execute(new String[]{"--since=yesterday-ish"}, repo));
+    }
+
+    private List<String> writeLinearHistory(int count, long firstTime) throws IOException {
+        ObjectStorage storage = new ObjectStorage(tempDir.resolve(".git"));
+        byte[] tree = storeEmptyTree(storage);
+        List<String> hashes = new ArrayList<>();
+        Commit parent = null;
+        for (int i = 0; i < count; i++) {
+            parent = storeCommit(storage, tree, parent == null ? List.of() : List.of(parent), firstTime + i, "commit " + i);
+            hashes.add(parent.getHexhash());
+        }
+        Files.writeString(tempDir.resolve(".git/refs/heads/master"), parent.getHexhash() + "\n");
+        return hashes;
+    }
+
+    private byte[] storeEmptyTree(ObjectStorage storage) throws IOException {
+        Tree tree = new Tree();
+        storage.store(tree);
+        return tree.getHash();
+    }
+
+    private Commit storeCommit(ObjectStorage storage, byte[] tree, List<Commit> parents, long time, String message)
+            throws IOException {
+        String signature = "Test User <test@example.com> " + time + " +0000";
+        List<byte[]> parentHashes = new ArrayList<>();
+        for (Commit parent : parents) {
+            parentHashes.add(parent.getHash());
+        }
+        Commit commit = new Commit(tree, parentHashes, signature, signature, message);
+        storage.store(commit);
+        return commit;
+    }
+
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+    private String captureOutput(IOAction action) throws IOException {
+        PrintStream originalOut = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output));
+        try {
+            action.run();
+        } finally {
+            System.setOut(originalOut);
+        }
+        return output.toString();
+    }
+}
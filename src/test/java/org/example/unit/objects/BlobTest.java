@@ -1,11 +1,16 @@
 package org.example.unit.objects;
 
 import org.example.objects.Blob;
+import org.example.objects.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -97,4 +102,57 @@ class BlobTest {
         assertEquals(40, hexHash.length());
         assertTrue(hexHash.matches("[0-9a-f]{40}"));
     }
+
+    @Test
+    void should_serializeIntoCopyThatCannotChangeContent() throws IOException {
+        String hash = blob.getHexhash();
+        byte[] serialized = blob.serialize();
+        assertNotSame(testContent, serialized);
+
+        serialized[0] = 'X';
+
+        assertArrayEquals(testContent, blob.openStream().readAllBytes());
+        assertEquals(hash, blob.getHexhash());
+    }
+
+    @Test
+    void should_exposeReadOnlyContentView() throws IOException {
+        ByteBuffer view = blob.getContent();
+
+        assertTrue(view.isReadOnly());
+        assertThrows(ReadOnlyBufferException.class, () -> view.put(0, (byte) 'X'));
+        assertArrayEquals(testContent, blob.openStream().readAllBytes());
+    }
+
+    @Test
+    void should_wrapBufferSlice() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(20);
+        buffer.put("xxtestyy".getBytes(StandardCharsets.UTF_8));
+        buffer.position(2).limit(6);
+
+        Blob wrapped = Blob.wrap(buffer);
+
+        assertEquals("30d74d258442c7c65512eafab474568dd706c430", wrapped.getHexhash());
+        assertArrayEquals("test".getBytes(StandardCharsets.UTF_8), wrapped.serialize());
+        assertArrayEquals("test".getBytes(StandardCharsets.UTF_8), wrapped.openStream().readAllBytes());
+    }
+
+    @Test
+    void should_loadLazyBlobOnlyWhenContentIsRead() {
+        AtomicInteger loads = new AtomicInteger();
+        ObjectId id = blob.getId();
+        Blob lazy = Blob.lazy(id, () -> {
+            loads.incrementAndGet();
+            return ByteBuffer.wrap(testContent);
+        });
+
+        assertEquals(blob.getHexhash(), lazy.getHexhash());
+        assertFalse(lazy.isLoaded());
+        assertEquals(0, loads.get());
+
+        assertArrayEquals(testContent, lazy.serialize());
+        assertEquals(testContent.length, lazy.getSize());
+        assertTrue(lazy.isLoaded());
+        assertEquals(1, loads.get());
+    }
 }
@@ -1,6 +1,7 @@
 package org.example.unit.objects;
 
 import org.example.objects.Commit;
+import org.example.utils.SHA1Hasher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -334,4 +335,89 @@ class CommitTest {
 
         assertDoesNotThrow(() -> commit.setCommitter("Name <email@test.com> 1700000000 +0000"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReadCommitTimeFromCommitter() {
+        Commit commit = new Commit(treeHash, Arrays.asList(), "Author <a@test.com> 1600000000 +0000",
+                "Committer <c@test.com> 1700000000 +0200", "Test");
+
+        assertEquals(1700000000L, commit.getCommitTime());
+        assertEquals(0L, new Commit().getCommitTime());
+    }
+
+    @Test
+    void shouldParseCommitTimeAndParentsFromRawBytes() {
+        String gitCommit = "tree 1234567890abcdef1234567890abcdef12345678\n" +
+                "parent a1b2c3d4e5f6a1b2c3d4e5a1b2c3d4e5f6a1b2c3\n" +
+                "parent 0000000000000000000000000000000000000001\n" +
+                "author A <a@test.com> 1600000000 +0000\n" +
+                "committer C <c@test.com> 1700000123 -0500\n" +
+                "\n" +
+                "Message";
+
+        Commit commit = new Commit();
+        commit.deserialize(gitCommit.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1700000123L, commit.getCommitTime());
+        assertEquals(2, commit.getParentIds().size());
+        assertEquals("0000000000000000000000000000000000000001", commit.getParentIds().get(1).toHex());
+        assertFalse(commit.isRootCommit());
+    }
+
+    @Test
+    void shouldKeepUnknownHeadersWhenReserialized() {
+        String gitCommit = "tree 1234567890abcdef1234567890abcdef12345678\n" +
+                "author A <a@test.com> 1700000000 +0000\n" +
+                "committer C <c@test.com> 1700000000 +0000\n" +
+                "encoding ISO-8859-1\n" +
+                "\n" +
+                "Message";
+        byte[] data = gitCommit.getBytes(StandardCharsets.UTF_8);
+
+        Commit commit = new Commit();
+        commit.deserialize(data);
+
+        assertArrayEquals(data, commit.serialize());
+        assertEquals(SHA1Hasher.toHex(SHA1Hasher.hashObject("commit", data)),
+                commit.getHexhash());
+    }
+
+    @Test
+    void shouldAllowModifyingDeserializedCommit() {
+        Commit original = new Commit(treeHash, Arrays.asList(parentHash1),
+                "A <a@test.com> 1700000000 +0000", "C <c@test.com> 1700000001 +0000", "Before");
+        Commit commit = new Commit();
+        commit.deserialize(original.serialize());
+
+        commit.setMessage("After");
+        commit.setCommitter("D <d@test.com> 1700000002 +0000");
+
+        assertEquals("After", commit.getMessage());
+        assertEquals("A <a@test.com> 1700000000 +0000", commit.getAuthor());
+        assertEquals(1700000002L, commit.getCommitTime());
+        assertArrayEquals(parentHash1, commit.getParentHashes().get(0));
+        assertTrue(new String(commit.serialize(), StandardCharsets.UTF_8).endsWith("\n\nAfter"));
+    }
+
+    @Test
+    void shouldRejectMalformedTreeIdWhenHeadersAreRead() {
+        Commit commit = new Commit();
+        commit.deserialize("tree 1234\n\nBad".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, commit::getTreeId);
+    }
+
+    @Test
+    void shouldNotDuplicateParentsWhenParsingFailsAndIsRetried() {
+        String gitCommit = "parent a1b2c3d4e5f6a1b2c3d4e5a1b2c3d4e5f6a1b2c3\n" +
+                "tree 1234\n" +
+                "\n" +
+                "Bad";
+        Commit commit = new Commit();
+        commit.deserialize(gitCommit.getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, commit::getParentIds);
+        assertThrows(IllegalArgumentException.class, commit::getParentIds);
+        assertThrows(IllegalArgumentException.class, commit::getTreeId);
+    }
+}
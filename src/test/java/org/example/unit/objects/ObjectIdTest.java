@@ -0,0 +1,100 @@
+package org.example.unit.objects;
+
+import org.example.objects.ObjectId;
+import org.example.utils.SHA1Hasher;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectIdTest {
+    private static final String HEX = "aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434d";
+
+    @Test
+    void shouldRoundTripHex() {
+        ObjectId id = ObjectId.fromHex(HEX);
+
+        assertEquals(HEX, id.toHex());
+        assertEquals(HEX, id.toString());
+        assertEquals(0xAA, id.getFirstByte());
+    }
+
+    @Test
+    void shouldRoundTripBytes() {
+        byte[] raw = SHA1Hasher.hash("hello".getBytes(StandardCharsets.UTF_8));
+        ObjectId id = ObjectId.fromBytes(raw);
+
+        assertArrayEquals(raw, id.toBytes());
+        assertEquals(SHA1Hasher.toHex(raw), id.toHex());
+        assertEquals(id, ObjectId.fromHex(SHA1Hasher.toHex(raw)));
+    }
+
+    @Test
+    void shouldReadFromOffsetsAndBuffers() {
+        byte[] raw = SHA1Hasher.fromHex(HEX);
+        byte[] padded = new byte[30];
+        System.arraycopy(raw, 0, padded, 7, raw.length);
+        ByteBuffer buffer = ByteBuffer.wrap(padded);
+
+        ObjectId expected = ObjectId.fromHex(HEX);
+        assertEquals(expected, ObjectId.fromBytes(padded, 7));
+        assertEquals(expected, ObjectId.fromBuffer(buffer, 7));
+        assertEquals(0, expected.compareTo(buffer, 7));
+
+        byte[] copy = new byte[22];
+        expected.copyTo(copy, 2);
+        assertEquals(expected, ObjectId.fromBytes(copy, 2));
+    }
+
+    @Test
+    void shouldUseValueEquality() {
+        ObjectId a = ObjectId.fromHex(HEX);
+        ObjectId b = ObjectId.fromBytes(SHA1Hasher.fromHex(HEX));
+        ObjectId c = ObjectId.fromHex("aaf4c61ddcc5e8a2dabede0f3b482cd9aea9434e");
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertNotEquals(a, c);
+
+        Set<ObjectId> ids = new HashSet<>();
+        ids.add(a);
+        assertTrue(ids.contains(b));
+        assertFalse(ids.contains(c));
+    }
+
+    @Test
+    void shouldCompareAsUnsignedBytes() {
+        ObjectId low = ObjectId.fromHex("7fffffffffffffffffffffffffffffffffffffff");
+        ObjectId high = ObjectId.fromHex("8000000000000000000000000000000000000000");
+        ObjectId last = ObjectId.fromHex("ffffffffffffffffffffffffffffffffffffffff");
+        ObjectId tail = ObjectId.fromHex("00000000000000000000000000000000ffffffff");
+        ObjectId zero = ObjectId.fromHex("0000000000000000000000000000000000000000");
+
+        assertTrue(low.compareTo(high) < 0);
+        assertTrue(high.compareTo(last) < 0);
+        assertTrue(zero.compareTo(tail) < 0);
+        assertEquals(0, last.compareTo(ObjectId.fromHex("ffffffffffffffffffffffffffffffffffffffff")));
+    }
+
+    @Test
+    void shouldRejectInvalidInput() {
+        assertThrows(IllegalArgumentException.class, () -> ObjectId.fromHex(null));
+        assertThrows(IllegalArgumentException.class, () -> ObjectId.fromHex("abc"));
+        assertThrows(IllegalArgumentException.class, () -> ObjectId.fromHex("zzf4c61ddcc5e8a2dabede0f3b482cd9aea9434d"));
+        assertThrows(IllegalArgumentException.class, () -> ObjectId.fromBytes(new byte[19]));
+        assertThrows(IllegalArgumentException.class, () -> ObjectId.fromBytes(new byte[20], 1));
+    }
+
+    @Test
+    void shouldRecognizeLowercaseHexNames() {
+        assertTrue(ObjectId.isHex(HEX));
+        assertFalse(ObjectId.isHex(HEX.toUpperCase()));
+        assertFalse(ObjectId.isHex(HEX.substring(1)));
+        assertFalse(ObjectId.isHex(null));
+        assertFalse(ObjectId.isHex("g" + HEX.substring(1)));
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.unit.objects;
 
+import org.example.objects.ObjectId;
 import org.example.objects.Tree;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -163,6 +164,165 @@ class TreeTest {
         assertTrue(tree.getEntries().isEmpty());
     }
 
+    @Test
+    void shouldBuildTreeInGitOrder() {
+        ObjectId blob = ObjectId.fromBytes(blobHash1);
+        ObjectId dir = ObjectId.fromBytes(treeHash);
+
+        Tree built = Tree.builder()
+                .addFile("a0", blob)
+                .addDirectory("a", dir)
+                .addFile("a.txt", blob)
+                .addFile("a-b", blob)
+                .addFile("B", blob)
+                .build();
+
+        List<String> names = built.getEntries().stream().map(Tree.Entry::getName).toList();
+        assertEquals(List.of("B", "a-b", "a.txt", "a", "a0"), names);
+        assertTrue(built.isFrozen());
+        assertThrows(IllegalStateException.class, () -> built.addFile("c", blob));
+    }
+
+    @Test
+    void shouldMatchIncrementallyAddedTree() {
+        Tree.Builder builder = new Tree.Builder();
+        Tree incremental = new Tree();
+        for (int i = 999; i >= 0; i--) {
+            ObjectId id = ObjectId.fromBytes(i % 2 == 0 ? blobHash1 : treeHash);
+            if (i % 2 == 0) {
+                builder.addFile("entry" + i, id);
+                incremental.addFile("entry" + i, id);
+            } else {
+                builder.addDirectory("entry" + i, id);
+                incremental.addDirectory("entry" + i, id);
+            }
+        }
+
+        Tree built = builder.build();
+        assertEquals(1000, built.getEntries().size());
+        assertArrayEquals(incremental.serialize(), built.serialize());
+        assertEquals(incremental.getHexhash(), built.getHexhash());
+    }
+
+    @Test
+    void shouldRejectDuplicateNamesInBuilder() {
+        Tree.Builder builder = Tree.builder().addFile("same", ObjectId.fromBytes(blobHash1));
+
+        assertThrows(IllegalArgumentException.class, () -> builder.addDirectory("same", ObjectId.fromBytes(treeHash)));
+    }
+
+    @Test
+    void shouldKeepSerializedOrderWhenDeserializing() {
+        Tree tree = Tree.builder()
+                .addDirectory("lib", ObjectId.fromBytes(treeHash))
+                .addFile("lib.txt", ObjectId.fromBytes(blobHash1))
+                .build();
+        byte[] serialized = tree.serialize();
+
+        Tree deserialized = new Tree();
+        deserialized.deserialize(serialized);
+
+        assertEquals("lib.txt", deserialized.getEntries().get(0).getName());
+        assertEquals("lib", deserialized.getEntries().get(1).getName());
+        assertEquals(tree.getHexhash(), deserialized.getHexhash());
+    }
+
+    @Test
+    void shouldIterateDeserializedEntriesWithCursor() {
+        Tree source = Tree.builder()
+                .addFile("b.txt", ObjectId.fromBytes(blobHash1))
+                .addDirectory("a", ObjectId.fromBytes(treeHash))
+                .addFile("c.txt", ObjectId.fromBytes(blobHash2))
+                .build();
+        Tree tree = new Tree();
+        tree.deserialize(source.serialize());
+
+        Tree.Cursor cursor = tree.cursor();
+        assertTrue(cursor.next());
+        assertEquals("a", cursor.getName());
+        assertEquals("040000", cursor.getMode());
+        assertTrue(cursor.isTree());
+        assertEquals(ObjectId.fromBytes(treeHash), cursor.getId());
+        assertTrue(cursor.next());
+        assertEquals("b.txt", cursor.getName());
+        assertTrue(cursor.isBlob());
+        assertTrue(cursor.next());
+        assertEquals(ObjectId.fromBytes(blobHash2), cursor.getId());
+        assertFalse(cursor.next());
+
+        assertEquals(3, tree.size());
+        assertEquals(source.getHexhash(), tree.getHexhash());
+    }
+
+    @Test
+    void shouldFindEntriesByName() {
+        Tree.Builder builder = Tree.builder();
+        for (int i = 0; i < 200; i++) {
+            builder.addFile(String.format("file%03d", i), ObjectId.fromBytes(blobHash1));
+        }
+        builder.addDirectory("lib", ObjectId.fromBytes(treeHash));
+        builder.addFile("lib.txt", ObjectId.fromBytes(blobHash2));
+        Tree built = builder.build();
+        Tree parsed = new Tree();
+        parsed.deserialize(built.serialize());
+
+        for (Tree tree : List.of(built, parsed)) {
+            assertEquals("file137", tree.findEntry("file137").getName());
+            assertEquals("tree", tree.findEntry("lib").getType());
+            assertEquals(ObjectId.fromBytes(blobHash2), tree.findEntry("lib.txt").getId());
+            assertNull(tree.findEntry("file200"));
+            assertNull(tree.findEntry("li"));
+        }
+    }
+
+    @Test
+    void shouldTreatGitShortTreeModeAsDirectory() {
+        byte[] name = "40000 sub\0".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[name.length + 20];
+        System.arraycopy(name, 0, data, 0, name.length);
+        System.arraycopy(treeHash, 0, data, name.length, 20);
+
+        Tree tree = new Tree();
+        tree.deserialize(data);
+
+        assertEquals("tree", tree.getEntries().get(0).getType());
+        assertEquals("tree", tree.findEntry("sub").getType());
+        assertArrayEquals(data, tree.serialize());
+    }
+
+    @Test
+    void shouldAllowAddingToDeserializedTree() {
+        Tree source = Tree.builder().addFile("b.txt", ObjectId.fromBytes(blobHash1)).build();
+        Tree tree = new Tree();
+        tree.deserialize(source.serialize());
+
+        tree.addFile("a.txt", blobHash2);
+
+        assertEquals(2, tree.size());
+        assertEquals("a.txt", tree.getEntries().get(0).getName());
+        assertEquals("b.txt", tree.getEntries().get(1).getName());
+    }
+
+    @Test
+    void shouldRejectCursorAccessOutsideEntries() {
+        Tree built = Tree.builder().addFile("a.txt", ObjectId.fromBytes(blobHash1)).build();
+        Tree parsed = new Tree();
+        parsed.deserialize(built.serialize());
+
+        for (Tree tree : List.of(built, parsed)) {
+            Tree.Cursor cursor = tree.cursor();
+            assertThrows(IllegalStateException.class, cursor::getName);
+            assertTrue(cursor.next());
+            assertEquals("a.txt", cursor.getName());
+            assertFalse(cursor.next());
+            assertThrows(IllegalStateException.class, cursor::getName);
+            assertThrows(IllegalStateException.class, cursor::getMode);
+            assertThrows(IllegalStateException.class, cursor::getType);
+            assertThrows(IllegalStateException.class, cursor::getId);
+            assertThrows(IllegalStateException.class, cursor::toEntry);
+        }
+    }
+
     private byte[] hexToBytes(String hex) {
         byte[] bytes = new byte[20];
         for (int i = 0; i < 20; i++) {
@@ -0,0 +1,107 @@
+package org.example.unit.repository;
+
+import org.example.repository.CommitGraph;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitGraphTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRoundTripCommitsWithParentsAndGenerations() throws IOException {
+        byte[] root = id(0x10);
+        byte[] left = id(0xA0);
+        byte[] right = id(0x05);
+        byte[] merge = id(0x70);
+        Path file = tempDir.resolve("commit-graph");
+
+        CommitGraph.write(file, List.of(
+                new CommitGraph.Entry(merge, id(0x04), List.of(left, right), 1_700_000_300L),
+                new CommitGraph.Entry(root, id(0x01), List.of(), 1_700_000_000L),
+                new CommitGraph.Entry(left, id(0x02), List.of(root), 1_700_000_100L),
+                new CommitGraph.Entry(right, id(0x03), List.of(root), 1_700_000_200L)));
+
+        CommitGraph graph = CommitGraph.open(file);
+        assertEquals(4, graph.size());
+
+        int mergePosition = graph.findPosition(merge);
+        assertArrayEquals(merge, graph.getCommitId(mergePosition));
+        assertArrayEquals(id(0x04), graph.getTreeHash(mergePosition));
+        assertEquals(1_700_000_300L, graph.getCommitTime(mergePosition));
+        assertEquals(3, graph.getGeneration(mergePosition));
+
+        int[] parents = graph.getParents(mergePosition);
+        assertEquals(2, parents.length);
+        assertArrayEquals(left, graph.getCommitId(parents[0]));
+        assertArrayEquals(right, graph.getCommitId(parents[1]));
+
+        int rootPosition = graph.findPosition(root);
+        assertEquals(0, graph.getParents(rootPosition).length);
+        assertEquals(1, graph.getGeneration(rootPosition));
+        assertEquals(-1, graph.findPosition(id(0x99)));
+    }
+
+    @Test
+    void shouldStoreOctopusMergesAndLargeCommitTimes() throws IOException {
+        byte[] a = id(0x01);
+        byte[] b = id(0x02);
+        byte[] c = id(0x03);
+        byte[] octopus = id(0x04);
+        long farFuture = (1L << 33) + 12345;
+        Path file = tempDir.resolve("commit-graph");
+
+        CommitGraph.write(file, List.of(
+                new CommitGraph.Entry(a, id(0x11), List.of(), 1L),
+                new CommitGraph.Entry(b, id(0x12), List.of(), 2L),
+                new CommitGraph.Entry(c, id(0x13), List.of(), 3L),
+                new CommitGraph.Entry(octopus, id(0x14), List.of(a, b, c), farFuture)));
+
+        CommitGraph graph = CommitGraph.open(file);
+        int position = graph.findPosition(octopus);
+        int[] parents = graph.getParents(position);
+
+        assertEquals(3, parents.length);
+        assertArrayEquals(a, graph.getCommitId(parents[0]));
+        assertArrayEquals(b, graph.getCommitId(parents[1]));
+        assertArrayEquals(c, graph.getCommitId(parents[2]));
+        assertEquals(farFuture, graph.getCommitTime(position));
+        assertEquals(2, graph.getGeneration(position));
+    }
+
+    @Test
+    void shouldReturnNullWhenGraphIsMissing() throws IOException {
+        assertNull(CommitGraph.open(tempDir.resolve("commit-graph")));
+    }
+
+    @Test
+    void shouldRejectCorruptedGraph() throws IOException {
+        Path file = tempDir.resolve("commit-graph");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> CommitGraph.open(file));
+    }
+
+    @Test
+    void shouldRejectParentsMissingFromGraph() {
+        Path file = tempDir.resolve("commit-graph");
+        List<CommitGraph.Entry> entries = List.of(new CommitGraph.Entry(id(0x01), id(0x02), List.of(id(0x03)), 1L));
+
+        assertThrows(IllegalArgumentException.class, () -> CommitGraph.write(file, entries));
+        assertFalse(Files.exists(file));
+    }
+
+    private byte[] id(int first) {
+        byte[] id = new byte[20];
+        id[0] = (byte) first;
+        id[19] = (byte) first;
+        return id;
+    }
+}
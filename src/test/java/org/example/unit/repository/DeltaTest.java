@@ -0,0 +1,74 @@
+package org.example.unit.repository;
+
+import org.example.repository.Delta;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeltaTest {
+
+    @Test
+    void shouldRoundTripSmallEdit() throws IOException {
+        byte[] base = config(1000, "value=1");
+        byte[] target = config(1000, "value=2");
+
+        byte[] delta = Delta.create(base, target);
+
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < target.length / 10,
+                "Delta should be much smaller than target: " + delta.length + " vs " + target.length);
+        assertEquals(target.length, Delta.resultSize(delta));
+    }
+
+    @Test
+    void shouldRoundTripUnrelatedContent() throws IOException {
+        Random random = new Random(42);
+        byte[] base = new byte[5000];
+        byte[] target = new byte[3000];
+        random.nextBytes(base);
+        random.nextBytes(target);
+
+        assertArrayEquals(target, Delta.apply(base, Delta.create(base, target)));
+    }
+
+    @Test
+    void shouldHandleEmptyInputs() throws IOException {
+        byte[] data = "some content".getBytes(StandardCharsets.UTF_8);
+
+        assertArrayEquals(new byte[0], Delta.apply(data, Delta.create(data, new byte[0])));
+        assertArrayEquals(data, Delta.apply(new byte[0], Delta.create(new byte[0], data)));
+    }
+
+    @Test
+    void shouldSplitCopiesLargerThanSixtyFourKilobytes() throws IOException {
+        byte[] base = new byte[200_000];
+        new Random(7).nextBytes(base);
+        byte[] target = Arrays.copyOf(base, base.length + 10);
+
+        byte[] delta = Delta.create(base, target);
+
+        assertArrayEquals(target, Delta.apply(base, delta));
+        assertTrue(delta.length < 100);
+    }
+
+    @Test
+    void shouldRejectDeltaForWrongBase() {
+        byte[] base = config(100, "a");
+        byte[] delta = Delta.create(base, config(100, "b"));
+
+        assertThrows(IOException.class, () -> Delta.apply(new byte[10], delta));
+    }
+
+    private byte[] config(int lines, String changed) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("setting.").append(i).append(" = ").append(i == lines / 2 ? changed : "default").append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.unit.repository;
+
+import org.example.repository.IgnoreRules;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IgnoreRulesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path gitDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        gitDir = Files.createDirectories(tempDir.resolve(".git"));
+    }
+
+    @Test
+    void shouldMatchBasenameAtAnyDepth() throws IOException {
+        writeIgnore("", "*.log\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("debug.log", false));
+        assertTrue(rules.isIgnored("src/deep/debug.log", false));
+        assertFalse(rules.isIgnored("debug.txt", false));
+    }
+
+    @Test
+    void shouldAnchorPatternsWithSlash() throws IOException {
+        writeIgnore("", "/build\ndocs/*.tmp\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("build", true));
+        assertFalse(rules.isIgnored("src/build", true));
+        assertTrue(rules.isIgnored("docs/a.tmp", false));
+        assertFalse(rules.isIgnored("src/docs/a.tmp", false));
+    }
+
+    @Test
+    void shouldMatchDirectoryOnlyPatternsAgainstDirectories() throws IOException {
+        writeIgnore("", "target/\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("target", true));
+        assertFalse(rules.isIgnored("target", false));
+        assertTrue(rules.isIgnored("module/target/classes/A.class", false));
+    }
+
+    @Test
+    void shouldApplyNegationWithLastMatchWinning() throws IOException {
+        writeIgnore("", "*.log\n!keep.log\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("other.log", false));
+        assertFalse(rules.isIgnored("keep.log", false));
+    }
+
+    @Test
+    void shouldNotReincludeFilesInsideIgnoredDirectory() throws IOException {
+        writeIgnore("", "logs/\n!logs/keep.log\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("logs/keep.log", false));
+    }
+
+    @Test
+    void shouldSupportDoubleStarPatterns() throws IOException {
+        writeIgnore("", "**/generated\nout/**\na/**/z.txt\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("generated", true));
+        assertTrue(rules.isIgnored("src/main/generated", true));
+        assertTrue(rules.isIgnored("out/x/y.class", false));
+        assertFalse(rules.isIgnored("out", true));
+        assertTrue(rules.isIgnored("a/z.txt", false));
+        assertTrue(rules.isIgnored("a/b/c/z.txt", false));
+    }
+
+    @Test
+    void shouldSupportCharacterClassesAndWildcards() throws IOException {
+        writeIgnore("", "file[0-9].txt\n?.bak\n[!a]*.tmp\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("file3.txt", false));
+        assertFalse(rules.isIgnored("fileX.txt", false));
+        assertTrue(rules.isIgnored("x.bak", false));
+        assertFalse(rules.isIgnored("xy.bak", false));
+        assertTrue(rules.isIgnored("b.tmp", false));
+        assertFalse(rules.isIgnored("a.tmp", false));
+    }
+
+    @Test
+    void shouldIgnoreCommentsBlankLinesAndHonourEscapes() throws IOException {
+        writeIgnore("", "# comment\n\n\\#hash\n\\!bang\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertFalse(rules.isIgnored("# comment", false));
+        assertTrue(rules.isIgnored("#hash", false));
+        assertTrue(rules.isIgnored("!bang", false));
+    }
+
+    @Test
+    void shouldLetNestedIgnoreFilesOverrideParents() throws IOException {
+        writeIgnore("", "*.dat\n");
+        writeIgnore("data", "!important.dat\nlocal.txt\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("other.dat", false));
+        assertFalse(rules.isIgnored("data/important.dat", false));
+        assertTrue(rules.isIgnored("data/sub/local.txt", false));
+        assertFalse(rules.isIgnored("local.txt", false));
+    }
+
+    @Test
+    void shouldReadInfoExclude() throws IOException {
+        Files.createDirectories(gitDir.resolve("info"));
+        Files.writeString(gitDir.resolve("info/exclude"), "*.swp\n");
+        writeIgnore("", "!keep.swp\n");
+        IgnoreRules rules = IgnoreRules.load(tempDir, gitDir);
+
+        assertTrue(rules.isIgnored("notes.swp", false));
+        assertFalse(rules.isIgnored("keep.swp", false));
+    }
+
+    private void writeIgnore(String dir, String content) throws IOException {
+        Path directory = Files.createDirectories(tempDir.resolve(dir));
+        Files.writeString(directory.resolve(".gitignore"), content);
+    }
+}
@@ -144,4 +144,13 @@ class IndexEntryTest {
         assertTrue(result.contains("file.txt"));
         assertTrue(result.contains("12ab"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldMatchStatOnlyWhenSizeAndMtimeAreEqual() {
+        IndexEntry entry = new IndexEntry("file.txt", new byte[20], 0100644, 100, 1700000000000L);
+
+        assertTrue(entry.matchesStat(100, 1700000000000L));
+        assertFalse(entry.matchesStat(101, 1700000000000L));
+        assertFalse(entry.matchesStat(100, 1700000000001L));
+    }
+}
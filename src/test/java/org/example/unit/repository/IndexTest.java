@@ -2,13 +2,20 @@ package org.example.unit.repository;
 
 import org.example.repository.Index;
 import org.example.repository.IndexEntry;
+import org.example.repository.LockFile;
+import org.example.utils.SHA1Hasher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -172,4 +179,463 @@ class IndexTest {
         assertEquals(expected.getMode(), actual.getMode());
         assertEquals(expected.getSize(), actual.getSize());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldTreatEntriesNotOlderThanIndexFileAsRacilyClean() throws IOException {
+        long now = System.currentTimeMillis();
+        index.add(new IndexEntry("old.txt", new byte[20], 0100644, 1, now - 60_000));
+        index.add(new IndexEntry("new.txt", new byte[20], 0100644, 1, now + 60_000));
+        index.save();
+
+        index.load();
+
+        assertFalse(index.isRacilyClean(index.getEntry("old.txt")));
+        assertTrue(index.isRacilyClean(index.getEntry("new.txt")));
+    }
+
+    @Test
+    void shouldSmudgeRacilyCleanEntriesWhenRewritingIndex() throws IOException {
+        long now = System.currentTimeMillis();
+        index.add(new IndexEntry("old.txt", new byte[20], 0100644, 1, now - 60_000));
+        index.add(new IndexEntry("new.txt", new byte[20], 0100644, 1, now + 60_000));
+        index.save();
+
+        index.load();
+        index.add(new IndexEntry("other.txt", new byte[20], 0100644, 1, now - 60_000));
+        index.save();
+        index.load();
+
+        assertTrue(index.getEntry("new.txt").isSmudged());
+        assertFalse(index.getEntry("new.txt").matchesStat(1, now + 60_000));
+        assertFalse(index.getEntry("old.txt").isSmudged());
+    }
+
+    @Test
+    void shouldPersistCachedTrees() throws IOException {
+        byte[] treeHash = new byte[20];
+        treeHash[0] = 7;
+        index.add(new IndexEntry("src/Main.java", new byte[20], 0100644, 1, 1L));
+        index.putCachedTree("", treeHash, 1);
+        index.putCachedTree("src", treeHash, 1);
+        index.save();
+
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+
+        assertNotNull(reloaded.getCachedTree("src"));
+        assertEquals(1, reloaded.getCachedTree("src").getEntryCount());
+        assertArrayEquals(treeHash, reloaded.getCachedTree("").getHash());
+        assertTrue(reloaded.contains("src/Main.java"));
+    }
+
+    @Test
+    void shouldInvalidateCachedTreesAlongChangedPath() {
+        byte[] treeHash = new byte[20];
+        index.add(new IndexEntry("a/b/file.txt", new byte[20], 0100644, 1, 1L));
+        index.putCachedTree("", treeHash, 2);
+        index.putCachedTree("a", treeHash, 2);
+        index.putCachedTree("a/b", treeHash, 1);
+        index.putCachedTree("a/c", treeHash, 1);
+
+        byte[] changed = new byte[20];
+        changed[0] = 1;
+        index.add(new IndexEntry("a/b/file.txt", changed, 0100644, 1, 1L));
+
+        assertNull(index.getCachedTree(""));
+        assertNull(index.getCachedTree("a"));
+        assertNull(index.getCachedTree("a/b"));
+        assertNotNull(index.getCachedTree("a/c"));
+    }
+
+    @Test
+    void shouldKeepCachedTreesWhenEntryContentIsUnchanged() {
+        byte[] treeHash = new byte[20];
+        index.add(new IndexEntry("a/file.txt", new byte[20], 0100644, 1, 1L));
+        index.putCachedTree("a", treeHash, 1);
+
+        index.add(new IndexEntry("a/file.txt", new byte[20], 0100644, 1, 2L));
+
+        assertNotNull(index.getCachedTree("a"));
+
+        index.remove("a/file.txt");
+
+        assertNull(index.getCachedTree("a"));
+    }
+
+    @Test
+    void shouldLookUpLoadedEntriesByBinarySearch() throws IOException {
+        for (int i = 999; i >= 0; i--) {
+            index.add(new IndexEntry(String.format("dir%d/file%03d.txt", i % 7, i), new byte[20], 0100644, i, i));
+        }
+        index.save();
+
+        Index loaded = new Index(indexFile);
+        loaded.load();
+
+        assertEquals(1000, loaded.size());
+        assertEquals(421, loaded.getEntry("dir1/file421.txt").getSize());
+        assertTrue(loaded.contains("dir6/file006.txt"));
+        assertNull(loaded.getEntry("dir1/file422.txt"));
+        assertFalse(loaded.contains("dir1"));
+
+        String previous = "";
+        Index.Cursor cursor = loaded.cursor();
+        int count = 0;
+        while (cursor.next()) {
+            assertTrue(previous.compareTo(cursor.getPath()) < 0);
+            previous = cursor.getPath();
+            count++;
+        }
+        assertEquals(1000, count);
+    }
+
+    @Test
+    void shouldMergeChangesOverLoadedEntries() throws IOException {
+        byte[] changed = new byte[20];
+        changed[19] = 9;
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 1, 1L));
+        index.add(new IndexEntry("c.txt", new byte[20], 0100644, 1, 1L));
+        index.add(new IndexEntry("e.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        index.load();
+
+        index.add(new IndexEntry("b.txt", new byte[20], 0100644, 2, 2L));
+        index.add(new IndexEntry("c.txt", changed, 0100755, 3, 3L));
+        index.remove("e.txt");
+        index.remove("missing.txt");
+
+        List<IndexEntry> entries = index.getEntries();
+        assertEquals(3, index.size());
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), entries.stream().map(IndexEntry::getPath).toList());
+        assertArrayEquals(changed, index.getEntry("c.txt").getHash());
+        assertFalse(index.contains("e.txt"));
+
+        index.save();
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+
+        assertEquals(index.getEntries(), reloaded.getEntries());
+    }
+
+    @Test
+    void shouldWriteVersionedHeader() throws IOException {
+        index.add(new IndexEntry("file.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+
+        byte[] data = Files.readAllBytes(indexFile);
+
+        assertEquals("DIRC", new String(data, 0, 4, StandardCharsets.US_ASCII));
+        assertEquals(2, data[7]);
+        assertEquals(1, data[11]);
+        assertEquals(0, (data.length - 20 - 12) % 8);
+    }
+
+    @Test
+    void shouldLoadLegacyIndexFormat() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(1);
+            out.writeUTF("old.txt");
+            out.write(new byte[20]);
+            out.writeInt(0100644);
+            out.writeInt(5);
+            out.writeLong(7L);
+        }
+        byte[] data = bytes.toByteArray();
+        Files.write(indexFile, data);
+        Files.write(indexFile, SHA1Hasher.hash(data), StandardOpenOption.APPEND);
+
+        index.load();
+
+        assertEquals(1, index.size());
+        assertEquals(5, index.getEntry("old.txt").getSize());
+    }
+
+    @Test
+    void shouldRoundTripPrefixCompressedIndex() throws IOException {
+        String longDirectory = "deep/" + "x".repeat(300) + "/";
+        index.setVersion(Index.VERSION_PREFIX_COMPRESSED);
+        for (int i = 0; i < 500; i++) {
+            String path = "src/main/java/com/shop/module" + (i % 10) + "/Service" + i + ".java";
+            index.add(new IndexEntry(path, new byte[20], 0100644, i, i));
+        }
+        index.add(new IndexEntry(longDirectory + "file.txt", new byte[20], 0100755, 1, 1L));
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 2, 2L));
+        index.putCachedTree("src", new byte[20], 500);
+        index.save();
+
+        Index loaded = new Index(indexFile);
+        loaded.load();
+
+        assertEquals(Index.VERSION_PREFIX_COMPRESSED, loaded.getVersion());
+        assertEquals(index.getEntries(), loaded.getEntries());
+        assertEquals(0100755, loaded.getEntry(longDirectory + "file.txt").getMode());
+        assertEquals(137, loaded.getEntry("src/main/java/com/shop/module7/Service137.java").getSize());
+        assertEquals(500, loaded.getCachedTree("src").getEntryCount());
+    }
+
+    @Test
+    void shouldShrinkIndexWithPrefixCompression() throws IOException {
+        for (int i = 0; i < 200; i++) {
+            index.add(new IndexEntry("src/main/java/com/shop/checkout/payment/Handler" + i + ".java",
+                    new byte[20], 0100644, i, i));
+        }
+        index.save();
+        long uncompressed = Files.size(indexFile);
+
+        index.setVersion(Index.VERSION_PREFIX_COMPRESSED);
+        index.save();
+
+        assertTrue(Files.size(indexFile) < uncompressed * 3 / 4);
+        index.load();
+        assertEquals(200, index.size());
+        assertTrue(index.contains("src/main/java/com/shop/checkout/payment/Handler199.java"));
+    }
+
+    @Test
+    void shouldRejectUnsupportedIndexVersion() {
+        assertThrows(IllegalArgumentException.class, () -> index.setVersion(3));
+    }
+
+    @Test
+    void shouldRewriteFullIndexWhenSplitModeIsOff() throws IOException {
+        assertFalse(index.isSplitIndex());
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        index.load();
+        index.add(new IndexEntry("b.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+
+        assertFalse(Files.exists(tempDir.resolve("index.delta")));
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+        assertEquals(2, reloaded.size());
+    }
+
+    @Test
+    void shouldSmudgeRacilyCleanEntriesWhenAppendingDelta() throws IOException {
+        long now = System.currentTimeMillis();
+        index.add(new IndexEntry("new.txt", new byte[20], 0100644, 1, now + 60_000));
+        index.save();
+        byte[] baseBefore = Files.readAllBytes(indexFile);
+
+        index.setSplitIndex(true);
+        index.load();
+        index.add(new IndexEntry("other.txt", new byte[20], 0100644, 1, now - 60_000));
+        index.save();
+
+        assertArrayEquals(baseBefore, Files.readAllBytes(indexFile));
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+        assertTrue(reloaded.getEntry("new.txt").isSmudged());
+        assertFalse(reloaded.getEntry("other.txt").isSmudged());
+    }
+
+    @Test
+    void shouldAppendChangesToDeltaInSplitMode() throws IOException {
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 1, 1L));
+        index.add(new IndexEntry("b.txt", new byte[20], 0100644, 1, 1L));
+        index.putCachedTree("", new byte[20], 2);
+        index.save();
+        byte[] baseBefore = Files.readAllBytes(indexFile);
+
+        index.setSplitIndex(true);
+        index.load();
+        index.add(new IndexEntry("c.txt", new byte[20], 0100644, 3, 3L));
+        index.save();
+        index.remove("a.txt");
+        index.save();
+
+        Path deltaFile = tempDir.resolve("index.delta");
+        assertTrue(Files.exists(deltaFile));
+        assertArrayEquals(baseBefore, Files.readAllBytes(indexFile));
+
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+
+        assertEquals(List.of("b.txt", "c.txt"), reloaded.getEntries().stream().map(IndexEntry::getPath).toList());
+        assertEquals(3, reloaded.getEntry("c.txt").getSize());
+        assertNull(reloaded.getCachedTree(""));
+    }
+
+    @Test
+    void shouldMergeDeltaIntoBaseWhenItGrowsTooLarge() throws IOException {
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        index.setSplitIndex(true);
+        index.setMaxDeltaBytes(0);
+        index.load();
+
+        index.add(new IndexEntry("b.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        assertTrue(Files.exists(tempDir.resolve("index.delta")));
+
+        index.add(new IndexEntry("c.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+
+        assertFalse(Files.exists(tempDir.resolve("index.delta")));
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+        assertEquals(3, reloaded.size());
+    }
+
+    @Test
+    void shouldIgnoreDeltaForDifferentBaseAndTornBatches() throws IOException {
+        index.add(new IndexEntry("a.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        index.setSplitIndex(true);
+        index.load();
+        index.add(new IndexEntry("b.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        Path deltaFile = tempDir.resolve("index.delta");
+        Files.write(deltaFile, new byte[]{0, 0, 0, 50, 1, 2}, StandardOpenOption.APPEND);
+
+        Index reloaded = new Index(indexFile);
+        reloaded.load();
+        assertTrue(reloaded.contains("b.txt"));
+
+        byte[] delta = Files.readAllBytes(deltaFile);
+        Index other = new Index(indexFile);
+        other.add(new IndexEntry("x.txt", new byte[20], 0100644, 1, 1L));
+        other.save();
+        Files.write(deltaFile, delta);
+
+        reloaded.load();
+        assertEquals(List.of("x.txt"), reloaded.getEntries().stream().map(IndexEntry::getPath).toList());
+    }
+
+    @Test
+    void shouldRefreshEntriesInParallelAndReportStaleOnes() throws IOException {
+        Path workingDir = tempDir.resolve("work");
+        Files.createDirectories(workingDir);
+        for (int i = 0; i < 1200; i++) {
+            Path file = workingDir.resolve("file" + i + ".txt");
+            Files.writeString(file, "content " + i);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L));
+            index.add(IndexEntry.fromFile("file" + i + ".txt", new byte[20], file));
+        }
+        index.save();
+        index.load();
+        Files.writeString(workingDir.resolve("file7.txt"), "changed content");
+        Files.delete(workingDir.resolve("file900.txt"));
+
+        List<IndexEntry> stale = index.refresh(workingDir, 4);
+
+        assertEquals(List.of("file7.txt", "file900.txt"), stale.stream().map(IndexEntry::getPath).toList());
+        assertTrue(index.isUpToDate("file8.txt"));
+        assertFalse(index.isUpToDate("file7.txt"));
+        assertFalse(index.isUpToDate("missing.txt"));
+
+        index.add(new IndexEntry("file8.txt", new byte[20], 0100644, 1, 1L));
+        assertFalse(index.isUpToDate("file1.txt"));
+    }
+
+    @Test
+    void shouldRefreshOverlayEntriesAcrossChunkBoundaries() throws IOException {
+        Path workingDir = tempDir.resolve("work");
+        Files.createDirectories(workingDir);
+        for (int i = 0; i < 2000; i += 2) {
+            Path file = workingDir.resolve(String.format("f%04d", i));
+            Files.writeString(file, "base");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L));
+            index.add(IndexEntry.fromFile(file.getFileName().toString(), new byte[20], file));
+        }
+        index.save();
+        index.load();
+        for (int i : new int[]{1, 499, 500, 1001, 1999}) {
+            Path file = workingDir.resolve(String.format("f%04d", i));
+            Files.writeString(file, "overlay");
+            Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L));
+            index.add(IndexEntry.fromFile(file.getFileName().toString(), new byte[20], file));
+        }
+        index.remove("f0500");
+        Files.writeString(workingDir.resolve("f1001"), "changed overlay");
+        Files.writeString(workingDir.resolve("f1000"), "changed base");
+
+        List<IndexEntry> stale = index.refresh(workingDir, 4);
+
+        assertEquals(List.of("f1000", "f1001"), stale.stream().map(IndexEntry::getPath).toList());
+        assertTrue(index.isUpToDate("f0499"));
+        assertTrue(index.isUpToDate("f1999"));
+        assertTrue(index.isUpToDate("f0998"));
+        assertFalse(index.isUpToDate("f0500"));
+        assertFalse(index.isUpToDate("f1001"));
+
+        index.save();
+        assertTrue(index.isUpToDate("f0499"));
+        assertFalse(index.isUpToDate("f1000"));
+    }
+
+    @Test
+    void shouldNotTrustRacilyCleanEntriesDuringRefresh() throws IOException {
+        Path workingDir = tempDir.resolve("work");
+        Files.createDirectories(workingDir);
+        Path file = workingDir.resolve("file.txt");
+        Files.writeString(file, "content");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        index.add(IndexEntry.fromFile("file.txt", new byte[20], file));
+        index.save();
+        index.load();
+
+        assertEquals(1, index.refresh(workingDir).size());
+        assertFalse(index.isUpToDate("file.txt"));
+    }
+
+    @Test
+    void shouldHoldIndexLockFromLoadUntilUnlock() throws IOException {
+        index.add(new IndexEntry("first.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+
+        Index first = new Index(indexFile);
+        first.lockForUpdate();
+        assertThrows(IOException.class, () -> LockFile.acquire(indexFile, 0));
+        first.add(new IndexEntry("second.txt", new byte[20], 0100644, 1, 1L));
+        first.save();
+        assertThrows(IOException.class, () -> LockFile.acquire(indexFile, 0));
+        first.unlock();
+
+        Index second = new Index(indexFile);
+        second.lockForUpdate();
+        assertTrue(second.contains("first.txt"));
+        assertTrue(second.contains("second.txt"));
+        second.unlock();
+
+        assertFalse(Files.exists(tempDir.resolve("index.lock")));
+    }
+
+    @Test
+    void shouldReleaseIndexLockWhenUnlockedWithoutSaving() throws IOException {
+        index.lockForUpdate();
+        assertThrows(IllegalStateException.class, () -> index.lockForUpdate());
+        index.add(new IndexEntry("file.txt", new byte[20], 0100644, 1, 1L));
+        index.unlock();
+
+        assertFalse(Files.exists(tempDir.resolve("index.lock")));
+        assertFalse(Files.exists(indexFile));
+        index.lockForUpdate();
+        index.unlock();
+    }
+
+    @Test
+    void shouldPublishSavedEntriesWhileKeepingLockHeld() throws IOException {
+        index.setSplitIndex(false);
+        index.lockForUpdate();
+        index.add(new IndexEntry("file.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+
+        Index reader = new Index(indexFile);
+        reader.load();
+        assertTrue(reader.contains("file.txt"));
+        assertTrue(Files.exists(tempDir.resolve("index.lock")));
+        assertThrows(IOException.class, () -> LockFile.acquire(indexFile, 0));
+
+        index.add(new IndexEntry("other.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        index.unlock();
+
+        reader.load();
+        assertTrue(reader.contains("other.txt"));
+        assertFalse(Files.exists(tempDir.resolve("index.lock")));
+        LockFile.acquire(indexFile, 0).close();
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.unit.repository;
+
+import org.example.repository.Index;
+import org.example.repository.IndexEntry;
+import org.example.repository.LockFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LockFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldReplaceTargetOnCommit() throws IOException {
+        Path target = tempDir.resolve("ref");
+        Files.writeString(target, "old\n");
+
+        try (LockFile lock = LockFile.acquire(target)) {
+            lock.write("new\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("old\n", Files.readString(target));
+            assertTrue(Files.exists(tempDir.resolve("ref.lock")));
+            lock.commit();
+        }
+
+        assertEquals("new\n", Files.readString(target));
+        assertFalse(Files.exists(tempDir.resolve("ref.lock")));
+    }
+
+    @Test
+    void shouldReplaceTargetWhileKeepingLock() throws IOException {
+        Path target = tempDir.resolve("index");
+        Files.writeString(target, "old");
+
+        try (LockFile lock = LockFile.acquire(target)) {
+            lock.replaceTarget("new".getBytes(StandardCharsets.UTF_8));
+            assertEquals("new", Files.readString(target));
+            assertThrows(IOException.class, () -> LockFile.acquire(target, 0));
+        }
+
+        assertFalse(Files.exists(tempDir.resolve("index.lock")));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void shouldLeaveTargetUntouchedWhenNotCommitted() throws IOException {
+        Path target = tempDir.resolve("ref");
+        Files.writeString(target, "old\n");
+
+        try (LockFile lock = LockFile.acquire(target)) {
+            lock.write("partial".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals("old\n", Files.readString(target));
+        assertFalse(Files.exists(tempDir.resolve("ref.lock")));
+    }
+
+    @Test
+    void shouldTimeOutWhileLockIsHeld() throws IOException {
+        Path target = tempDir.resolve("index");
+
+        try (LockFile held = LockFile.acquire(target)) {
+            IOException error = assertThrows(IOException.class, () -> LockFile.acquire(target, 20));
+            assertTrue(error.getMessage().contains("index.lock"));
+            assertEquals(tempDir.resolve("index.lock"), held.getLockPath());
+        }
+    }
+
+    @Test
+    void shouldWaitForLockToBeReleased() throws Exception {
+        Path target = tempDir.resolve("ref");
+        LockFile held = LockFile.acquire(target);
+
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                LockFile.writeString(target, "second\n");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        assertFalse(writer.isDone());
+
+        held.write("first\n".getBytes(StandardCharsets.UTF_8));
+        held.commit();
+        writer.get();
+
+        assertEquals("second\n", Files.readString(target));
+    }
+
+    @Test
+    void shouldRejectWritesAfterRelease() throws IOException {
+        LockFile lock = LockFile.acquire(tempDir.resolve("ref"));
+        lock.close();
+
+        assertThrows(IllegalStateException.class, () -> lock.write(new byte[1]));
+        assertThrows(IllegalStateException.class, lock::commit);
+    }
+
+    @Test
+    void shouldNotSaveIndexWhileAnotherProcessHoldsItsLock() throws IOException {
+        Path indexFile = tempDir.resolve("index");
+        Index index = new Index(indexFile);
+        index.add(new IndexEntry("file.txt", new byte[20], 0100644, 1, 1L));
+        index.save();
+        byte[] saved = Files.readAllBytes(indexFile);
+        Files.createFile(tempDir.resolve("index.lock"));
+
+        index.add(new IndexEntry("other.txt", new byte[20], 0100644, 1, 1L));
+
+        assertThrows(IOException.class, index::save);
+        assertArrayEquals(saved, Files.readAllBytes(indexFile));
+        assertTrue(Files.exists(tempDir.resolve("index.lock")));
+    }
+}
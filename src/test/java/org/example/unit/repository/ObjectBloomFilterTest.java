@@ -0,0 +1,117 @@
+package org.example.unit.repository;
+
+import org.example.repository.ObjectBloomFilter;
+import org.example.utils.SHA1Hasher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectBloomFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<byte[]> objects = new ArrayList<>();
+
+    @Test
+    void shouldAnswerAbsentForUnknownIds() {
+        ObjectBloomFilter filter = newFilter();
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (filter.mightContain(id("missing-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(filter.isAvailable());
+        assertTrue(falsePositives < 10, "Too many false positives: " + falsePositives);
+    }
+
+    @Test
+    void shouldIncludeExistingObjectsWhenBuilt() {
+        objects.add(id("existing"));
+
+        ObjectBloomFilter filter = newFilter();
+
+        assertTrue(filter.mightContain(id("existing")));
+        assertTrue(Files.exists(tempDir.resolve("info/bloom")));
+    }
+
+    @Test
+    void shouldRememberAddedIds() {
+        ObjectBloomFilter filter = newFilter();
+
+        filter.add(id("added"));
+
+        assertTrue(filter.mightContain(id("added")));
+        assertEquals(1, filter.getCount());
+    }
+
+    @Test
+    void shouldSeeIdsAddedByAnotherInstance() {
+        ObjectBloomFilter first = newFilter();
+        ObjectBloomFilter second = newFilter();
+        assertFalse(second.mightContain(id("shared")));
+
+        first.add(id("shared"));
+
+        assertTrue(second.mightContain(id("shared")));
+    }
+
+    @Test
+    void shouldMoveOtherInstancesToRebuiltFilter() throws IOException {
+        ObjectBloomFilter first = newFilter();
+        ObjectBloomFilter second = newFilter();
+        assertFalse(second.mightContain(id("before")));
+
+        for (int i = 0; i < 40000; i++) {
+            objects.add(id("object-" + i));
+        }
+        assertTrue(first.rebuild());
+        second.add(id("after"));
+
+        assertTrue(first.getCapacity() >= 80000);
+        assertEquals(first.getCapacity(), second.getCapacity());
+        assertTrue(first.mightContain(id("object-123")));
+        assertTrue(first.mightContain(id("after")));
+    }
+
+    @Test
+    void shouldFallBackToMaybeWhenFilterCannotBeBuilt() throws IOException {
+        Files.createDirectories(tempDir.resolve("info"));
+        Files.createFile(tempDir.resolve("info/bloom.lock"));
+
+        ObjectBloomFilter filter = newFilter();
+
+        assertFalse(filter.isAvailable());
+        assertTrue(filter.mightContain(id("anything")));
+    }
+
+    @Test
+    void shouldRebuildCorruptFilter() throws IOException {
+        Files.createDirectories(tempDir.resolve("info"));
+        Files.write(tempDir.resolve("info/bloom"), "garbage".getBytes());
+        objects.add(id("existing"));
+
+        ObjectBloomFilter filter = newFilter();
+
+        assertTrue(filter.isAvailable());
+        assertTrue(filter.mightContain(id("existing")));
+    }
+
+    private ObjectBloomFilter newFilter() {
+        return new ObjectBloomFilter(tempDir.resolve("info/bloom"), () -> new ArrayList<>(objects));
+    }
+
+    private byte[] id(String name) {
+        return SHA1Hasher.hash(name.getBytes());
+    }
+}
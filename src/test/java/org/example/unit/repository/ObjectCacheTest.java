@@ -0,0 +1,89 @@
+package org.example.unit.repository;
+
+import org.example.objects.Commit;
+import org.example.objects.Tree;
+import org.example.repository.ObjectCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectCacheTest {
+
+    @Test
+    void shouldCountHitsAndMisses() {
+        ObjectCache cache = new ObjectCache(1024);
+        Tree tree = treeWith("a.txt");
+
+        assertNull(cache.get(tree.getHexhash()));
+        cache.put(tree.getHexhash(), tree, 100);
+
+        assertSame(tree, cache.get(tree.getHexhash()));
+        assertSame(tree, cache.get(tree.getHexhash()));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedByWeight() {
+        ObjectCache cache = new ObjectCache(600);
+        Tree first = treeWith("first.txt");
+        Tree second = treeWith("second.txt");
+        Tree third = treeWith("third.txt");
+
+        cache.put(first.getHexhash(), first, 200);
+        cache.put(second.getHexhash(), second, 200);
+        cache.get(first.getHexhash());
+        cache.put(third.getHexhash(), third, 200);
+
+        assertNotNull(cache.get(first.getHexhash()));
+        assertNull(cache.get(second.getHexhash()));
+        assertNotNull(cache.get(third.getHexhash()));
+        assertEquals(1, cache.getEvictions());
+        assertTrue(cache.getWeight() <= cache.getMaxBytes());
+    }
+
+    @Test
+    void shouldSkipObjectsLargerThanCache() {
+        ObjectCache cache = new ObjectCache(100);
+        Tree tree = treeWith("big.txt");
+
+        cache.put(tree.getHexhash(), tree, 1000);
+
+        assertEquals(0, cache.size());
+        assertFalse(tree.isFrozen());
+    }
+
+    @Test
+    void shouldFreezeCachedObjects() {
+        ObjectCache cache = new ObjectCache(1024);
+        Tree tree = treeWith("a.txt");
+        Commit commit = new Commit(tree.getHash(), "Test <test@test.com> 1700000000 +0000",
+                "Test <test@test.com> 1700000000 +0000", "message");
+
+        cache.put(tree.getHexhash(), tree, 50);
+        cache.put(commit.getHexhash(), commit, 50);
+
+        assertThrows(IllegalStateException.class, () -> tree.addFile("b.txt", new byte[20]));
+        assertThrows(UnsupportedOperationException.class, () -> tree.getEntries().clear());
+        assertThrows(IllegalStateException.class, () -> commit.setMessage("changed"));
+        assertEquals("message", commit.getMessage());
+    }
+
+    @Test
+    void shouldForgetRemovedObjects() {
+        ObjectCache cache = new ObjectCache(1024);
+        Tree tree = treeWith("a.txt");
+        cache.put(tree.getHexhash(), tree, 100);
+
+        cache.remove(tree.getHexhash());
+
+        assertNull(cache.get(tree.getHexhash()));
+        assertEquals(0, cache.getWeight());
+    }
+
+    private Tree treeWith(String name) {
+        Tree tree = new Tree();
+        tree.addFile(name, new byte[20]);
+        return tree;
+    }
+}
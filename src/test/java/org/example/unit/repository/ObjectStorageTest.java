@@ -2,16 +2,27 @@ package org.example.unit.repository;
 
 import org.example.objects.Blob;
 import org.example.objects.Commit;
+import org.example.objects.ObjectId;
 import org.example.objects.Tree;
+import org.example.repository.Delta;
 import org.example.repository.ObjectStorage;
+import org.example.repository.PackWindowCache;
+import org.example.repository.PackWriter;
+import org.example.utils.SHA1Hasher;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +88,23 @@ class ObjectStorageTest {
         assertTrue(storage.exists(hash));
     }
 
+    @Test
+    void shouldStoreBlobBackedByDirectBuffer() throws IOException {
+        byte[] content = new byte[200_000];
+        new Random(7).nextBytes(content);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        Blob blob = Blob.wrap(buffer);
+
+        storage.store(blob);
+
+        Blob loaded = (Blob) storage.load(blob.getHexhash());
+        assertArrayEquals(content, loaded.serialize());
+        try (var files = Files.list(tempDir.resolve("objects"))) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().startsWith("tmp_obj_")));
+        }
+    }
+
     @Test
     void shouldThrowWhenLoadingNonExistentObject() {
         assertThrows(IOException.class, () -> storage.load("a1b2c3d4e5f6a1b2c3d4e5a1b2c3d4e5f6a1b2c3"));
@@ -242,6 +270,320 @@ class ObjectStorageTest {
                         "Uncompressed: " + uncompressedData.length + " bytes");
     }
 
+    @Test
+    void shouldLoadObjectsAfterPackingLooseObjects() throws IOException {
+        Blob blob = new Blob("Packed content".getBytes());
+        Tree tree = new Tree();
+        tree.addFile("packed.txt", blob.getHash());
+        Commit commit = new Commit(tree.getHash(), "Test <test@test.com> 1700000000 +0000",
+                "Test <test@test.com> 1700000000 +0000", "Packed commit");
+
+        storage.store(blob);
+        storage.store(tree);
+        storage.store(commit);
+
+        assertEquals(3, storage.packLooseObjects());
+        assertEquals(1, storage.getPackCount());
+
+        Path looseFile = tempDir.resolve("objects")
+                .resolve(blob.getHexhash().substring(0, 2))
+                .resolve(blob.getHexhash().substring(2));
+        assertFalse(Files.exists(looseFile));
+
+        assertTrue(storage.exists(blob.getHexhash()));
+        assertTrue(storage.exists(tree.getHexhash()));
+        assertTrue(storage.exists(commit.getHexhash()));
+
+        assertArrayEquals(blob.serialize(), ((Blob) storage.load(blob.getHexhash())).serialize());
+        assertEquals(1, ((Tree) storage.load(tree.getHexhash())).getEntries().size());
+        assertEquals("Packed commit", ((Commit) storage.load(commit.getHexhash())).getMessage());
+    }
+
+    @Test
+    void shouldFallBackToLooseObjectsWhenPacksMiss() throws IOException {
+        Blob packed = new Blob("In a pack".getBytes());
+        storage.store(packed);
+        storage.packLooseObjects();
+
+        Blob loose = new Blob("Still loose".getBytes());
+        storage.store(loose);
+
+        assertTrue(storage.exists(packed.getHexhash()));
+        assertTrue(storage.exists(loose.getHexhash()));
+        assertArrayEquals(loose.serialize(), ((Blob) storage.load(loose.getHexhash())).serialize());
+
+        assertEquals(1, storage.packLooseObjects());
+        assertEquals(2, storage.getPackCount());
+        assertArrayEquals(packed.serialize(), ((Blob) storage.load(packed.getHexhash())).serialize());
+    }
+
+    @Test
+    void shouldSeePacksWrittenByAnotherInstance() throws IOException {
+        Blob blob = new Blob("Written elsewhere".getBytes());
+        assertFalse(storage.exists(blob.getHexhash()));
+
+        ObjectStorage other = new ObjectStorage(tempDir);
+        other.store(blob);
+        other.packLooseObjects();
+
+        assertTrue(storage.exists(blob.getHexhash()));
+        assertArrayEquals(blob.serialize(), ((Blob) storage.load(blob.getHexhash())).serialize());
+    }
+
+    @Test
+    void shouldReturnZeroWhenNothingToPack() throws IOException {
+        assertEquals(0, storage.packLooseObjects());
+        assertEquals(0, storage.getPackCount());
+    }
+
+    @Test
+    void shouldDeltaCompressSimilarBlobsWhenRepacking() throws IOException {
+        Map<String, String> pathHints = new HashMap<>();
+        List<Blob> versions = new ArrayList<>();
+        for (int v = 0; v < 20; v++) {
+            StringBuilder content = new StringBuilder();
+            for (int line = 0; line < 500; line++) {
+                content.append("key").append(line).append('=').append(line == v ? "changed" : "value").append('\n');
+            }
+            Blob blob = new Blob(content.toString().getBytes());
+            storage.store(blob);
+            versions.add(blob);
+            pathHints.put(blob.getHexhash(), "config/app.properties");
+        }
+        long looseSize = 0;
+        for (Blob blob : versions) {
+            looseSize += Files.size(tempDir.resolve("objects")
+                    .resolve(blob.getHexhash().substring(0, 2))
+                    .resolve(blob.getHexhash().substring(2)));
+        }
+
+        assertEquals(20, storage.repack(pathHints));
+        assertEquals(1, storage.getPackCount());
+
+        long packSize;
+        try (var files = Files.list(tempDir.resolve("objects/pack"))) {
+            Path pack = files.filter(p -> p.toString().endsWith(".pack")).findFirst().orElseThrow();
+            packSize = Files.size(pack);
+        }
+        assertTrue(packSize < looseSize / 4, "Pack " + packSize + " should be much smaller than " + looseSize);
+
+        for (Blob blob : versions) {
+            assertArrayEquals(blob.serialize(), ((Blob) new ObjectStorage(tempDir).load(blob.getHexhash())).serialize());
+        }
+    }
+
+    @Test
+    void shouldMergeExistingPacksWhenRepacking() throws IOException {
+        Blob first = new Blob("first".getBytes());
+        storage.store(first);
+        storage.packLooseObjects();
+        Blob second = new Blob("second".getBytes());
+        storage.store(second);
+        storage.packLooseObjects();
+        assertEquals(2, storage.getPackCount());
+
+        assertEquals(2, storage.repack(new HashMap<>()));
+
+        assertEquals(1, storage.getPackCount());
+        assertTrue(storage.exists(first.getHexhash()));
+        assertTrue(storage.exists(second.getHexhash()));
+    }
+
+    @Test
+    void shouldResolveRefDeltaBaseFromAnotherPack() throws IOException {
+        byte[] baseContent = "line one\nline two\nline three\nline four\n".repeat(20).getBytes();
+        byte[] targetContent = (new String(baseContent) + "appended\n").getBytes();
+        Blob base = new Blob(baseContent);
+        Blob target = new Blob(targetContent);
+
+        storage.store(base);
+        storage.packLooseObjects();
+
+        try (PackWriter writer = new PackWriter(tempDir.resolve("objects/pack"), 1)) {
+            writer.addDelta(target.getHash(), base.getHash(), Delta.create(baseContent, targetContent));
+            writer.finish();
+        }
+
+        Blob loaded = (Blob) new ObjectStorage(tempDir).load(target.getHexhash());
+        assertArrayEquals(targetContent, loaded.serialize());
+    }
+
+    @Test
+    void shouldReadPackedObjectsAcrossWindowBoundaries() throws IOException {
+        Random random = new Random(42);
+        List<Blob> blobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] content = new byte[300 + i * 37];
+            random.nextBytes(content);
+            Blob blob = new Blob(content);
+            storage.store(blob);
+            blobs.add(blob);
+        }
+        storage.packLooseObjects();
+
+        ObjectStorage windowed = new ObjectStorage(tempDir, 64, 256);
+        for (Blob blob : blobs) {
+            assertArrayEquals(blob.serialize(), ((Blob) windowed.load(blob.getHexhash())).serialize());
+        }
+
+        PackWindowCache cache = windowed.getWindowCache();
+        assertTrue(cache.getMappedBytes() <= 256);
+        assertTrue(cache.getWindowCount() <= 4);
+        assertTrue(cache.getMapCount() > 4);
+    }
+
+    @Test
+    void shouldReuseMappedWindowsBetweenLoads() throws IOException {
+        Blob blob = new Blob("mapped once".getBytes());
+        storage.store(blob);
+        storage.packLooseObjects();
+
+        ObjectStorage fresh = new ObjectStorage(tempDir);
+        fresh.load(blob.getHexhash());
+        long maps = fresh.getWindowCache().getMapCount();
+        fresh.load(blob.getHexhash());
+        fresh.load(blob.getHexhash());
+
+        assertEquals(1, maps);
+        assertEquals(maps, fresh.getWindowCache().getMapCount());
+    }
+
+    @Test
+    void shouldReleaseWindowsOfRemovedPacks() throws IOException {
+        Blob first = new Blob("first".getBytes());
+        storage.store(first);
+        storage.packLooseObjects();
+        Blob second = new Blob("second".getBytes());
+        storage.store(second);
+        storage.packLooseObjects();
+        storage.load(first.getHexhash());
+        storage.load(second.getHexhash());
+        assertEquals(2, storage.getWindowCache().getWindowCount());
+
+        storage.repack(new HashMap<>());
+
+        assertEquals(0, storage.getWindowCache().getWindowCount());
+        assertArrayEquals(first.serialize(), ((Blob) storage.load(first.getHexhash())).serialize());
+        assertEquals(1, storage.getWindowCache().getWindowCount());
+
+        storage.close();
+        assertEquals(0, storage.getWindowCache().getMappedBytes());
+    }
+
+    @Test
+    void shouldRejectWindowBudgetSmallerThanWindow() {
+        assertThrows(IllegalArgumentException.class, () -> new ObjectStorage(tempDir, 1024, 512));
+    }
+
+    @Test
+    void shouldServeParsedTreesAndCommitsFromCache() throws IOException {
+        Blob blob = new Blob("cached".getBytes());
+        Tree tree = new Tree();
+        tree.addFile("cached.txt", blob.getHash());
+        Commit commit = new Commit(tree.getHash(), "Test <test@test.com> 1700000000 +0000",
+                "Test <test@test.com> 1700000000 +0000", "Cached commit");
+        storage.store(blob);
+        storage.store(tree);
+        storage.store(commit);
+
+        Tree firstTree = (Tree) storage.load(tree.getHexhash());
+        Commit firstCommit = (Commit) storage.load(commit.getHexhash());
+
+        assertSame(firstTree, storage.load(tree.getHexhash()));
+        assertSame(firstCommit, storage.load(commit.getHexhash()));
+        assertNotSame(storage.load(blob.getHexhash()), storage.load(blob.getHexhash()));
+        assertEquals(2, storage.getObjectCache().getHits());
+        assertEquals(2, storage.getObjectCache().size());
+        assertTrue(firstTree.isFrozen());
+        assertThrows(IllegalStateException.class, () -> firstCommit.setMessage("rewritten"));
+    }
+
+    @Test
+    void shouldSeeLooseObjectsStoredByAnotherInstance() throws IOException {
+        Blob blob = new Blob("stored elsewhere".getBytes());
+        assertFalse(storage.exists(blob.getHexhash()));
+
+        new ObjectStorage(tempDir).store(blob);
+
+        assertTrue(storage.exists(blob.getHexhash()));
+        assertTrue(storage.getBloomFilter().mightContain(blob.getHash()));
+        assertFalse(storage.exists(new Blob("never stored".getBytes()).getHexhash()));
+    }
+
+    @Test
+    void shouldStoreFileWithSameHashAsBlob() throws IOException {
+        byte[] content = "streamed content\n".repeat(10000).getBytes();
+        Path file = tempDir.resolve("large.txt");
+        Files.write(file, content);
+        Blob expected = new Blob(content);
+
+        byte[] hash = storage.storeFile(file);
+
+        assertArrayEquals(expected.getHash(), hash);
+        assertArrayEquals(expected.getHash(), storage.hashFile(file));
+        assertArrayEquals(content, ((Blob) storage.load(expected.getHexhash())).serialize());
+        try (var files = Files.list(tempDir.resolve("objects"))) {
+            assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith("tmp_obj_")));
+        }
+    }
+
+    @Test
+    void shouldStoreEmptyFile() throws IOException {
+        Path file = tempDir.resolve("empty.txt");
+        Files.createFile(file);
+
+        byte[] hash = storage.storeFile(file);
+
+        assertEquals("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391", SHA1Hasher.toHex(hash));
+        assertTrue(storage.exists("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391"));
+    }
+
+    @Test
+    void shouldNotRewriteExistingObjectWhenStoringFile() throws IOException {
+        Path file = tempDir.resolve("same.txt");
+        Files.writeString(file, "same content");
+        byte[] hash = storage.storeFile(file);
+        Path objectPath = tempDir.resolve("objects")
+                .resolve(SHA1Hasher.toHex(hash).substring(0, 2))
+                .resolve(SHA1Hasher.toHex(hash).substring(2));
+        var modified = Files.getLastModifiedTime(objectPath);
+
+        assertArrayEquals(hash, storage.storeFile(file));
+
+        assertEquals(modified, Files.getLastModifiedTime(objectPath));
+    }
+
+    @Test
+    void shouldFailToHashMissingFile() {
+        assertThrows(IOException.class, () -> storage.hashFile(tempDir.resolve("missing.txt")));
+    }
+
+    @Test
+    void shouldOpenLooseAndPackedBlobsLazily() throws IOException {
+        Blob loose = new Blob("loose content".getBytes());
+        Blob packed = new Blob("packed content".getBytes());
+        storage.store(packed);
+        storage.packLooseObjects();
+        storage.store(loose);
+
+        Blob lazyLoose = storage.openBlob(loose.getId());
+        Blob lazyPacked = storage.openBlob(packed.getId());
+
+        assertFalse(lazyLoose.isLoaded());
+        assertEquals(loose.getHexhash(), lazyLoose.getHexhash());
+        assertFalse(lazyLoose.isLoaded());
+        assertArrayEquals("loose content".getBytes(), lazyLoose.serialize());
+        assertTrue(lazyLoose.isLoaded());
+        assertEquals("packed content".length(), lazyPacked.getSize());
+        assertArrayEquals("packed content".getBytes(), lazyPacked.openStream().readAllBytes());
+    }
+
+    @Test
+    void shouldRejectOpeningMissingBlob() {
+        assertThrows(IOException.class,
+                () -> storage.openBlob(ObjectId.fromHex("0123456789abcdef0123456789abcdef01234567")));
+    }
+
     private byte[] hexToBytes(String hex) {
         byte[] bytes = new byte[20];
         for (int i = 0; i < 20; i++) {
@@ -0,0 +1,96 @@
+package org.example.unit.repository;
+
+import org.example.repository.PackIndex;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldFindOffsetsThroughFanout() throws IOException {
+        List<PackIndex.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            entries.add(new PackIndex.Entry(hashOf(i), 12L + i * 100L, i));
+        }
+        Path idx = tempDir.resolve("pack-test.idx");
+        PackIndex.write(idx, entries, new byte[20]);
+
+        PackIndex index = PackIndex.read(idx);
+
+        assertEquals(300, index.size());
+        for (int i = 0; i < 300; i++) {
+            assertEquals(12L + i * 100L, index.findOffset(hashOf(i)));
+        }
+        assertEquals(-1, index.findOffset(hashOf(1000)));
+    }
+
+    @Test
+    void shouldKeepNamesSortedAcrossFanoutBuckets() throws IOException {
+        List<PackIndex.Entry> entries = new ArrayList<>();
+        entries.add(new PackIndex.Entry(filled(0xF0), 12, 0));
+        entries.add(new PackIndex.Entry(filled(0x01), 40, 0));
+        entries.add(new PackIndex.Entry(filled(0x80), 80, 0));
+        Path idx = tempDir.resolve("pack-sorted.idx");
+        PackIndex.write(idx, entries, new byte[20]);
+
+        PackIndex index = PackIndex.read(idx);
+
+        assertArrayEquals(filled(0x01), index.getHash(0));
+        assertArrayEquals(filled(0x80), index.getHash(1));
+        assertArrayEquals(filled(0xF0), index.getHash(2));
+        assertTrue(index.contains(filled(0x80)));
+        assertFalse(index.contains(filled(0x81)));
+    }
+
+    @Test
+    void shouldStoreLargeOffsets() throws IOException {
+        long largeOffset = 5L * 1024 * 1024 * 1024;
+        List<PackIndex.Entry> entries = List.of(
+                new PackIndex.Entry(filled(0x10), 12, 0),
+                new PackIndex.Entry(filled(0x20), largeOffset, 0));
+        Path idx = tempDir.resolve("pack-large.idx");
+        PackIndex.write(idx, entries, new byte[20]);
+
+        PackIndex index = PackIndex.read(idx);
+
+        assertEquals(12, index.findOffset(filled(0x10)));
+        assertEquals(largeOffset, index.findOffset(filled(0x20)));
+    }
+
+    @Test
+    void shouldRejectCorruptedIndex() throws IOException {
+        Path idx = tempDir.resolve("pack-corrupt.idx");
+        PackIndex.write(idx, List.of(new PackIndex.Entry(filled(0x42), 12, 0)), new byte[20]);
+
+        byte[] data = Files.readAllBytes(idx);
+        data[8 + 256 * 4] ^= 0x01;
+        Files.write(idx, data);
+
+        assertThrows(IOException.class, () -> PackIndex.read(idx));
+    }
+
+    private byte[] hashOf(int value) {
+        byte[] hash = new byte[20];
+        hash[0] = (byte) (value * 31);
+        hash[1] = (byte) (value >>> 8);
+        hash[2] = (byte) value;
+        return hash;
+    }
+
+    private byte[] filled(int value) {
+        byte[] hash = new byte[20];
+        java.util.Arrays.fill(hash, (byte) value);
+        return hash;
+    }
+}
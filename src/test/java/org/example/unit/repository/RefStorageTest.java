@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -70,4 +71,23 @@ class RefStorageTest {
         assertEquals("d".repeat(40), refs.getHeadCommit());
         assertEquals("d".repeat(40), refs.getBranchCommit("master"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldUpdateHeadCommitOnlyFromExpectedValue() throws IOException {
+        RefStorage refs = new RefStorage(tempDir);
+        refs.createBranch("master", "a".repeat(40));
+        refs.setHead("master");
+
+        refs.updateHeadCommit("b".repeat(40), "a".repeat(40));
+        assertEquals("b".repeat(40), refs.getBranchCommit("master"));
+
+        assertThrows(IOException.class, () -> refs.updateHeadCommit("c".repeat(40), "a".repeat(40)));
+        assertEquals("b".repeat(40), refs.getBranchCommit("master"));
+        assertFalse(Files.exists(tempDir.resolve("refs/heads/master.lock")));
+
+        refs.setDetachedHead("d".repeat(40));
+        assertThrows(IOException.class, () -> refs.updateHeadCommit("e".repeat(40), "b".repeat(40)));
+        refs.updateHeadCommit("e".repeat(40), "d".repeat(40));
+        assertEquals("e".repeat(40), refs.getHeadCommit());
+    }
+}
@@ -0,0 +1,97 @@
+package org.example.unit.repository;
+
+import org.example.objects.Blob;
+import org.example.objects.ObjectId;
+import org.example.repository.IndexEntry;
+import org.example.repository.ObjectStorage;
+import org.example.repository.WorkingTreeWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkingTreeWriterTest {
+    @TempDir
+    Path tempDir;
+
+    private ObjectStorage storage;
+    private Path workingDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        storage = new ObjectStorage(tempDir.resolve(".git"));
+        workingDir = tempDir.resolve("work");
+        Files.createDirectories(workingDir);
+    }
+
+    @Test
+    void shouldWriteFilesAndReturnEntriesInPathOrder() throws IOException {
+        SortedMap<String, ObjectId> files = new TreeMap<>();
+        for (int i = 0; i < 50; i++) {
+            String path = "dir" + (i % 5) + "/nested/file" + i + ".txt";
+            files.put(path, store("content " + i));
+        }
+        files.put("root.txt", store("root"));
+
+        WorkingTreeWriter writer = new WorkingTreeWriter(storage, workingDir, 3, 2);
+        List<IndexEntry> entries = writer.write(files);
+
+        assertEquals(List.copyOf(files.keySet()), entries.stream().map(IndexEntry::getPath).toList());
+        assertEquals("content 7", Files.readString(workingDir.resolve("dir2/nested/file7.txt")));
+        assertEquals("root", Files.readString(workingDir.resolve("root.txt")));
+        for (IndexEntry entry : entries) {
+            assertEquals(files.get(entry.getPath()), entry.getId());
+            assertEquals(Files.size(workingDir.resolve(entry.getPath())), entry.getSize());
+        }
+    }
+
+    @Test
+    void shouldOverwriteExistingFiles() throws IOException {
+        Files.writeString(workingDir.resolve("file.txt"), "a much longer previous content");
+        SortedMap<String, ObjectId> files = new TreeMap<>();
+        files.put("file.txt", store("new"));
+
+        new WorkingTreeWriter(storage, workingDir).write(files);
+
+        assertEquals("new", Files.readString(workingDir.resolve("file.txt")));
+    }
+
+    @Test
+    void shouldReportFirstFailingPathAndWriteTheRest() throws IOException {
+        ObjectId missing = ObjectId.fromHex("01" + "0".repeat(38));
+        ObjectId alsoMissing = ObjectId.fromHex("02" + "0".repeat(38));
+        SortedMap<String, ObjectId> files = new TreeMap<>();
+        files.put("a.txt", store("a"));
+        files.put("b.txt", missing);
+        files.put("c.txt", store("c"));
+        files.put("d.txt", alsoMissing);
+
+        WorkingTreeWriter writer = new WorkingTreeWriter(storage, workingDir, 4, 4);
+        IOException error = assertThrows(IOException.class, () -> writer.write(files));
+
+        assertTrue(error.getMessage().contains("b.txt"));
+        assertEquals(1, error.getSuppressed().length);
+        assertTrue(error.getSuppressed()[0].getMessage().contains("d.txt"));
+        assertEquals("c", Files.readString(workingDir.resolve("c.txt")));
+    }
+
+    @Test
+    void shouldRejectNonPositiveThreadCounts() {
+        assertThrows(IllegalArgumentException.class, () -> new WorkingTreeWriter(storage, workingDir, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new WorkingTreeWriter(storage, workingDir, 1, 0));
+    }
+
+    private ObjectId store(String content) throws IOException {
+        Blob blob = new Blob(content.getBytes());
+        storage.store(blob);
+        return blob.getId();
+    }
+}
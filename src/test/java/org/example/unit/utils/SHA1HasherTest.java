@@ -2,7 +2,14 @@ package org.example.unit.utils;
 
 import org.example.utils.SHA1Hasher;
 import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static org.junit.jupiter.api.Assertions.*;
 
 class SHA1HasherTest {
@@ -48,4 +55,79 @@ class SHA1HasherTest {
         assertThrows(IllegalArgumentException.class, () -> SHA1Hasher.toHex(null));
         assertThrows(IllegalArgumentException.class, () -> SHA1Hasher.fromHex(null));
     }
-}
\ No newline at end of file
+
+    @Test
+    void should_hashObjectHeaderAndContentWithoutConcatenating() {
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("b6fc4c620b67d95f953a5c1c1230aaab5db5a1b0",
+                SHA1Hasher.toHex(SHA1Hasher.hashObject("blob", content)));
+        assertEquals("e69de29bb2d1d6434b8b29ae775ad8c2e48c5391",
+                SHA1Hasher.toHex(SHA1Hasher.hashObject("blob", new byte[0])));
+
+        byte[] padded = "xxhelloyy".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(SHA1Hasher.hashObject("blob", content), SHA1Hasher.hashObject("blob", padded, 2, 5));
+    }
+
+    @Test
+    void should_hashIncrementally() {
+        byte[] data = "incremental hashing of split input".getBytes(StandardCharsets.UTF_8);
+
+        byte[] hash = SHA1Hasher.newHasher()
+                .update(data, 0, 10)
+                .update(data[10])
+                .update(ByteBuffer.wrap(data, 11, data.length - 11))
+                .digest();
+
+        assertArrayEquals(SHA1Hasher.hash(data), hash);
+        assertArrayEquals(SHA1Hasher.hash(data, 0, 10), SHA1Hasher.newHasher().update(data, 0, 10).digest());
+        assertArrayEquals(SHA1Hasher.hashObject("tree", data),
+                SHA1Hasher.newHasher().updateHeader("tree", data.length).update(data).digest());
+    }
+
+    @Test
+    void should_rejectUseAfterDigest() {
+        SHA1Hasher hasher = SHA1Hasher.newHasher().update(new byte[]{1});
+        hasher.digest();
+
+        assertThrows(IllegalStateException.class, hasher::digest);
+        assertThrows(IllegalStateException.class, () -> hasher.update(new byte[]{2}));
+    }
+
+    @Test
+    void should_returnAbandonedDigestsToPoolInCleanState() {
+        byte[] data = "abandoned".getBytes();
+        byte[] expected = SHA1Hasher.hash(data);
+        for (int i = 0; i < 200; i++) {
+            SHA1Hasher abandoned = SHA1Hasher.newHasher().update(new byte[]{1, 2, 3});
+            abandoned.close();
+            abandoned.close();
+            assertThrows(IllegalStateException.class, abandoned::digest);
+
+            assertArrayEquals(expected, SHA1Hasher.newHasher().update(data).digest());
+        }
+    }
+
+    @Test
+    void should_hashConcurrently() throws Exception {
+        List<Future<Boolean>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] data = ("payload " + i).getBytes(StandardCharsets.UTF_8);
+                        byte[] expected = SHA1Hasher.hash(data);
+                        byte[] incremental = SHA1Hasher.newHasher().update(data).digest();
+                        if (!Arrays.equals(expected, incremental)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+        }
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+    }
+}